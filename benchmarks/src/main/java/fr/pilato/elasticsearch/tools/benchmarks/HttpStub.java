@@ -0,0 +1,94 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal in-process HTTP server which answers like an elasticsearch cluster where nothing exists yet,
+ * so we measure Beyonder and not elasticsearch.
+ */
+class HttpStub implements AutoCloseable {
+
+	private static final byte[] ACKNOWLEDGED = "{\"acknowledged\":true}".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] BULK = "{\"took\":1,\"errors\":false,\"items\":[]}".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] RESOLVE = "{\"indices\":[],\"aliases\":[],\"data_streams\":[]}".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] NOT_FOUND = "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] CREATED = "{\"result\":\"created\"}".getBytes(StandardCharsets.UTF_8);
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	HttpStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		executor = Executors.newFixedThreadPool(16);
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream body = exchange.getRequestBody()) {
+			body.transferTo(OutputStream.nullOutputStream());
+		}
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+
+		int status = 200;
+		byte[] response = ACKNOWLEDGED;
+		if (path.startsWith("/_resolve/index/")) {
+			response = RESOLVE;
+		} else if (path.endsWith("/_bulk")) {
+			response = BULK;
+		} else if ("POST".equals(method) && path.endsWith("/_doc/")) {
+			status = 201;
+			response = CREATED;
+		} else if ("GET".equals(method)) {
+			status = 404;
+			response = NOT_FOUND;
+		}
+
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, response.length);
+		try (OutputStream stream = exchange.getResponseBody()) {
+			stream.write(response);
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.benchmarks;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+
+/**
+ * Beyonder reads the resources using the class loader which loaded its own classes. To benchmark it with
+ * resources we generate (in a directory or in a jar), we load the Beyonder classes again within a class loader
+ * which also contains those resources. All the other classes (like the elasticsearch client) come from the
+ * parent class loader, so they can be shared with the benchmarks.
+ */
+class IsolatedClassLoader extends URLClassLoader {
+
+	private static final String BEYONDER_PACKAGE = "fr.pilato.elasticsearch.tools.";
+	private static final String BENCHMARKS_PACKAGE = "fr.pilato.elasticsearch.tools.benchmarks.";
+
+	IsolatedClassLoader(Path resources) throws IOException, URISyntaxException {
+		super(new URL[]{ beyonderLocation(), resources.toUri().toURL() }, IsolatedClassLoader.class.getClassLoader());
+	}
+
+	private static URL beyonderLocation() throws URISyntaxException, IOException {
+		try {
+			Class<?> beyonder = Class.forName(BEYONDER_PACKAGE + "ElasticsearchBeyonder");
+			return beyonder.getProtectionDomain().getCodeSource().getLocation().toURI().toURL();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Elasticsearch Beyonder must be in the classpath", e);
+		}
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (!name.startsWith(BEYONDER_PACKAGE) || name.startsWith(BENCHMARKS_PACKAGE)) {
+			return super.loadClass(name, resolve);
+		}
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> loaded = findLoadedClass(name);
+			if (loaded == null) {
+				loaded = findClass(name);
+			}
+			if (resolve) {
+				resolveClass(loaded);
+			}
+			return loaded;
+		}
+	}
+
+	/**
+	 * Find a public static method of a Beyonder class loaded by this class loader
+	 * @param className		The simple class name within the fr.pilato.elasticsearch.tools package, like "util.ResourceList"
+	 * @param methodName	The method name
+	 * @param types			The parameter types
+	 * @return the method
+	 * @throws ReflectiveOperationException if the method does not exist
+	 */
+	Method method(String className, String methodName, Class<?>... types) throws ReflectiveOperationException {
+		return loadClass(BEYONDER_PACKAGE + className).getMethod(methodName, types);
+	}
+
+	/**
+	 * Create an instance of a Beyonder class loaded by this class loader
+	 * @param className		The simple class name within the fr.pilato.elasticsearch.tools package, like "util.BeyonderOptions"
+	 * @return the instance
+	 * @throws ReflectiveOperationException if the class can not be created
+	 */
+	Object newInstance(String className) throws ReflectiveOperationException {
+		return loadClass(BEYONDER_PACKAGE + className).getConstructor().newInstance();
+	}
+
+	/**
+	 * Call a method and unwrap the exceptions it throws
+	 */
+	static Object invoke(Method method, Object target, Object... args) throws Exception {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
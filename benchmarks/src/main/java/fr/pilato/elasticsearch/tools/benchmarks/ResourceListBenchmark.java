@@ -0,0 +1,100 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discover the resources within a directory or a jar file, with a small or a big number of entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResourceListBenchmark {
+
+	private static final String ROOT = "beyonder-bench";
+
+	@Param({"dir", "jar"})
+	public String layout;
+
+	@Param({"100", "50000"})
+	public int entries;
+
+	private Path tmp;
+	private IsolatedClassLoader loader;
+	private Method getResources;
+	private Method findIndexNames;
+	private Method scan;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		tmp = Files.createTempDirectory("beyonder-bench");
+		SyntheticResources resources = new SyntheticResources(ROOT)
+				.addIndices(entries);
+		Path location = "jar".equals(layout) ?
+				resources.writeToJar(tmp.resolve("resources.jar")) :
+				resources.writeToDirectory(tmp.resolve("resources"));
+		loader = new IsolatedClassLoader(location);
+		getResources = loader.method("util.ResourceList", "getResources", String.class);
+		findIndexNames = loader.method("util.ResourceList", "findIndexNames", String.class);
+		scan = loader.method("util.ResourceTree", "scan", String.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		loader.close();
+		SyntheticResources.delete(tmp);
+	}
+
+	@Benchmark
+	public Object getResources() throws Exception {
+		return IsolatedClassLoader.invoke(getResources, null, ROOT + "/");
+	}
+
+	@Benchmark
+	public Object findIndexNames() throws Exception {
+		return IsolatedClassLoader.invoke(findIndexNames, null, ROOT);
+	}
+
+	@Benchmark
+	public Object resourceTreeScan() throws Exception {
+		return IsolatedClassLoader.invoke(scan, null, ROOT);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read a json resource and replace the variables it contains
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SettingsReaderBenchmark {
+
+	private static final String ROOT = "beyonder-bench";
+
+	@Param({"1024", "1048576"})
+	public int size;
+
+	@Param({"true", "false"})
+	public boolean variables;
+
+	private Path tmp;
+	private IsolatedClassLoader loader;
+	private Method getJsonContent;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		tmp = Files.createTempDirectory("beyonder-bench");
+		StringBuilder json = new StringBuilder("{\"description\":\"synthetic pipeline\",\"processors\":[");
+		int processor = 0;
+		while (json.length() < size) {
+			if (processor > 0) {
+				json.append(",");
+			}
+			json.append("{\"set\":{\"field\":\"field-").append(processor++).append("\",\"value\":\"")
+					.append(variables ? "${USER:-nobody}" : "constant").append("\"}}");
+		}
+		json.append("]}");
+		Path location = new SyntheticResources(ROOT)
+				.add("_pipelines/pipeline.json", json.toString())
+				.writeToDirectory(tmp);
+		loader = new IsolatedClassLoader(location);
+		getJsonContent = loader.method("util.SettingsReader", "getJsonContent", String.class, String.class, String.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		loader.close();
+		SyntheticResources.delete(tmp);
+	}
+
+	@Benchmark
+	public Object getJsonContent() throws Exception {
+		return IsolatedClassLoader.invoke(getJsonContent, null, ROOT, "_pipelines", "pipeline.json");
+	}
+}
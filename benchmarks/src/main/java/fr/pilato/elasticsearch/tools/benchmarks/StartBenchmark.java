@@ -0,0 +1,117 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.benchmarks;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the whole start() pipeline with 1000 resources against an in-process HTTP stub
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class StartBenchmark {
+
+	private static final String ROOT = "beyonder-bench";
+	private static final int RESOURCES_PER_KIND = 200;
+	private static final int INDICES_WITH_DATA = 10;
+	private static final int DOCUMENTS_PER_INDEX = 100;
+
+	@Param({"dir", "jar"})
+	public String layout;
+
+	@Param({"1", "8"})
+	public int parallelism;
+
+	private Path tmp;
+	private HttpStub stub;
+	private RestClient client;
+	private IsolatedClassLoader loader;
+	private Method start;
+	private Object options;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		tmp = Files.createTempDirectory("beyonder-bench");
+		SyntheticResources resources = new SyntheticResources(ROOT)
+				.addIndices(RESOURCES_PER_KIND)
+				.addResources("_index_lifecycles", RESOURCES_PER_KIND,
+						"{\"policy\":{\"phases\":{\"hot\":{\"actions\":{\"rollover\":{\"max_age\":\"1d\"}}}}}}")
+				.addResources("_component_templates", RESOURCES_PER_KIND,
+						"{\"template\":{\"mappings\":{\"properties\":{\"@timestamp\":{\"type\":\"date\"}}}}}")
+				.addResources("_index_templates", RESOURCES_PER_KIND,
+						"{\"index_patterns\":[\"bench-*\"],\"template\":{\"settings\":{\"number_of_shards\":1}}}")
+				.addResources("_pipelines", RESOURCES_PER_KIND,
+						"{\"processors\":[{\"set\":{\"field\":\"foo\",\"value\":\"bar\"}}]}");
+		StringBuilder ndjson = new StringBuilder();
+		for (int i = 0; i < DOCUMENTS_PER_INDEX; i++) {
+			ndjson.append("{\"index\":{}}\n{\"foo\":\"bar-").append(i).append("\"}\n");
+		}
+		for (int i = 0; i < INDICES_WITH_DATA; i++) {
+			resources.add(String.format("index-%06d/_data/data.ndjson", i), ndjson.toString());
+		}
+		Path location = "jar".equals(layout) ?
+				resources.writeToJar(tmp.resolve("resources.jar")) :
+				resources.writeToDirectory(tmp.resolve("resources"));
+
+		stub = new HttpStub();
+		client = RestClient.builder(new HttpHost("127.0.0.1", stub.getPort(), "http")).build();
+		loader = new IsolatedClassLoader(location);
+		Class<?> optionsClass = loader.loadClass("fr.pilato.elasticsearch.tools.util.BeyonderOptions");
+		options = loader.newInstance("util.BeyonderOptions");
+		optionsClass.getMethod("setParallelism", int.class).invoke(options, parallelism);
+		start = loader.method("ElasticsearchBeyonder", "start", RestClient.class, String.class, optionsClass);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		stub.close();
+		loader.close();
+		SyntheticResources.delete(tmp);
+	}
+
+	@Benchmark
+	public void start() throws Exception {
+		IsolatedClassLoader.invoke(start, null, client, ROOT, options);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Generate Beyonder resources and write them in a directory or in a jar file
+ */
+class SyntheticResources {
+
+	private final String root;
+	private final Map<String, byte[]> files = new TreeMap<>();
+
+	SyntheticResources(String root) {
+		this.root = root;
+	}
+
+	String getRoot() {
+		return root;
+	}
+
+	SyntheticResources add(String path, String content) {
+		files.put(root + "/" + path, content.getBytes(StandardCharsets.UTF_8));
+		return this;
+	}
+
+	/**
+	 * Add indices with their settings
+	 * @param count	Number of indices
+	 */
+	SyntheticResources addIndices(int count) {
+		for (int i = 0; i < count; i++) {
+			add(String.format("index-%06d/_settings.json", i),
+					"{\"settings\":{\"number_of_shards\":1},\"mappings\":{\"properties\":{\"foo\":{\"type\":\"keyword\"}}}}");
+		}
+		return this;
+	}
+
+	/**
+	 * Add resources to a given dir, like pipelines or templates
+	 * @param dir		The dir like "_pipelines"
+	 * @param count		Number of resources
+	 * @param content	The content of each resource
+	 */
+	SyntheticResources addResources(String dir, int count, String content) {
+		for (int i = 0; i < count; i++) {
+			add(String.format("%s/%s-%06d.json", dir, dir.substring(1), i), content);
+		}
+		return this;
+	}
+
+	/**
+	 * Write the resources in a directory
+	 * @param dir	The target directory
+	 * @return the directory
+	 */
+	Path writeToDirectory(Path dir) throws IOException {
+		for (Map.Entry<String, byte[]> file : files.entrySet()) {
+			Path path = dir.resolve(file.getKey());
+			Files.createDirectories(path.getParent());
+			Files.write(path, file.getValue());
+		}
+		return dir;
+	}
+
+	/**
+	 * Write the resources in a jar file, with an entry for each directory like the jar tool does
+	 * @param jar	The target jar file
+	 * @return the jar file
+	 */
+	Path writeToJar(Path jar) throws IOException {
+		try (OutputStream stream = Files.newOutputStream(jar);
+			 JarOutputStream jarStream = new JarOutputStream(stream)) {
+			Set<String> dirs = new HashSet<>();
+			for (Map.Entry<String, byte[]> file : files.entrySet()) {
+				String name = file.getKey();
+				int slash = -1;
+				while ((slash = name.indexOf('/', slash + 1)) != -1) {
+					String dir = name.substring(0, slash + 1);
+					if (dirs.add(dir)) {
+						jarStream.putNextEntry(new JarEntry(dir));
+						jarStream.closeEntry();
+					}
+				}
+				jarStream.putNextEntry(new JarEntry(name));
+				jarStream.write(file.getValue());
+				jarStream.closeEntry();
+			}
+		}
+		return jar;
+	}
+
+	/**
+	 * Remove a directory or a file
+	 * @param path	The path to remove
+	 */
+	static void delete(Path path) throws IOException {
+		if (path == null || !Files.exists(path)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(path)) {
+			for (Path toDelete : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(toDelete);
+			}
+		}
+	}
+}
@@ -138,6 +138,7 @@ git checkout -q -b ${RELEASE_BRANCH}
 
 echo "Changing maven version to $RELEASE_VERSION..."
 mvn versions:set -DnewVersion=${RELEASE_VERSION} >> /tmp/beyonder-${RELEASE_VERSION}.log
+mvn -f benchmarks/pom.xml versions:set -DnewVersion=${RELEASE_VERSION} >> /tmp/beyonder-${RELEASE_VERSION}.log
 
 # Git commit release
 git commit -q -a -m "prepare release beyonder-$RELEASE_VERSION"
@@ -193,6 +194,7 @@ fi
 
 echo "Changing maven version to $NEXT_VERSION..."
 mvn versions:set -DnewVersion=${NEXT_VERSION} >> /tmp/beyonder-${RELEASE_VERSION}.log
+mvn -f benchmarks/pom.xml versions:set -DnewVersion=${NEXT_VERSION} >> /tmp/beyonder-${RELEASE_VERSION}.log
 git commit -q -a -m "prepare for next development iteration"
 
 # git checkout branch we started from
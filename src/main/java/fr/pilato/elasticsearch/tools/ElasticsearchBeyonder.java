@@ -19,26 +19,62 @@
 
 package fr.pilato.elasticsearch.tools;
 
+import fr.pilato.elasticsearch.tools.util.ApplyLock;
+import fr.pilato.elasticsearch.tools.util.BeyonderListener;
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import fr.pilato.elasticsearch.tools.util.BeyonderPlan;
+import fr.pilato.elasticsearch.tools.util.BeyonderResult;
+import fr.pilato.elasticsearch.tools.util.BulkStats;
+import fr.pilato.elasticsearch.tools.util.ChecksumStore;
+import fr.pilato.elasticsearch.tools.util.ClusterSnapshot;
 import fr.pilato.elasticsearch.tools.util.DefaultSettings;
-import fr.pilato.elasticsearch.tools.util.ResourceList;
+import fr.pilato.elasticsearch.tools.util.DependencyGraphExecutor;
+import fr.pilato.elasticsearch.tools.util.DependencyGraphExecutor.Task;
+import fr.pilato.elasticsearch.tools.util.FileSystemRoot;
+import fr.pilato.elasticsearch.tools.util.JsonDiff;
+import fr.pilato.elasticsearch.tools.util.PlannedChange;
+import fr.pilato.elasticsearch.tools.util.PlannedChange.Action;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.ResourceKind;
+import fr.pilato.elasticsearch.tools.util.ResourceTree;
+import fr.pilato.elasticsearch.tools.util.SeedCheckpoints;
+import fr.pilato.elasticsearch.tools.util.VariableSource;
 import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchAliasUpdater.manageAliases;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchComponentTemplateUpdater.createComponentTemplate;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchDataUpdater.loadBulkData;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchDataUpdater.loadJsonData;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexLifecycleUpdater.createIndexLifecycle;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.blockWrites;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.cloneIndex;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.createIndex;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.endSeeding;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.findExistingIndices;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.reindex;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.getSeedingSettings;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.startSeeding;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.updateMapping;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.updateSettings;
+import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.waitForStatus;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexTemplateUpdater.createIndexTemplate;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchPipelineUpdater.createPipeline;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonContent;
 
 /**
  * By default, indexes are created with their default Elasticsearch settings. You can specify
@@ -78,6 +114,17 @@ public class ElasticsearchBeyonder {
 
 	private static final Logger logger = LoggerFactory.getLogger(ElasticsearchBeyonder.class);
 
+	private static final String PHASE_INDEX_LIFECYCLES = "index_lifecycles";
+	private static final String PHASE_COMPONENT_TEMPLATES = "component_templates";
+	private static final String PHASE_INDEX_TEMPLATES = "index_templates";
+	private static final String PHASE_PIPELINES = "pipelines";
+	private static final String PHASE_INDICES = "indices";
+	private static final String PHASE_HEALTH = "health";
+	private static final String PHASE_ALIASES = "aliases";
+	private static final String PHASE_DATA = "data";
+	private static final String PHASE_GLOBAL_DATA = "global_data";
+	private static final String PHASE_SHARED_SEEDS = "shared_seeds";
+
 	private ElasticsearchBeyonder() {
 		// empty
 	}
@@ -109,57 +156,478 @@ public class ElasticsearchBeyonder {
 	 * @throws Exception when beyonder can not start
 	 */
 	public static void start(RestClient client, String root, boolean force) throws Exception {
+		start(client, root, new BeyonderOptions().setForce(force));
+	}
+
+	/**
+	 * Automatically scan classpath and create indices, mappings, templates, and other settings.
+	 * @param client elasticsearch client
+	 * @param root dir within the classpath
+	 * @param options beyonder options
+	 * @throws Exception when beyonder can not start
+	 */
+	public static void start(RestClient client, String root, BeyonderOptions options) throws Exception {
+		start(client, root, options, newExecutor(options));
+	}
+
+	/**
+	 * Automatically scan a dir of the filesystem and create indices, mappings, templates, and other settings.
+	 * The data files are read through memory mapped regions, so big datasets don't need to be packaged in a JAR.
+	 * @param client elasticsearch client
+	 * @param root dir of the filesystem
+	 * @throws Exception when beyonder can not start
+	 */
+	public static void start(RestClient client, Path root) throws Exception {
+		start(client, root, new BeyonderOptions());
+	}
+
+	/**
+	 * Automatically scan a dir of the filesystem and create indices, mappings, templates, and other settings.
+	 * @param client elasticsearch client
+	 * @param root dir of the filesystem
+	 * @param options beyonder options
+	 * @throws Exception when beyonder can not start
+	 * @see FileSystemRoot
+	 */
+	public static void start(RestClient client, Path root, BeyonderOptions options) throws Exception {
+		start(client, FileSystemRoot.of(root), options);
+	}
+
+	/**
+	 * Automatically scan classpath and create indices, mappings, templates, and other settings in the background.
+	 * @param client elasticsearch client
+	 * @param root dir within the classpath
+	 * @return a future which completes when beyonder is done
+	 * @see #startAsync(RestClient, String, BeyonderOptions)
+	 */
+	public static CompletableFuture<BeyonderResult> startAsync(RestClient client, String root) {
+		return startAsync(client, root, new BeyonderOptions());
+	}
+
+	/**
+	 * Automatically scan classpath and create indices, mappings, templates, and other settings in the background.
+	 * The calling thread is never blocked.
+	 * <br>
+	 * Cancelling the returned future, or completing it with {@link CompletableFuture#orTimeout(long, TimeUnit)} or
+	 * with {@link BeyonderOptions#setTimeout(java.time.Duration)}, stops what is still running: the resources which
+	 * are not created yet are skipped and the running requests are interrupted.
+	 * @param client elasticsearch client
+	 * @param root dir within the classpath
+	 * @param options beyonder options
+	 * @return a future which completes when beyonder is done
+	 */
+	public static CompletableFuture<BeyonderResult> startAsync(RestClient client, String root, BeyonderOptions options) {
+		DependencyGraphExecutor executor = newExecutor(options);
+		CompletableFuture<BeyonderResult> future = new CompletableFuture<>();
+		Thread thread = new Thread(() -> {
+			try {
+				future.complete(start(client, root, options, executor));
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}, "beyonder-start");
+		thread.setDaemon(true);
+		future.whenComplete((result, e) -> {
+			// The future has been cancelled or timed out from another thread
+			if (e != null && Thread.currentThread() != thread) {
+				logger.debug("stopping beyonder: {}", e.toString());
+				executor.cancel();
+				thread.interrupt();
+			}
+		});
+		thread.start();
+		if (options.getTimeout() != null) {
+			future.orTimeout(options.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+		}
+		return future;
+	}
+
+	private static DependencyGraphExecutor newExecutor(BeyonderOptions options) {
+		return new DependencyGraphExecutor(options.getParallelism(), options.getListener(), options.isVirtualThreads());
+	}
+
+	private static BeyonderResult start(RestClient client, String root, BeyonderOptions options,
+										DependencyGraphExecutor executor) throws Exception {
+		BeyonderListener listener = options.getListener();
+		listener.onStart(root);
+		long start = System.nanoTime();
+		Set<String> createdIndices = ConcurrentHashMap.newKeySet();
+		BulkStats bulkStats = new BulkStats();
+		boolean[] skipped = new boolean[1];
+		try {
+			Requests.run(options, null, null, () -> {
+				if (options.isApplyLock()) {
+					skipped[0] = !startWithLock(client, root, options, executor, createdIndices, bulkStats);
+				} else {
+					doStart(client, root, options, executor, createdIndices, bulkStats);
+				}
+			});
+		} catch (Exception e) {
+			listener.onEnd(root, System.nanoTime() - start, e);
+			throw e;
+		}
+		long took = System.nanoTime() - start;
+		listener.onEnd(root, took, null);
+		return new BeyonderResult(root, new HashSet<>(createdIndices), bulkStats, took, skipped[0]);
+	}
+
+	/**
+	 * Apply the resources only if we get the apply lock
+	 * @return false if the resources have not been applied because another instance holds the lock
+	 */
+	private static boolean startWithLock(RestClient client, String root, BeyonderOptions options, DependencyGraphExecutor executor,
+										 Collection<String> createdIndices, BulkStats bulkStats) throws Exception {
+		String owner = options.getLockOwner() == null ? ApplyLock.defaultOwner() : options.getLockOwner();
+		try (ApplyLock lock = ApplyLock.acquire(client, options.getStateIndex(), root == null ? DefaultSettings.ConfigDir : root,
+				owner, options.getLockTtl(), options.getLockWait())) {
+			switch (lock.getOutcome()) {
+				case DONE_BY_OTHER:
+					logger.info("resources have been applied by another instance. Skipping.");
+					return false;
+				case BUSY:
+					logger.warn("resources are still being applied by another instance after [{}]. Skipping.", options.getLockWait());
+					return false;
+				default:
+					break;
+			}
+
+			// If another instance takes the lock over, we stop applying the resources as soon as we know it
+			lock.onLost(executor::cancel);
+			try {
+				doStart(client, root, options, executor, createdIndices, bulkStats);
+			} catch (Exception e) {
+				try {
+					lock.release(false);
+				} catch (Exception releaseFailure) {
+					e.addSuppressed(releaseFailure);
+				}
+				if (e instanceof CancellationException && !lock.isHeld()) {
+					throw new IllegalStateException("The apply lock has been taken over by another instance. Stopping.", e);
+				}
+				throw e;
+			}
+			// Fails if we lost the lock after the last task started
+			lock.release(true);
+			return true;
+		}
+	}
+
+	private static void doStart(RestClient client, String root, BeyonderOptions options, DependencyGraphExecutor executor,
+								Collection<String> createdIndices, BulkStats bulkStats) throws Exception {
 		logger.info("starting automatic settings/mappings discovery");
+		boolean force = options.isForce();
+		VariableSource variables = options.getVariables();
+
+		// Read the checksums of the resources we already applied
+		ChecksumStore checksums = options.isSkipUnchanged() && !force ?
+				ChecksumStore.load(client, options.getStateIndex()) : null;
+
+		// Read where we stopped loading the data
+		SeedCheckpoints checkpoints = options.isCheckpointSeeding() ?
+				SeedCheckpoints.load(client, options.getStateIndex()) : null;
+
+		// Read the classpath only once
+		ResourceTree resources = ResourceTree.scan(root);
 
 		// create index lifecycles
-		List<String> indexLifecycles = ResourceList.getResourceNames(root, DefaultSettings.IndexLifecyclesDir);
-		for (String indexLifecycleName : indexLifecycles) {
-			createIndexLifecycle(client, root, indexLifecycleName);
+		List<Task> indexLifecycleTasks = new ArrayList<>();
+		for (String indexLifecycleName : resources.getResourceNames(DefaultSettings.IndexLifecyclesDir)) {
+			indexLifecycleTasks.add(track(options, ResourceKind.INDEX_LIFECYCLE, indexLifecycleName,
+					() -> createIndexLifecycle(client, root, indexLifecycleName, checksums, variables)));
 		}
+		executor.addPhase(PHASE_INDEX_LIFECYCLES, indexLifecycleTasks);
 
 		// create component templates
-		List<String> componentTemplates = ResourceList.getResourceNames(root, DefaultSettings.ComponentTemplatesDir);
-		for (String componentTemplateName : componentTemplates) {
-			createComponentTemplate(client, root, componentTemplateName);
+		List<Task> componentTemplateTasks = new ArrayList<>();
+		for (String componentTemplateName : resources.getResourceNames(DefaultSettings.ComponentTemplatesDir)) {
+			componentTemplateTasks.add(track(options, ResourceKind.COMPONENT_TEMPLATE, componentTemplateName,
+					() -> createComponentTemplate(client, root, componentTemplateName, checksums, variables)));
 		}
+		executor.addPhase(PHASE_COMPONENT_TEMPLATES, componentTemplateTasks, PHASE_INDEX_LIFECYCLES);
 
 		// create index templates
-		List<String> indexTemplateNames = ResourceList.getResourceNames(root, DefaultSettings.IndexTemplatesDir);
-		for (String indexTemplateName : indexTemplateNames) {
-			createIndexTemplate(client, root, indexTemplateName);
+		List<Task> indexTemplateTasks = new ArrayList<>();
+		for (String indexTemplateName : resources.getResourceNames(DefaultSettings.IndexTemplatesDir)) {
+			indexTemplateTasks.add(track(options, ResourceKind.INDEX_TEMPLATE, indexTemplateName,
+					() -> createIndexTemplate(client, root, indexTemplateName, checksums, variables)));
 		}
+		executor.addPhase(PHASE_INDEX_TEMPLATES, indexTemplateTasks, PHASE_INDEX_LIFECYCLES, PHASE_COMPONENT_TEMPLATES);
 
 		// create pipelines
-		List<String> pipelineNames = ResourceList.getResourceNames(root, DefaultSettings.PipelinesDir);
-		for (String pipelineName : pipelineNames) {
-			createPipeline(client, root, pipelineName);
+		List<Task> pipelineTasks = new ArrayList<>();
+		for (String pipelineName : resources.getResourceNames(DefaultSettings.PipelinesDir)) {
+			pipelineTasks.add(track(options, ResourceKind.PIPELINE, pipelineName,
+					() -> createPipeline(client, root, pipelineName, checksums, variables)));
 		}
+		executor.addPhase(PHASE_PIPELINES, pipelineTasks);
 
 		// create indices
-		Collection<String> indexNames = ResourceList.findIndexNames(root);
-		// Save the list of created indices within a Collection
-		Collection<String> createdIndices = new ArrayList<>();
+		Collection<String> indexNames = resources.findIndexNames();
+		// Check with a single call which indices already exist
+		Set<String> existingIndices = ConcurrentHashMap.newKeySet();
+		if (!indexNames.isEmpty()) {
+			Requests.run(options, ResourceKind.INDEX, null, () -> existingIndices.addAll(findExistingIndices(client, indexNames)));
+		}
+		List<Task> indexTasks = new ArrayList<>();
 		for (String indexName : indexNames) {
-			if (createIndex(client, root, indexName, force)) {
-				createdIndices.add(indexName);
-			}
-			updateSettings(client, root, indexName);
-			updateMapping(client, root, indexName);
+			indexTasks.add(track(options, ResourceKind.INDEX, indexName, () -> {
+				if (createIndex(client, root, indexName, force, existingIndices, variables, options.getWaitForActiveShards())) {
+					createdIndices.add(indexName);
+					// Remember as soon as possible that the data of this index has to be loaded
+					if (checkpoints != null && hasData(resources, indexName)) {
+						checkpoints.start(indexName);
+					}
+				}
+				updateSettings(client, root, indexName, variables);
+				updateMapping(client, root, indexName, variables);
+			}));
 		}
+		executor.addPhase(PHASE_INDICES, indexTasks, PHASE_INDEX_LIFECYCLES, PHASE_INDEX_TEMPLATES, PHASE_PIPELINES);
+
+		// Wait once for all the new indices to be allocated, so the data is not sent to unassigned shards
+		List<Task> healthTasks = new ArrayList<>();
+		if (options.getWaitForStatus() != null) {
+			healthTasks.add(track(options, ResourceKind.INDEX, null, () -> {
+				if (!createdIndices.isEmpty()) {
+					waitForStatus(client, new TreeSet<>(createdIndices), options.getWaitForStatus(), options.getWaitForStatusTimeout());
+				}
+			}));
+		}
+		executor.addPhase(PHASE_HEALTH, healthTasks, PHASE_INDICES);
 
 		// Manage aliases
-		manageAliases(client, root);
+		executor.addPhase(PHASE_ALIASES, List.of(track(options, ResourceKind.ALIASES, null,
+				() -> manageAliases(client, root, variables))), PHASE_INDICES);
 
 		// index sample data if any
-		for (String indexName : createdIndices) {
-			Collection<String> bulkFiles = ResourceList.findBulkFiles(root, indexName);
-			loadBulkData(client, root, indexName, bulkFiles);
-			Collection<String> singleFiles = ResourceList.findJsonFiles(root, indexName);
-			loadJsonData(client, root, indexName, singleFiles);
+		List<Task> dataTasks = new ArrayList<>();
+		for (String indexName : indexNames) {
+			dataTasks.add(track(options, ResourceKind.DATA, indexName, () -> {
+				boolean created = createdIndices.contains(indexName);
+				// The data of an existing index is loaded only if we stopped in the middle of it
+				if (created || (checkpoints != null && checkpoints.isIncomplete(indexName))) {
+					Collection<String> bulkFiles = resources.findBulkFiles(indexName);
+					Collection<String> singleFiles = resources.findJsonFiles(indexName);
+					boolean hasData = !bulkFiles.isEmpty() || !singleFiles.isEmpty();
+					if (!created) {
+						logger.info("resuming the data loading of index [{}]", indexName);
+					}
+					seed(client, indexName, options, hasData, checkpoints, () -> {
+						bulkStats.add(loadBulkData(client, root, indexName, bulkFiles, options, checkpoints));
+						loadJsonData(client, root, indexName, singleFiles, options, checkpoints);
+					});
+					if (checkpoints != null && checkpoints.isIncomplete(indexName)) {
+						checkpoints.done(indexName);
+					}
+				}
+			}));
 		}
-		Collection<String> bulkFiles = ResourceList.findBulkFiles(root, null);
-		loadBulkData(client, root, null, bulkFiles);
+		executor.addPhase(PHASE_DATA, dataTasks, PHASE_ALIASES, PHASE_HEALTH);
+		executor.addPhase(PHASE_GLOBAL_DATA, List.of(track(options, ResourceKind.DATA, null, () -> {
+			Collection<String> bulkFiles = resources.findBulkFiles(null);
+			bulkStats.add(loadBulkData(client, root, null, bulkFiles, options));
+		})), PHASE_DATA);
+
+		// copy the data of the shared seeds, once nothing is written anymore to the source indices
+		List<Task> sharedSeedTasks = new ArrayList<>();
+		for (Map.Entry<String, List<String>> sharedSeed : options.getSharedSeeds().entrySet()) {
+			sharedSeedTasks.add(track(options, ResourceKind.INDEX, sharedSeed.getKey(), () -> copySharedSeed(client,
+					sharedSeed.getKey(), sharedSeed.getValue(), indexNames, createdIndices, options.getWaitForActiveShards())));
+		}
+		executor.addPhase(PHASE_SHARED_SEEDS, sharedSeedTasks, PHASE_GLOBAL_DATA);
+
+		executor.execute();
 
 		logger.info("start done. Rock & roll!");
 	}
+
+	/**
+	 * Copy the data of a source index to the target indices which have just been created or which don't exist yet.
+	 * The source index is made read-only before.
+	 * @param indexNames the indices found in the classpath. They are copied with the Reindex API if they have just
+	 *                   been created. The other ones are created with the Clone API.
+	 */
+	private static void copySharedSeed(RestClient client, String source, List<String> targets, Collection<String> indexNames,
+									   Collection<String> createdIndices, String waitForActiveShards) throws Exception {
+		List<String> reindexed = new ArrayList<>();
+		List<String> others = new ArrayList<>();
+		for (String target : targets) {
+			if (!indexNames.contains(target)) {
+				others.add(target);
+			} else if (createdIndices.contains(target)) {
+				reindexed.add(target);
+			}
+		}
+		List<String> cloned = new ArrayList<>(others);
+		if (!others.isEmpty()) {
+			cloned.removeAll(findExistingIndices(client, others));
+		}
+		if (cloned.isEmpty() && reindexed.isEmpty()) {
+			logger.debug("all the indices sharing the data of [{}] already exist", source);
+			return;
+		}
+
+		blockWrites(client, source);
+		for (String target : cloned) {
+			logger.debug("cloning index [{}] to [{}]", source, target);
+			cloneIndex(client, source, target, waitForActiveShards);
+			createdIndices.add(target);
+		}
+		for (String target : reindexed) {
+			logger.debug("reindexing index [{}] to [{}]", source, target);
+			reindex(client, source, target);
+		}
+	}
+
+	private static boolean hasData(ResourceTree resources, String index) {
+		return !resources.findBulkFiles(index).isEmpty() || !resources.findJsonFiles(index).isEmpty();
+	}
+
+	/**
+	 * Load the data of an index. In seeding mode, the refresh and the replicas are disabled while loading it.
+	 * With checkpoints, the settings the index had before are saved, so we restore them and not the seeding ones
+	 * when we resume the loading after a crash.
+	 * @param hasData false if there is nothing to load, so we don't change the settings for nothing
+	 * @param checkpoints the checkpoints, null if they are disabled
+	 */
+	private static void seed(RestClient client, String index, BeyonderOptions options, boolean hasData,
+							 SeedCheckpoints checkpoints, Task load) throws Exception {
+		boolean seedingMode = options.isSeedingMode() && hasData;
+		Map<String, String> previous = checkpoints == null ? null : checkpoints.getSettings(index);
+		if (previous == null && seedingMode) {
+			previous = getSeedingSettings(client, index);
+			if (checkpoints != null) {
+				checkpoints.saveSettings(index, previous);
+			}
+		}
+		if (previous == null) {
+			load.run();
+			return;
+		}
+		if (seedingMode) {
+			startSeeding(client, index, previous);
+		}
+		try {
+			load.run();
+		} catch (Exception e) {
+			// We don't want to leave the index without refresh and replicas
+			try {
+				endSeeding(client, index, previous, false);
+			} catch (Exception restore) {
+				e.addSuppressed(restore);
+			}
+			throw e;
+		}
+		endSeeding(client, index, previous, options.isRefreshAfterSeeding());
+	}
+
+	/**
+	 * Report the requests sent by a task to the listener and compress them if needed
+	 */
+	private static Task track(BeyonderOptions options, ResourceKind kind, String name, Task task) {
+		return () -> Requests.run(options, kind, name, task);
+	}
+
+	/**
+	 * Compare the resources found in the classpath with the ones which exist in the cluster, without modifying
+	 * anything. All the existing resources are read with one request per kind of resource.
+	 * @param client elasticsearch client
+	 * @param root dir within the classpath
+	 * @param options beyonder options
+	 * @return what {@link #start(RestClient, String, BeyonderOptions)} would do
+	 * @throws Exception when the resources or the cluster can not be read
+	 */
+	public static BeyonderPlan plan(RestClient client, String root, BeyonderOptions options) throws Exception {
+		ResourceTree resources = ResourceTree.scan(root);
+		ClusterSnapshot snapshot = ClusterSnapshot.fetch(client, resources.findIndexNames());
+		return plan(snapshot, root, resources, options);
+	}
+
+	/**
+	 * Compare the resources found in the classpath with the ones of a snapshot of the cluster. This does not need
+	 * any running cluster.
+	 * @param snapshot the resources which exist in the cluster
+	 * @param root dir within the classpath
+	 * @param options beyonder options
+	 * @return what {@link #start(RestClient, String, BeyonderOptions)} would do
+	 * @throws Exception when the resources can not be read
+	 */
+	public static BeyonderPlan plan(ClusterSnapshot snapshot, String root, BeyonderOptions options) throws Exception {
+		return plan(snapshot, root, ResourceTree.scan(root), options);
+	}
+
+	private static BeyonderPlan plan(ClusterSnapshot snapshot, String root, ResourceTree resources,
+									 BeyonderOptions options) throws Exception {
+		logger.debug("planning changes for [{}] against {}", root, snapshot);
+		VariableSource variables = options.getVariables();
+		List<PlannedChange> changes = new ArrayList<>();
+
+		planResources(changes, snapshot, root, resources, ResourceKind.INDEX_LIFECYCLE, DefaultSettings.IndexLifecyclesDir, variables);
+		planResources(changes, snapshot, root, resources, ResourceKind.COMPONENT_TEMPLATE, DefaultSettings.ComponentTemplatesDir, variables);
+		planResources(changes, snapshot, root, resources, ResourceKind.INDEX_TEMPLATE, DefaultSettings.IndexTemplatesDir, variables);
+		planResources(changes, snapshot, root, resources, ResourceKind.PIPELINE, DefaultSettings.PipelinesDir, variables);
+
+		for (String indexName : resources.findIndexNames()) {
+			Map<String, Object> existing = snapshot.findIndices(indexName);
+			if (existing.isEmpty()) {
+				changes.add(new PlannedChange(ResourceKind.INDEX, indexName, Action.CREATE, List.of()));
+			} else if (options.isForce()) {
+				changes.add(new PlannedChange(ResourceKind.INDEX, indexName, Action.UPDATE,
+						List.of("index would be removed and created again")));
+			} else {
+				Object settings = unwrap(JsonDiff.parse(getJsonContent(root, indexName, DefaultSettings.UpdateIndexSettingsFileName, variables)), "settings");
+				Object mappings = unwrap(JsonDiff.parse(getJsonContent(root, indexName, DefaultSettings.UpdateIndexMappingFileName, variables)), "mappings");
+				List<String> differences = new ArrayList<>();
+				for (Map.Entry<String, Object> index : existing.entrySet()) {
+					Map<?, ?> actual = index.getValue() instanceof Map ? (Map<?, ?>) index.getValue() : Map.of();
+					for (String difference : JsonDiff.diff(wrap("settings", settings), wrap("settings", actual.get("settings")))) {
+						differences.add("[" + index.getKey() + "] " + difference);
+					}
+					for (String difference : JsonDiff.diff(wrap("mappings", mappings), wrap("mappings", actual.get("mappings")))) {
+						differences.add("[" + index.getKey() + "] " + difference);
+					}
+				}
+				changes.add(new PlannedChange(ResourceKind.INDEX, indexName,
+						differences.isEmpty() ? Action.NOOP : Action.UPDATE, differences));
+			}
+		}
+
+		if (getJsonContent(root, null, DefaultSettings.AliasesFile, variables) != null) {
+			changes.add(new PlannedChange(ResourceKind.ALIASES, null, Action.UPDATE,
+					List.of("alias actions are always applied")));
+		}
+
+		BeyonderPlan plan = new BeyonderPlan(changes);
+		logger.debug("plan for [{}]:\n{}", root, plan);
+		return plan;
+	}
+
+	private static void planResources(List<PlannedChange> changes, ClusterSnapshot snapshot, String root, ResourceTree resources,
+									  ResourceKind kind, String dir, VariableSource variables) throws Exception {
+		for (String name : resources.getResourceNames(dir)) {
+			Object expected = JsonDiff.parse(getJsonContent(root, dir, name + DefaultSettings.JsonFileExtension, variables));
+			if (kind == ResourceKind.INDEX_LIFECYCLE) {
+				// Elasticsearch returns the content of the policy field only
+				expected = unwrap(expected, "policy");
+			}
+			Object actual = snapshot.get(kind, name);
+			if (actual == null) {
+				changes.add(new PlannedChange(kind, name, Action.CREATE, List.of()));
+			} else {
+				List<String> differences = JsonDiff.diff(expected, actual);
+				changes.add(new PlannedChange(kind, name, differences.isEmpty() ? Action.NOOP : Action.UPDATE, differences));
+			}
+		}
+	}
+
+	private static Object unwrap(Object tree, String field) {
+		if (tree instanceof Map && ((Map<?, ?>) tree).size() == 1 && ((Map<?, ?>) tree).containsKey(field)) {
+			return ((Map<?, ?>) tree).get(field);
+		}
+		return tree;
+	}
+
+	private static Map<String, Object> wrap(String field, Object tree) {
+		return tree == null ? Map.of() : Map.of(field, tree);
+	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.metrics;
+
+import fr.pilato.elasticsearch.tools.util.BeyonderListener;
+import fr.pilato.elasticsearch.tools.util.RequestEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link BeyonderListener} which records Micrometer metrics:
+ * <ul>
+ *     <li><code>beyonder.start</code>: timer of the whole start, tagged with <code>root</code> and <code>outcome</code></li>
+ *     <li><code>beyonder.phase</code>: timer of each phase, tagged with <code>phase</code> and <code>outcome</code></li>
+ *     <li><code>beyonder.requests</code>: timer of each request sent to elasticsearch, tagged with <code>kind</code>,
+ *     <code>method</code>, <code>status</code> and <code>outcome</code></li>
+ *     <li><code>beyonder.requests.size</code>: size in bytes of the request bodies, tagged with <code>kind</code></li>
+ *     <li><code>beyonder.requests.compression.saved</code>: number of bytes saved by compressing the request bodies,
+ *     tagged with <code>kind</code></li>
+ *     <li><code>beyonder.bulk.actions</code>: number of bulk actions sent, tagged with <code>kind</code> and <code>outcome</code></li>
+ * </ul>
+ * The resource names are not used as tags to keep the cardinality low.
+ * <br>
+ * Micrometer is an optional dependency: add <code>io.micrometer:micrometer-core</code> to your project to use this class.
+ */
+public class MicrometerBeyonderListener implements BeyonderListener {
+
+	private static final String SUCCESS = "success";
+	private static final String FAILURE = "failure";
+
+	private final MeterRegistry registry;
+
+	/**
+	 * Create the listener
+	 * @param registry	The registry where the metrics are recorded
+	 */
+	public MicrometerBeyonderListener(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void onEnd(String root, long tookNanos, Exception failure) {
+		Timer.builder("beyonder.start")
+				.description("Time spent by Beyonder to start")
+				.tags("root", String.valueOf(root), "outcome", outcome(failure))
+				.register(registry)
+				.record(tookNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void onPhaseEnd(String phase, int tasks, long tookNanos, Exception failure) {
+		Timer.builder("beyonder.phase")
+				.description("Time spent within each phase")
+				.tags("phase", phase, "outcome", outcome(failure))
+				.register(registry)
+				.record(tookNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void onRequest(RequestEvent event) {
+		String kind = event.getKind() == null ? "none" : event.getKind().getName();
+		String outcome = outcome(event.getFailure());
+		Timer.builder("beyonder.requests")
+				.description("Time spent within each request sent to elasticsearch")
+				.tags("kind", kind, "method", event.getMethod(), "status", String.valueOf(event.getStatus()),
+						"outcome", outcome)
+				.register(registry)
+				.record(event.getTookNanos(), TimeUnit.NANOSECONDS);
+		if (event.getBytesSent() > 0) {
+			DistributionSummary.builder("beyonder.requests.size")
+					.description("Size of the request bodies sent to elasticsearch")
+					.baseUnit("bytes")
+					.tags("kind", kind)
+					.register(registry)
+					.record(event.getBytesSent());
+		}
+		if (event.getBytesSaved() > 0) {
+			Counter.builder("beyonder.requests.compression.saved")
+					.description("Number of bytes saved by compressing the request bodies")
+					.baseUnit("bytes")
+					.tags("kind", kind)
+					.register(registry)
+					.increment(event.getBytesSaved());
+		}
+		if (event.getActions() > 0) {
+			Counter.builder("beyonder.bulk.actions")
+					.description("Number of bulk actions sent to elasticsearch")
+					.tags("kind", kind, "outcome", outcome)
+					.register(registry)
+					.increment(event.getActions());
+		}
+	}
+
+	private static String outcome(Exception failure) {
+		return failure == null ? SUCCESS : FAILURE;
+	}
+}
@@ -20,13 +20,17 @@
 package fr.pilato.elasticsearch.tools.updaters;
 
 import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.VariableSource;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonContent;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonBytes;
 
 /**
  * Manage aliases in Elasticsearch.
@@ -46,7 +50,18 @@ public class ElasticsearchAliasUpdater {
      * @throws Exception if something goes wrong
      */
     public static void manageAliases(RestClient client, String root) throws Exception {
-        String json = getJsonContent(root, null, DefaultSettings.AliasesFile);
+        manageAliases(client, root, VariableSource.environment());
+    }
+
+    /**
+     * Manage global aliases in Elasticsearch.
+     * @param client Elasticsearch client
+     * @param root dir within the classpath
+     * @param variables where to read the values of the variables found in the file
+     * @throws Exception if something goes wrong
+     */
+    public static void manageAliases(RestClient client, String root, VariableSource variables) throws Exception {
+        byte[] json = getJsonBytes(root, null, DefaultSettings.AliasesFile, variables);
         if (json != null) {
             logger.debug("Found [{}/{}] file", root, DefaultSettings.AliasesFile);
             manageAliasesWithJsonInElasticsearch(client, json);
@@ -59,15 +74,15 @@ public class ElasticsearchAliasUpdater {
      * @param json JSon content for the aliases
      * @throws Exception if something goes wrong
      */
-    private static void manageAliasesWithJsonInElasticsearch(RestClient client, String json) throws Exception {
+    private static void manageAliasesWithJsonInElasticsearch(RestClient client, byte[] json) throws Exception {
         logger.trace("manageAliases()");
 
         assert client != null;
         assert json != null;
 
         Request request = new Request("POST", "/_aliases/");
-        request.setJsonEntity(json);
-        Response response = client.performRequest(request);
+        request.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+        Response response = Requests.perform(client, request);
 
         if (response.getStatusLine().getStatusCode() != 200) {
             logger.warn("Could not manage aliases. Got error: {}: {}",
@@ -19,14 +19,20 @@
 
 package fr.pilato.elasticsearch.tools.updaters;
 
+import fr.pilato.elasticsearch.tools.util.ChecksumStore;
 import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.ResourceKind;
+import fr.pilato.elasticsearch.tools.util.VariableSource;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonContent;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonBytes;
 
 /**
  * Manage elasticsearch component templates
@@ -48,8 +54,40 @@ public class ElasticsearchComponentTemplateUpdater {
 	 * @throws Exception if something goes wrong
 	 */
 	public static void createComponentTemplate(RestClient client, String root, String template) throws Exception {
-		String json = getJsonContent(root, DefaultSettings.ComponentTemplatesDir, template + DefaultSettings.JsonFileExtension);
+		createComponentTemplate(client, root, template, null);
+	}
+
+	/**
+	 * Create a component template in Elasticsearch if it changed since the last time it has been applied.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param template Template name
+	 * @param checksums checksums of the resources already applied. If null, the resource is always applied.
+	 * @throws Exception if something goes wrong
+	 */
+	public static void createComponentTemplate(RestClient client, String root, String template, ChecksumStore checksums) throws Exception {
+		createComponentTemplate(client, root, template, checksums, VariableSource.environment());
+	}
+
+	/**
+	 * Create a component template in Elasticsearch if it changed since the last time it has been applied.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param template Template name
+	 * @param checksums checksums of the resources already applied. If null, the resource is always applied.
+	 * @param variables where to read the values of the variables found in the resource
+	 * @throws Exception if something goes wrong
+	 */
+	public static void createComponentTemplate(RestClient client, String root, String template, ChecksumStore checksums, VariableSource variables) throws Exception {
+		byte[] json = getJsonBytes(root, DefaultSettings.ComponentTemplatesDir, template + DefaultSettings.JsonFileExtension, variables);
+		if (checksums != null && checksums.isUnchanged(ResourceKind.COMPONENT_TEMPLATE, template, json)) {
+			logger.debug("Component template [{}] did not change. Skipping.", template);
+			return;
+		}
 		createComponentTemplateWithJsonInElasticsearch(client, template, json);
+		if (checksums != null) {
+			checksums.save(ResourceKind.COMPONENT_TEMPLATE, template, json);
+		}
 	}
 
 	/**
@@ -59,15 +97,15 @@ public class ElasticsearchComponentTemplateUpdater {
 	 * @param json JSon content for the template
 	 * @throws Exception if something goes wrong
 	 */
-	private static void createComponentTemplateWithJsonInElasticsearch(RestClient client, String template, String json) throws Exception {
+	private static void createComponentTemplateWithJsonInElasticsearch(RestClient client, String template, byte[] json) throws Exception {
 		logger.trace("createComponentTemplate([{}])", template);
 
 		assert client != null;
 		assert template != null;
 
 		Request request = new Request("PUT", "/_component_template/" + template);
-		request.setJsonEntity(json);
-		Response response = client.performRequest(request);
+		request.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+		Response response = Requests.perform(client, request);
 
 		if (response.getStatusLine().getStatusCode() != 200) {
 			logger.warn("Could not create component template [{}]", template);
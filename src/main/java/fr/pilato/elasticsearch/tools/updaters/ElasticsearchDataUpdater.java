@@ -19,16 +19,33 @@
 
 package fr.pilato.elasticsearch.tools.updaters;
 
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import fr.pilato.elasticsearch.tools.util.BulkChunk;
+import fr.pilato.elasticsearch.tools.util.BulkIngester;
+import fr.pilato.elasticsearch.tools.util.BulkStats;
+import fr.pilato.elasticsearch.tools.util.ChecksumStore;
+import fr.pilato.elasticsearch.tools.util.CompressedStreams;
 import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.JsonBulkBuilder;
+import fr.pilato.elasticsearch.tools.util.NdJsonBulkReader;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.SeedCheckpoints;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
 import java.util.Collection;
 
-import static fr.pilato.elasticsearch.tools.util.SettingsReader.getFileContent;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.getFileBytes;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.openFileStream;
 
 /**
  * Manage elasticsearch data when you want to preload some data
@@ -38,6 +55,8 @@ public class ElasticsearchDataUpdater {
 
 	private static final Logger logger = LoggerFactory.getLogger(ElasticsearchDataUpdater.class);
 
+	private static final String JSON_FILES = "*.json";
+
 	private ElasticsearchDataUpdater() {
 		// empty
 	}
@@ -52,15 +71,78 @@ public class ElasticsearchDataUpdater {
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
 	public static void loadBulkData(RestClient client, String root, String index, Collection<String> bulkFiles) throws Exception {
+		loadBulkData(client, root, index, bulkFiles, new BeyonderOptions());
+	}
+
+	/**
+	 * Load data from a given ndjson file within the classpath and send it to elasticsearch using the Bulk API.
+	 * Files ending with .ndjson.gz or .ndjson.zst are decoded while they are read.
+	 * The file is read as a stream and is sent in multiple bulk requests which are limited by
+	 * {@link BeyonderOptions#getBulkMaxActions()} and {@link BeyonderOptions#getBulkMaxBytes()}.
+	 * Up to {@link BeyonderOptions#getBulkConcurrency()} bulk requests are sent at the same time.
+	 * Actions rejected by elasticsearch are sent again up to {@link BeyonderOptions#getBulkMaxRetries()} times.
+	 *
+	 * @param client    Elasticsearch client
+	 * @param root      dir within the classpath
+	 * @param index     Index name
+	 * @param bulkFiles The list of bulk files to load
+	 * @param options   Beyonder options
+	 * @return the number of documents indexed, retried and failed
+	 * @throws Exception if the elasticsearch API call is failing or if any action failed
+	 */
+	public static BulkStats loadBulkData(RestClient client, String root, String index, Collection<String> bulkFiles, BeyonderOptions options) throws Exception {
+		return loadBulkData(client, root, index, bulkFiles, options, null);
+	}
+
+	/**
+	 * Load data from a given ndjson file within the classpath and send it to elasticsearch using the Bulk API.
+	 * See {@link #loadBulkData(RestClient, String, String, Collection, BeyonderOptions)}.
+	 * <br>
+	 * When checkpoints are given, the position up to which each file has been loaded is saved. The files which
+	 * have already been loaded are skipped and a file which has been partially loaded is read from this position.
+	 * A file which has been loaded, fully or partially, is hashed again to check that it did not change since.
+	 *
+	 * @param client      Elasticsearch client
+	 * @param root        dir within the classpath
+	 * @param index       Index name
+	 * @param bulkFiles   The list of bulk files to load
+	 * @param options     Beyonder options
+	 * @param checkpoints The checkpoints of the files already loaded, or null to load all the files.
+	 *                    Ignored when there is no index name.
+	 * @return the number of documents indexed, retried and failed
+	 * @throws Exception if the elasticsearch API call is failing or if any action failed
+	 */
+	public static BulkStats loadBulkData(RestClient client, String root, String index, Collection<String> bulkFiles, BeyonderOptions options,
+										 SeedCheckpoints checkpoints) throws Exception {
 		// If we don't have an index name, we will use _bulk as the subdir to use
 		String subdir = index == null ? DefaultSettings.DataDir : index + "/" + DefaultSettings.DataDir;
-		for (String bulkFile : bulkFiles) {
-			String ndjson = getFileContent(root, subdir, bulkFile);
-			if (ndjson != null) {
-				logger.debug("Found [{}/{}/{}] file", root, subdir, bulkFile);
-				loadBulkDataToElasticsearch(client, index, bulkFile, ndjson);
+		String endpoint = "/";
+		if (index != null) {
+			endpoint += index + "/";
+		}
+		endpoint += "_bulk";
+
+		BulkIngester ingester = new BulkIngester(client, options);
+		try {
+			for (String bulkFile : bulkFiles) {
+				InputStream stream = openFileStream(root, subdir, bulkFile);
+				if (stream != null) {
+					logger.debug("Found [{}/{}/{}] file", root, subdir, bulkFile);
+					if (checkpoints == null || index == null) {
+						loadBulkDataToElasticsearch(ingester, endpoint, bulkFile, stream, options);
+					} else {
+						loadBulkDataWithCheckpoints(ingester, root, subdir, index, endpoint, bulkFile, stream, options, checkpoints);
+					}
+				}
 			}
+		} catch (Exception e) {
+			// The failure of a running bulk request must not hide this one
+			awaitCompletion(ingester, e);
+			throw e;
 		}
+		ingester.awaitCompletion();
+		logger.debug("Bulk data loaded in [{}]: {}", endpoint, ingester.getStats());
+		return ingester.getStats();
 	}
 
 	/**
@@ -73,14 +155,64 @@ public class ElasticsearchDataUpdater {
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
 	public static void loadJsonData(RestClient client, String root, String index, Collection<String> jsonFiles) throws Exception {
+		loadJsonData(client, root, index, jsonFiles, new BeyonderOptions());
+	}
+
+	/**
+	 * Load data from json files within the classpath and send it to elasticsearch. If
+	 * {@link BeyonderOptions#isJsonDataAsBulk()} is set, the documents are grouped and sent using the Bulk API.
+	 * Otherwise, each document is sent using the Index API (slow).
+	 *
+	 * @param client    Elasticsearch client
+	 * @param root      dir within the classpath
+	 * @param index     Index name
+	 * @param jsonFiles The list of json files to load
+	 * @param options   Beyonder options
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void loadJsonData(RestClient client, String root, String index, Collection<String> jsonFiles, BeyonderOptions options) throws Exception {
+		loadJsonData(client, root, index, jsonFiles, options, null);
+	}
+
+	/**
+	 * Load data from json files within the classpath and send it to elasticsearch.
+	 * See {@link #loadJsonData(RestClient, String, String, Collection, BeyonderOptions)}.
+	 * <br>
+	 * When checkpoints are given, the json files of an index are loaded only if they have not been loaded yet.
+	 * They are all considered as a single file, identified by the hash of their names and their contents.
+	 *
+	 * @param client      Elasticsearch client
+	 * @param root        dir within the classpath
+	 * @param index       Index name
+	 * @param jsonFiles   The list of json files to load
+	 * @param options     Beyonder options
+	 * @param checkpoints The checkpoints of the files already loaded, or null to load all the files
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void loadJsonData(RestClient client, String root, String index, Collection<String> jsonFiles, BeyonderOptions options,
+									SeedCheckpoints checkpoints) throws Exception {
 		// If we don't have an index name, we must fail
 		if (index == null) {
 			throw new Exception("You must provide an index name when you want to load data from a json file.");
 		}
+		if (checkpoints != null && !jsonFiles.isEmpty()) {
+			String hash = jsonFilesHash(root, index + "/" + DefaultSettings.DataDir, jsonFiles);
+			if (checkpoints.getOffset(index, JSON_FILES, hash) == SeedCheckpoints.DONE) {
+				logger.debug("json files of [{}] have already been loaded. Skipping.", index);
+				return;
+			}
+			loadJsonData(client, root, index, jsonFiles, options, null);
+			checkpoints.done(index, JSON_FILES, hash, jsonFiles.size());
+			return;
+		}
 
 		String subdir = index + "/" + DefaultSettings.DataDir;
+		if (options.isJsonDataAsBulk()) {
+			loadJsonDataWithBulk(client, root, subdir, index, jsonFiles, options);
+			return;
+		}
 		for (String jsonFile : jsonFiles) {
-			String json = getFileContent(root, subdir, jsonFile);
+			byte[] json = getFileBytes(root, subdir, jsonFile);
 			if (json != null) {
 				logger.debug("Found [{}/{}/{}] file", root, subdir, jsonFile);
 				loadJsonDataToElasticsearch(client, index, jsonFile, json);
@@ -88,44 +220,196 @@ public class ElasticsearchDataUpdater {
 		}
 	}
 
-	private static void loadBulkDataToElasticsearch(RestClient client, String index, String bulkFile, String ndjson) throws Exception {
-		logger.trace("loadBulkDataToElasticsearch([{}], [{}], [{}])", index, bulkFile, ndjson.length());
+	/**
+	 * Compute a hash of the names and the contents of the json files, so we know if any of them changed
+	 */
+	private static String jsonFilesHash(String root, String subdir, Collection<String> jsonFiles) throws IOException {
+		StringBuilder files = new StringBuilder();
+		for (String jsonFile : jsonFiles) {
+			byte[] json = getFileBytes(root, subdir, jsonFile);
+			files.append(jsonFile).append(':').append(json == null ? "" : ChecksumStore.hash(json)).append('\n');
+		}
+		return ChecksumStore.hash(files.toString());
+	}
+
+	private static void loadJsonDataWithBulk(RestClient client, String root, String subdir, String index, Collection<String> jsonFiles, BeyonderOptions options) throws Exception {
+		logger.trace("loadJsonDataWithBulk([{}], [{}])", index, jsonFiles.size());
+
+		String endpoint = "/" + index + "/_bulk";
+		BulkIngester ingester = new BulkIngester(client, options);
+		JsonBulkBuilder builder = new JsonBulkBuilder(options.getBulkMaxActions(), options.getBulkMaxBytes());
+		try {
+			for (String jsonFile : jsonFiles) {
+				InputStream stream = openFileStream(root, subdir, jsonFile);
+				if (stream != null) {
+					logger.debug("Found [{}/{}/{}] file", root, subdir, jsonFile);
+					BulkChunk chunk;
+					try {
+						chunk = builder.add(jsonFile, stream);
+					} catch (IOException e) {
+						throw new Exception("Could not load json data from file [" + jsonFile + "].", e);
+					}
+					if (chunk != null) {
+						ingester.add(endpoint, subdir, chunk);
+					}
+				}
+			}
+			BulkChunk chunk = builder.flush();
+			if (chunk != null) {
+				ingester.add(endpoint, subdir, chunk);
+			}
+		} catch (Exception e) {
+			// The failure of a running bulk request must not hide this one
+			awaitCompletion(ingester, e);
+			throw e;
+		}
+		ingester.awaitCompletion();
+
+		logger.trace("/loadJsonDataWithBulk([{}], [{}]): {}", index, jsonFiles.size(), ingester.getStats());
+	}
+
+	/**
+	 * Wait for the running bulk requests after a failure. If one of them failed, it is added as a suppressed exception.
+	 */
+	private static void awaitCompletion(BulkIngester ingester, Exception e) {
+		try {
+			ingester.awaitCompletion();
+		} catch (Exception bulkFailure) {
+			// The ingester might have thrown its failure already
+			if (bulkFailure != e) {
+				e.addSuppressed(bulkFailure);
+			}
+		}
+	}
 
-		assert client != null;
+	private static void loadBulkDataToElasticsearch(BulkIngester ingester, String endpoint, String bulkFile, InputStream stream, BeyonderOptions options) throws Exception {
+		logger.trace("loadBulkDataToElasticsearch([{}], [{}])", endpoint, bulkFile);
 
-		String endpoint = "/";
-		if (index != null) {
-			endpoint += index + "/";
+		InputStream decoded;
+		try {
+			decoded = CompressedStreams.decode(bulkFile, stream);
+		} catch (IOException e) {
+			throw new Exception("Could not load bulk data from file [" + bulkFile + "].", e);
+		}
+		try (NdJsonBulkReader reader = new NdJsonBulkReader(decoded, options.getBulkMaxActions(), options.getBulkMaxBytes())) {
+			BulkChunk chunk;
+			while ((chunk = reader.next()) != null) {
+				ingester.add(endpoint, bulkFile, chunk);
+			}
 		}
-		endpoint += "_bulk";
 
-		Request request = new Request("POST", endpoint);
-		request.setJsonEntity(ndjson);
-		Response response = client.performRequest(request);
+		logger.trace("/loadBulkDataToElasticsearch([{}], [{}])", endpoint, bulkFile);
+	}
+
+	private static void loadBulkDataWithCheckpoints(BulkIngester ingester, String root, String subdir, String index, String endpoint,
+													String bulkFile, InputStream stream, BeyonderOptions options,
+													SeedCheckpoints checkpoints) throws Exception {
+		logger.trace("loadBulkDataWithCheckpoints([{}], [{}])", endpoint, bulkFile);
 
-		if (response.getStatusLine().getStatusCode() != 200) {
-			logger.warn("Could not load bulk file [{}] of size [{}] into Elasticsearch", bulkFile, ndjson.length());
-			throw new Exception("Could not load bulk data from file [" + bulkFile + "].");
+		// We only need to read the file twice to know if it changed since we started to load it
+		String knownHash = null;
+		long offset = 0;
+		InputStream decoded;
+		DigestInputStream hashing = null;
+		try {
+			if (checkpoints.contains(index, bulkFile)) {
+				knownHash = hashFile(root, subdir, bulkFile);
+				offset = checkpoints.getOffset(index, bulkFile, knownHash);
+				if (offset == SeedCheckpoints.DONE) {
+					logger.debug("[{}] has already been loaded in [{}]. Skipping.", bulkFile, index);
+					stream.close();
+					return;
+				}
+				if (offset > 0) {
+					logger.info("Resuming the loading of [{}] in [{}] from position [{}]", bulkFile, index, offset);
+				}
+			} else {
+				stream = hashing = ChecksumStore.hashing(stream);
+			}
+			decoded = openAt(bulkFile, stream, offset);
+		} catch (IOException e) {
+			stream.close();
+			throw new Exception("Could not load bulk data from file [" + bulkFile + "].", e);
 		}
 
-		logger.trace("/loadBulkDataToElasticsearch([{}], [{}], [{}])", index, bulkFile, ndjson.length());
+		String hash = knownHash;
+		long end = offset;
+		try (NdJsonBulkReader reader = new NdJsonBulkReader(decoded, options.getBulkMaxActions(), options.getBulkMaxBytes())) {
+			BulkChunk chunk;
+			while ((chunk = reader.next()) != null) {
+				end = offset + reader.getChunkEnd();
+				ingester.add(endpoint, bulkFile, chunk, end);
+				long completed = ingester.getCompletedPosition(bulkFile);
+				if (completed > offset) {
+					if (hash == null) {
+						// The file is too big to wait for the end of it
+						hash = hashFile(root, subdir, bulkFile);
+					}
+					checkpoints.progress(index, bulkFile, hash, completed);
+				}
+			}
+			if (hash == null) {
+				// The decoder might not have read the end of the file
+				hashing.transferTo(OutputStream.nullOutputStream());
+				hash = ChecksumStore.digest(hashing);
+			}
+		}
+
+		String fileHash = hash;
+		long fileEnd = end;
+		if (end == offset) {
+			checkpoints.done(index, bulkFile, fileHash, fileEnd);
+		} else {
+			// We can only mark the file as loaded once all its requests are done, but we don't wait for them
+			ingester.onCompleted(bulkFile, end, () -> checkpoints.done(index, bulkFile, fileHash, fileEnd));
+		}
+
+		logger.trace("/loadBulkDataWithCheckpoints([{}], [{}])", endpoint, bulkFile);
+	}
+
+	private static String hashFile(String root, String subdir, String file) throws IOException {
+		try (InputStream stream = openFileStream(root, subdir, file)) {
+			if (stream == null) {
+				throw new IOException("Can not read [" + file + "] again.");
+			}
+			return ChecksumStore.hash(stream);
+		}
+	}
+
+	/**
+	 * Open a bulk file at a given position of its decoded content
+	 * @param bulkFile	the file name
+	 * @param stream	the file
+	 * @param offset	the position
+	 * @return the decoded content from this position
+	 */
+	private static InputStream openAt(String bulkFile, InputStream stream, long offset) throws IOException {
+		// We have no choice but to decode what we skip in a compressed file
+		InputStream decoded = CompressedStreams.decode(bulkFile, stream);
+		try {
+			decoded.skipNBytes(offset);
+		} catch (IOException e) {
+			decoded.close();
+			throw e;
+		}
+		return decoded;
 	}
 
-	private static void loadJsonDataToElasticsearch(RestClient client, String index, String jsonFile, String json) throws Exception {
-		logger.trace("loadJsonDataToElasticsearch([{}], [{}], [{}])", index, jsonFile, json.length());
+	private static void loadJsonDataToElasticsearch(RestClient client, String index, String jsonFile, byte[] json) throws Exception {
+		logger.trace("loadJsonDataToElasticsearch([{}], [{}], [{}])", index, jsonFile, json.length);
 
 		assert client != null;
 
 		String endpoint = "/" + index + "/_doc/";
 		Request request = new Request("POST", endpoint);
-		request.setJsonEntity(json);
-		Response response = client.performRequest(request);
+		request.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+		Response response = Requests.perform(client, request);
 
 		if (response.getStatusLine().getStatusCode() != 201) {
-			logger.warn("Could not load json file [{}] of size [{}] into Elasticsearch", jsonFile, json.length());
+			logger.warn("Could not load json file [{}] of size [{}] into Elasticsearch", jsonFile, json.length);
 			throw new Exception("Could not load json data from file [" + jsonFile + "].");
 		}
 
-		logger.trace("/loadJsonDataToElasticsearch([{}], [{}], [{}])", index, jsonFile, json.length());
+		logger.trace("/loadJsonDataToElasticsearch([{}], [{}], [{}])", index, jsonFile, json.length);
 	}
 }
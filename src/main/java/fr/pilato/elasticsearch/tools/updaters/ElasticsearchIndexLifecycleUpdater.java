@@ -19,14 +19,20 @@
 
 package fr.pilato.elasticsearch.tools.updaters;
 
+import fr.pilato.elasticsearch.tools.util.ChecksumStore;
 import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.ResourceKind;
+import fr.pilato.elasticsearch.tools.util.VariableSource;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonContent;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonBytes;
 
 /**
  * Manage elasticsearch index lifecycles
@@ -47,8 +53,40 @@ public class ElasticsearchIndexLifecycleUpdater {
 	 * @throws Exception if something goes wrong
 	 */
 	public static void createIndexLifecycle(RestClient client, String root, String policy) throws Exception {
-		String json = getJsonContent(root, DefaultSettings.IndexLifecyclesDir, policy  + DefaultSettings.JsonFileExtension);
+		createIndexLifecycle(client, root, policy, null);
+	}
+
+	/**
+	 * Create an index lifecycle policy in Elasticsearch if it changed since the last time it has been applied.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param policy Lifecycle policy name
+	 * @param checksums checksums of the resources already applied. If null, the resource is always applied.
+	 * @throws Exception if something goes wrong
+	 */
+	public static void createIndexLifecycle(RestClient client, String root, String policy, ChecksumStore checksums) throws Exception {
+		createIndexLifecycle(client, root, policy, checksums, VariableSource.environment());
+	}
+
+	/**
+	 * Create an index lifecycle policy in Elasticsearch if it changed since the last time it has been applied.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param policy Lifecycle policy name
+	 * @param checksums checksums of the resources already applied. If null, the resource is always applied.
+	 * @param variables where to read the values of the variables found in the resource
+	 * @throws Exception if something goes wrong
+	 */
+	public static void createIndexLifecycle(RestClient client, String root, String policy, ChecksumStore checksums, VariableSource variables) throws Exception {
+		byte[] json = getJsonBytes(root, DefaultSettings.IndexLifecyclesDir, policy  + DefaultSettings.JsonFileExtension, variables);
+		if (checksums != null && checksums.isUnchanged(ResourceKind.INDEX_LIFECYCLE, policy, json)) {
+			logger.debug("Index lifecycle policy [{}] did not change. Skipping.", policy);
+			return;
+		}
 		createIndexLifecycleWithJsonInElasticsearch(client, policy, json);
+		if (checksums != null) {
+			checksums.save(ResourceKind.INDEX_LIFECYCLE, policy, json);
+		}
 	}
 
 	/**
@@ -58,15 +96,15 @@ public class ElasticsearchIndexLifecycleUpdater {
 	 * @param json JSon content for the policy
 	 * @throws Exception if something goes wrong
 	 */
-	private static void createIndexLifecycleWithJsonInElasticsearch(RestClient client, String policy, String json) throws Exception {
+	private static void createIndexLifecycleWithJsonInElasticsearch(RestClient client, String policy, byte[] json) throws Exception {
 		logger.trace("createIndexLifecycle([{}])", policy);
 
 		assert client != null;
 		assert policy != null;
 
 		Request request = new Request("PUT", "/_ilm/policy/" + policy);
-		request.setJsonEntity(json);
-		Response response = client.performRequest(request);
+		request.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+		Response response = Requests.perform(client, request);
 
 		if (response.getStatusLine().getStatusCode() != 200) {
 			logger.warn("Could not create index lifecycle policy [{}]", policy);
@@ -19,7 +19,14 @@
 
 package fr.pilato.elasticsearch.tools.updaters;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.JsonDiff;
+import fr.pilato.elasticsearch.tools.util.JsonResponses;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.VariableSource;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseException;
@@ -27,11 +34,21 @@ import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import static fr.pilato.elasticsearch.tools.util.ResourceList.replaceIndexName;
-import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonContent;
+import static fr.pilato.elasticsearch.tools.util.ResourceList.wildcardToRegex;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonBytes;
 
 /**
  * Manage elasticsearch index settings
@@ -41,6 +58,12 @@ public class ElasticsearchIndexUpdater {
 
 	private static final Logger logger = LoggerFactory.getLogger(ElasticsearchIndexUpdater.class);
 
+	private static final String REFRESH_INTERVAL = "refresh_interval";
+	private static final String NUMBER_OF_REPLICAS = "number_of_replicas";
+
+	// Elasticsearch refuses by default http lines longer than 4kb (http.max_initial_line_length)
+	private static final int MAX_RESOLVE_URL_LENGTH = 3000;
+
 	private ElasticsearchIndexUpdater() {
 		// empty
 	}
@@ -55,8 +78,59 @@ public class ElasticsearchIndexUpdater {
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
 	public static boolean createIndex(RestClient client, String root, String index, boolean force) throws Exception {
-		String json = getJsonContent(root, index, DefaultSettings.IndexSettingsFileName);
-		return createIndexWithSettings(client, index, json, force);
+		return createIndex(client, root, index, force, null);
+	}
+
+	/**
+	 * Create a new index in Elasticsearch. Read also _settings.json if exists.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param index Index name
+	 * @param force Remove index if exists (Warning: remove all data)
+	 * @param existingIndices The indices we already know they exist (see {@link #findExistingIndices(RestClient, Collection)}).
+	 *                        If null, we check if the index exists.
+	 * @return true if we created the index and false if the index already existed
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static boolean createIndex(RestClient client, String root, String index, boolean force, Set<String> existingIndices) throws Exception {
+		return createIndex(client, root, index, force, existingIndices, VariableSource.environment());
+	}
+
+	/**
+	 * Create a new index in Elasticsearch. Read also _settings.json if exists.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param index Index name
+	 * @param force Remove index if exists (Warning: remove all data)
+	 * @param existingIndices The indices we already know they exist (see {@link #findExistingIndices(RestClient, Collection)}).
+	 *                        If null, we check if the index exists.
+	 * @param variables where to read the values of the variables found in the settings
+	 * @return true if we created the index and false if the index already existed
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static boolean createIndex(RestClient client, String root, String index, boolean force, Set<String> existingIndices, VariableSource variables) throws Exception {
+		return createIndex(client, root, index, force, existingIndices, variables, null);
+	}
+
+	/**
+	 * Create a new index in Elasticsearch. Read also _settings.json if exists.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param index Index name
+	 * @param force Remove index if exists (Warning: remove all data)
+	 * @param existingIndices The indices we already know they exist (see {@link #findExistingIndices(RestClient, Collection)}).
+	 *                        If null, we check if the index exists.
+	 * @param variables where to read the values of the variables found in the settings
+	 * @param waitForActiveShards the number of active shard copies to wait for (a number or <code>all</code>),
+	 *                            null to use the elasticsearch default
+	 * @return true if we created the index and false if the index already existed
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static boolean createIndex(RestClient client, String root, String index, boolean force, Set<String> existingIndices,
+									  VariableSource variables, String waitForActiveShards) throws Exception {
+		byte[] json = getJsonBytes(root, index, DefaultSettings.IndexSettingsFileName, variables);
+		boolean exists = existingIndices == null ? isIndexExist(client, index) : existingIndices.contains(index);
+		return createIndexWithSettings(client, index, json, force, exists, waitForActiveShards);
 	}
 
 	/**
@@ -65,17 +139,20 @@ public class ElasticsearchIndexUpdater {
 	 * @param index Index name
 	 * @param settings Settings if any, null if no specific settings
 	 * @param force Remove index if exists (Warning: remove all data)
+	 * @param exists true if the index already exists
+	 * @param waitForActiveShards the number of active shard copies to wait for, null to use the elasticsearch default
 	 * @return true if we created the index and false if the index already existed
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
-	private static boolean createIndexWithSettings(RestClient client, String index, String settings, boolean force) throws Exception {
-		if (force && isIndexExist(client, index)) {
+	private static boolean createIndexWithSettings(RestClient client, String index, byte[] settings, boolean force, boolean exists,
+												   String waitForActiveShards) throws Exception {
+		if (force && exists) {
 			logger.debug("Index [{}] already exists but force set to true. Removing all data!", index);
 			removeIndexInElasticsearch(client, index);
 		}
-		if (force || !isIndexExist(client, index)) {
+		if (force || !exists) {
 			logger.debug("Index [{}] doesn't exist. Creating it.", index);
-			createIndexWithSettingsInElasticsearch(client, index, settings);
+			createIndexWithSettingsInElasticsearch(client, index, settings, waitForActiveShards);
 			return true;
 		} else {
 			logger.debug("Index [{}] already exists.", index);
@@ -98,7 +175,7 @@ public class ElasticsearchIndexUpdater {
 		int statusCode;
 
 		try {
-			Response response = client.performRequest(new Request("DELETE", "/" + index));
+			Response response = Requests.perform(client, new Request("DELETE", "/" + index));
 			statusCode = response.getStatusLine().getStatusCode();
 		} catch (ResponseException e) {
 			statusCode = e.getResponse().getStatusLine().getStatusCode();
@@ -116,23 +193,28 @@ public class ElasticsearchIndexUpdater {
 	 * @param client Elasticsearch client
 	 * @param index Index name
 	 * @param settings Settings if any, null if no specific settings
+	 * @param waitForActiveShards the number of active shard copies to wait for, null to use the elasticsearch default
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
-	private static void createIndexWithSettingsInElasticsearch(RestClient client, String index, String settings) throws Exception {
+	private static void createIndexWithSettingsInElasticsearch(RestClient client, String index, byte[] settings,
+															   String waitForActiveShards) throws Exception {
 		logger.trace("createIndex([{}])", index);
 
 		assert client != null;
 		assert index != null;
 
         Request request = new Request("PUT", "/" + index);
+		if (waitForActiveShards != null) {
+			request.addParameter("wait_for_active_shards", waitForActiveShards);
+		}
 
 		// If there are settings for this index, we use it. If not, using Elasticsearch defaults.
 		if (settings != null) {
-			logger.trace("Found settings for index [{}]: [{}]", index, settings);
-			request.setJsonEntity(settings);
+			logger.trace("Found settings for index [{}]: [{}] bytes", index, settings.length);
+			request.setEntity(new ByteArrayEntity(settings, ContentType.APPLICATION_JSON));
 		}
 
-        Response response = client.performRequest(request);
+        Response response = Requests.perform(client, request);
 		if (response.getStatusLine().getStatusCode() != 200) {
 			logger.warn("Could not create index [{}]", index);
 			throw new Exception("Could not create index ["+index+"].");
@@ -148,7 +230,7 @@ public class ElasticsearchIndexUpdater {
 	 * @param settings Settings if any, null if no update settings
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
-	private static void updateIndexWithSettingsInElasticsearch(RestClient client, String index, String settings) throws Exception {
+	private static void updateIndexWithSettingsInElasticsearch(RestClient client, String index, byte[] settings) throws Exception {
 		logger.trace("updateIndex([{}])", index);
 
 		assert client != null;
@@ -156,11 +238,11 @@ public class ElasticsearchIndexUpdater {
 
 
 		if (settings != null) {
-			logger.trace("Found update settings for index [{}]: [{}]", index, settings);
+			logger.trace("Found update settings for index [{}]: [{}] bytes", index, settings.length);
 			logger.debug("updating settings for index [{}]", index);
             Request request = new Request("PUT", "/" + index + "/_settings");
-            request.setJsonEntity(settings);
-			client.performRequest(request);
+            request.setEntity(new ByteArrayEntity(settings, ContentType.APPLICATION_JSON));
+			Requests.perform(client, request);
 		}
 
 		logger.trace("/updateIndex([{}])", index);
@@ -173,7 +255,7 @@ public class ElasticsearchIndexUpdater {
 	 * @param mapping Mapping if any, null if no update mapping
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
-	private static void updateMappingInElasticsearch(RestClient client, String index, String mapping) throws Exception {
+	private static void updateMappingInElasticsearch(RestClient client, String index, byte[] mapping) throws Exception {
 		logger.trace("updateMapping([{}])", index);
 
 		assert client != null;
@@ -181,11 +263,11 @@ public class ElasticsearchIndexUpdater {
 
 
 		if (mapping != null) {
-			logger.trace("Found update mapping for index [{}]: [{}]", index, mapping);
+			logger.trace("Found update mapping for index [{}]: [{}] bytes", index, mapping.length);
 			logger.debug("updating mapping for index [{}]", index);
             Request request = new Request("PUT", "/" + index + "/_mapping");
-            request.setJsonEntity(mapping);
-			client.performRequest(request);
+            request.setEntity(new ByteArrayEntity(mapping, ContentType.APPLICATION_JSON));
+			Requests.perform(client, request);
 		}
 
 		logger.trace("/updateMapping([{}])", index);
@@ -199,22 +281,84 @@ public class ElasticsearchIndexUpdater {
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
 	public static boolean isIndexExist(RestClient client, final String index) throws Exception {
-		try {
-			Response response = client.performRequest(new Request("GET", "/" + replaceIndexName(index)));
+		return !findExistingIndices(client, List.of(index)).isEmpty();
+	}
 
-			// Read the response as a String
-			String responseBody = new BufferedReader(new InputStreamReader(response.getEntity().getContent()))
-					.lines().reduce("", (accumulator, actual) -> accumulator + actual);
-			logger.trace("{}", responseBody);
+	/**
+	 * Find which indices already exist using the Resolve Index API. Index names like
+	 * {@code "<my-index-{now/d}-000001>"} exist if at least one index, alias or data stream matches
+	 * {@code "my-index-*-*"} (see {@link fr.pilato.elasticsearch.tools.util.ResourceList#replaceIndexName(String)}).
+	 * <br>
+	 * Only the names are read, so this is cheap even with a lot of indices. Index names are sent in batches
+	 * to avoid too long URLs.
+	 * @param client Elasticsearch client
+	 * @param indices Index names
+	 * @return the index names which already exist
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static Set<String> findExistingIndices(RestClient client, Collection<String> indices) throws Exception {
+		logger.trace("findExistingIndices({})", indices);
+		Set<String> existing = new HashSet<>();
+		Map<String, String> patterns = new LinkedHashMap<>();
+		for (String index : indices) {
+			patterns.put(index, replaceIndexName(index));
+		}
+
+		StringBuilder batch = new StringBuilder();
+		Set<String> resolved = new HashSet<>();
+		for (String pattern : new LinkedHashSet<>(patterns.values())) {
+			if (batch.length() > 0 && batch.length() + pattern.length() > MAX_RESOLVE_URL_LENGTH) {
+				resolved.addAll(resolveIndexNames(client, batch.toString()));
+				batch.setLength(0);
+			}
+			if (batch.length() > 0) {
+				batch.append(",");
+			}
+			batch.append(pattern);
+		}
+		if (batch.length() > 0) {
+			resolved.addAll(resolveIndexNames(client, batch.toString()));
+		}
+
+		for (Map.Entry<String, String> entry : patterns.entrySet()) {
+			Pattern regex = wildcardToRegex(entry.getValue());
+			for (String name : resolved) {
+				if (regex.matcher(name).matches()) {
+					existing.add(entry.getKey());
+					break;
+				}
+			}
+		}
+
+		logger.trace("/findExistingIndices({}) = {}", indices, existing);
+		return existing;
+	}
 
-			// If we don't have an empty response ("{}"), then at least one index exists with the pattern
-			return !"{}".equals(responseBody);
+	/**
+	 * Resolve index names, aliases or data streams matching a comma separated list of names or patterns
+	 * @param client Elasticsearch client
+	 * @param expression the comma separated list
+	 * @return the names we found
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	private static Set<String> resolveIndexNames(RestClient client, String expression) throws Exception {
+		Request request = new Request("GET", "/_resolve/index/" + expression);
+		request.addParameter("ignore_unavailable", "true");
+		request.addParameter("allow_no_indices", "true");
+		request.addParameter("filter_path", "*.name");
+		Set<String> names = new HashSet<>();
+		try {
+			Response response = Requests.perform(client, request);
+			try (InputStream stream = response.getEntity().getContent()) {
+				names.addAll(JsonResponses.readFieldValues(stream, "name"));
+			}
 		} catch (ResponseException e) {
-			if (e.getResponse().getStatusLine().getStatusCode() == 404) {
-				return false;
+			if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+				throw e;
 			}
-			throw e;
 		}
+		logger.trace("resolved [{}] to {}", expression, names);
+		return names;
 	}
 
 	/**
@@ -225,7 +369,19 @@ public class ElasticsearchIndexUpdater {
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
 	public static void updateSettings(RestClient client, String root, String index) throws Exception {
-		String json = getJsonContent(root, index, DefaultSettings.UpdateIndexSettingsFileName);
+		updateSettings(client, root, index, VariableSource.environment());
+	}
+
+	/**
+	 * Update index settings in Elasticsearch. Read also _update_settings.json if exists.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param index Index name
+	 * @param variables where to read the values of the variables found in the file
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void updateSettings(RestClient client, String root, String index, VariableSource variables) throws Exception {
+		byte[] json = getJsonBytes(root, index, DefaultSettings.UpdateIndexSettingsFileName, variables);
 		updateIndexWithSettingsInElasticsearch(client, index, json);
 	}
 
@@ -237,7 +393,244 @@ public class ElasticsearchIndexUpdater {
 	 * @throws Exception if the elasticsearch API call is failing
 	 */
 	public static void updateMapping(RestClient client, String root, String index) throws Exception {
-		String json = getJsonContent(root, index, DefaultSettings.UpdateIndexMappingFileName);
+		updateMapping(client, root, index, VariableSource.environment());
+	}
+
+	/**
+	 * Update index mapping in Elasticsearch. Read also _update_mapping.json if exists.
+	 * @param client Elasticsearch client
+	 * @param root dir within the classpath
+	 * @param index Index name
+	 * @param variables where to read the values of the variables found in the file
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void updateMapping(RestClient client, String root, String index, VariableSource variables) throws Exception {
+		byte[] json = getJsonBytes(root, index, DefaultSettings.UpdateIndexMappingFileName, variables);
 		updateMappingInElasticsearch(client, index, json);
 	}
+
+	/**
+	 * Wait with a single cluster health call for some indices to reach a given status. Index names are sent
+	 * in batches to avoid too long URLs, and all the batches share the same timeout.
+	 * @param client Elasticsearch client
+	 * @param indices Index names
+	 * @param status the status to wait for: <code>green</code>, <code>yellow</code> or <code>red</code>
+	 * @param timeout how long to wait
+	 * @throws Exception if the indices did not reach the status in time or if the elasticsearch API call is failing
+	 */
+	public static void waitForStatus(RestClient client, Collection<String> indices, String status, Duration timeout) throws Exception {
+		logger.trace("waitForStatus({}, [{}])", indices, status);
+		long deadline = System.nanoTime() + timeout.toNanos();
+		StringBuilder batch = new StringBuilder();
+		for (String index : indices) {
+			if (batch.length() > 0 && batch.length() + index.length() > MAX_RESOLVE_URL_LENGTH) {
+				waitForStatusInElasticsearch(client, batch.toString(), status, deadline);
+				batch.setLength(0);
+			}
+			if (batch.length() > 0) {
+				batch.append(",");
+			}
+			batch.append(index);
+		}
+		if (batch.length() > 0) {
+			waitForStatusInElasticsearch(client, batch.toString(), status, deadline);
+		}
+		logger.trace("/waitForStatus({}, [{}])", indices, status);
+	}
+
+	private static void waitForStatusInElasticsearch(RestClient client, String indices, String status, long deadline) throws Exception {
+		long remaining = Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 1);
+		Request request = new Request("GET", "/_cluster/health/" + indices);
+		request.addParameter("wait_for_status", status);
+		request.addParameter("timeout", remaining + "ms");
+		request.addParameter("filter_path", "status,timed_out");
+		try {
+			Requests.perform(client, request);
+		} catch (ResponseException e) {
+			// Elasticsearch answers 408 when the status has not been reached in time
+			if (e.getResponse().getStatusLine().getStatusCode() == 408) {
+				logger.warn("Indices [{}] did not reach the [{}] status in time", indices, status);
+				throw new Exception("Indices [" + indices + "] did not reach the [" + status + "] status in time.", e);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Make an index read-only, so it can be cloned. Its settings and mappings can still be updated.
+	 * The index is also flushed, so all its documents are in the segments which are copied.
+	 * @param client Elasticsearch client
+	 * @param index Index name
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void blockWrites(RestClient client, String index) throws Exception {
+		logger.trace("blockWrites([{}])", index);
+		Request request = new Request("PUT", "/" + index + "/_settings");
+		request.setJsonEntity("{\"index\":{\"blocks\":{\"write\":true}}}");
+		Requests.perform(client, request);
+		Requests.perform(client, new Request("POST", "/" + index + "/_flush"));
+		logger.trace("/blockWrites([{}])", index);
+	}
+
+	/**
+	 * Create an index as a copy of a read-only index using the Clone API (see {@link #blockWrites(RestClient, String)}).
+	 * The segments are copied, so the new index gets the settings, the mappings and the documents of the source index,
+	 * but it is not read-only.
+	 * @param client Elasticsearch client
+	 * @param source The index to copy
+	 * @param target The index to create
+	 * @param waitForActiveShards the number of active shard copies to wait for (a number or <code>all</code>),
+	 *                            null to use the elasticsearch default
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void cloneIndex(RestClient client, String source, String target, String waitForActiveShards) throws Exception {
+		logger.trace("cloneIndex([{}], [{}])", source, target);
+		Request request = new Request("POST", "/" + source + "/_clone/" + target);
+		if (waitForActiveShards != null) {
+			request.addParameter("wait_for_active_shards", waitForActiveShards);
+		}
+		request.setJsonEntity("{\"settings\":{\"index\":{\"blocks\":{\"write\":false}}}}");
+		Response response = Requests.perform(client, request);
+		if (response.getStatusLine().getStatusCode() != 200) {
+			logger.warn("Could not clone index [{}] to [{}]", source, target);
+			throw new Exception("Could not clone index [" + source + "] to [" + target + "].");
+		}
+		logger.trace("/cloneIndex([{}], [{}])", source, target);
+	}
+
+	/**
+	 * Copy all the documents of an index to an existing index using the Reindex API
+	 * @param client Elasticsearch client
+	 * @param source The index to copy
+	 * @param target The index where to copy the documents
+	 * @throws Exception if the elasticsearch API call is failing or if some documents could not be copied
+	 */
+	public static void reindex(RestClient client, String source, String target) throws Exception {
+		logger.trace("reindex([{}], [{}])", source, target);
+		JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+		Request request = new Request("POST", "/_reindex");
+		request.addParameter("wait_for_completion", "true");
+		request.addParameter("filter_path", "failures.cause.reason");
+		request.setJsonEntity("{\"source\":{\"index\":\"" + new String(encoder.quoteAsString(source)) + "\"}," +
+				"\"dest\":{\"index\":\"" + new String(encoder.quoteAsString(target)) + "\"}}");
+		Response response = Requests.perform(client, request);
+		Set<String> failures;
+		try (InputStream stream = response.getEntity().getContent()) {
+			failures = JsonResponses.readFieldValues(stream, "reason");
+		}
+		if (!failures.isEmpty()) {
+			logger.warn("Could not reindex [{}] to [{}]: {}", source, target, failures);
+			throw new Exception("Could not reindex [" + source + "] to [" + target + "]: " + failures.iterator().next());
+		}
+		logger.trace("/reindex([{}], [{}])", source, target);
+	}
+
+	/**
+	 * Prepare an index to load a lot of data: the index is not refreshed anymore and has no replica.
+	 * Use {@link #endSeeding(RestClient, String, Map, boolean)} once the data has been loaded.
+	 * @param client Elasticsearch client
+	 * @param index Index name
+	 * @return the previous values of the settings we changed, null if they were not set
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static Map<String, String> startSeeding(RestClient client, String index) throws Exception {
+		Map<String, String> previous = getSeedingSettings(client, index);
+		startSeeding(client, index, previous);
+		return previous;
+	}
+
+	/**
+	 * Disable the refresh and the replicas of an index to load a lot of data.
+	 * @param client Elasticsearch client
+	 * @param index Index name
+	 * @param previous the values returned by {@link #getSeedingSettings(RestClient, String)} before the first call
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void startSeeding(RestClient client, String index, Map<String, String> previous) throws Exception {
+		logger.trace("startSeeding([{}])", index);
+		putSettings(client, index, Map.of(REFRESH_INTERVAL, "-1", NUMBER_OF_REPLICAS, "0"));
+		logger.debug("Index [{}] is ready to be seeded. Previous settings: {}", index, previous);
+		logger.trace("/startSeeding([{}])", index);
+	}
+
+	/**
+	 * Read the settings changed by {@link #startSeeding(RestClient, String, Map)}
+	 * @param client Elasticsearch client
+	 * @param index Index name
+	 * @return the current values of the settings, null if they are not set
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static Map<String, String> getSeedingSettings(RestClient client, String index) throws Exception {
+		logger.trace("getSeedingSettings([{}])", index);
+		Request request = new Request("GET", "/" + index + "/_settings");
+		request.addParameter("filter_path", "*.settings.index." + REFRESH_INTERVAL + ",*.settings.index." + NUMBER_OF_REPLICAS);
+		Map<String, String> previous = new LinkedHashMap<>();
+		previous.put(REFRESH_INTERVAL, null);
+		previous.put(NUMBER_OF_REPLICAS, null);
+		Response response = Requests.perform(client, request);
+		Object settings;
+		try (InputStream stream = response.getEntity().getContent()) {
+			settings = JsonDiff.parse(stream);
+		}
+		if (settings instanceof Map) {
+			for (Object indexSettings : ((Map<?, ?>) settings).values()) {
+				Object values = get(get(indexSettings, "settings"), "index");
+				for (String key : previous.keySet()) {
+					Object value = get(values, key);
+					if (value != null) {
+						previous.put(key, value.toString());
+					}
+				}
+			}
+		}
+		logger.trace("/getSeedingSettings([{}])", index);
+		return previous;
+	}
+
+	/**
+	 * Restore the settings changed by {@link #startSeeding(RestClient, String)}
+	 * @param client Elasticsearch client
+	 * @param index Index name
+	 * @param previous the values returned by {@link #startSeeding(RestClient, String)}. A missing setting is reset.
+	 * @param refresh true to refresh the index, so the data can be searched immediately
+	 * @throws Exception if the elasticsearch API call is failing
+	 */
+	public static void endSeeding(RestClient client, String index, Map<String, String> previous, boolean refresh) throws Exception {
+		logger.trace("endSeeding([{}], {})", index, previous);
+		Map<String, String> settings = new LinkedHashMap<>();
+		settings.put(REFRESH_INTERVAL, null);
+		settings.put(NUMBER_OF_REPLICAS, null);
+		settings.putAll(previous);
+		putSettings(client, index, settings);
+		if (refresh) {
+			Requests.perform(client, new Request("POST", "/" + index + "/_refresh"));
+		}
+		logger.trace("/endSeeding([{}], {})", index, previous);
+	}
+
+	/**
+	 * Update index settings. A null value resets the setting to its default value.
+	 */
+	private static void putSettings(RestClient client, String index, Map<String, String> settings) throws Exception {
+		StringBuilder json = new StringBuilder("{\"index\":{");
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			if (json.charAt(json.length() - 1) != '{') {
+				json.append(",");
+			}
+			json.append("\"").append(setting.getKey()).append("\":");
+			if (setting.getValue() == null) {
+				json.append("null");
+			} else {
+				json.append("\"").append(JsonStringEncoder.getInstance().quoteAsString(setting.getValue())).append("\"");
+			}
+		}
+		json.append("}}");
+		Request request = new Request("PUT", "/" + index + "/_settings");
+		request.setJsonEntity(json.toString());
+		Requests.perform(client, request);
+	}
+
+	private static Object get(Object map, String key) {
+		return map instanceof Map ? ((Map<?, ?>) map).get(key) : null;
+	}
 }
@@ -21,7 +21,13 @@ package fr.pilato.elasticsearch.tools.updaters;
 
 import java.io.IOException;
 
+import fr.pilato.elasticsearch.tools.util.ChecksumStore;
 import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.ResourceKind;
+import fr.pilato.elasticsearch.tools.util.VariableSource;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseException;
@@ -29,7 +35,7 @@ import org.elasticsearch.client.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonContent;
+import static fr.pilato.elasticsearch.tools.util.SettingsReader.getJsonBytes;
 
 /**
  * Handles ingest pipeline creation.
@@ -54,8 +60,40 @@ public class ElasticsearchPipelineUpdater {
      * @throws Exception if something goes wrong
      */
     public static void createPipeline(RestClient client, String root, String pipeline) throws Exception {
-        String json = getJsonContent(root, DefaultSettings.PipelinesDir, pipeline + DefaultSettings.JsonFileExtension);
+        createPipeline(client, root, pipeline, null);
+    }
+
+    /**
+     * Create a pipeline in Elasticsearch if it changed since the last time it has been applied.
+     * @param client Elasticsearch client
+     * @param root dir within the classpath
+     * @param pipeline the id of the pipeline
+     * @param checksums checksums of the resources already applied. If null, the resource is always applied.
+     * @throws Exception if something goes wrong
+     */
+    public static void createPipeline(RestClient client, String root, String pipeline, ChecksumStore checksums) throws Exception {
+        createPipeline(client, root, pipeline, checksums, VariableSource.environment());
+    }
+
+    /**
+     * Create a pipeline in Elasticsearch if it changed since the last time it has been applied.
+     * @param client Elasticsearch client
+     * @param root dir within the classpath
+     * @param pipeline the id of the pipeline
+     * @param checksums checksums of the resources already applied. If null, the resource is always applied.
+     * @param variables where to read the values of the variables found in the resource
+     * @throws Exception if something goes wrong
+     */
+    public static void createPipeline(RestClient client, String root, String pipeline, ChecksumStore checksums, VariableSource variables) throws Exception {
+        byte[] json = getJsonBytes(root, DefaultSettings.PipelinesDir, pipeline + DefaultSettings.JsonFileExtension, variables);
+        if (checksums != null && checksums.isUnchanged(ResourceKind.PIPELINE, pipeline, json)) {
+            logger.debug("Pipeline [{}] did not change. Skipping.", pipeline);
+            return;
+        }
         createPipelineWithJsonInElasticsearch(client, pipeline, json);
+        if (checksums != null) {
+            checksums.save(ResourceKind.PIPELINE, pipeline, json);
+        }
     }
 
     /**
@@ -66,15 +104,15 @@ public class ElasticsearchPipelineUpdater {
      * @param json JSon content for the pipeline
      * @throws Exception if something goes wrong
      */
-    private static void createPipelineWithJsonInElasticsearch(RestClient client, String pipeline, String json) throws Exception {
+    private static void createPipelineWithJsonInElasticsearch(RestClient client, String pipeline, byte[] json) throws Exception {
         logger.trace("createPipeline([{}])", pipeline);
 
         assert client != null;
         assert pipeline != null;
 
         Request request = new Request("PUT", "/_ingest/pipeline/" + pipeline);
-        request.setJsonEntity(json);
-        Response response = client.performRequest(request);
+        request.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+        Response response = Requests.perform(client, request);
 
         if (response.getStatusLine().getStatusCode() != 200) {
             logger.warn("Could not create pipeline [{}]", pipeline);
@@ -94,7 +132,7 @@ public class ElasticsearchPipelineUpdater {
      */
     public static boolean isPipelineExist(RestClient client, String pipeline) throws IOException {
         try {
-            Response response = client.performRequest(new Request("GET", "/_ingest/pipeline/" + pipeline));
+            Response response = Requests.perform(client, new Request("GET", "/_ingest/pipeline/" + pipeline));
             return response.getEntity() != null;
         }
         catch (ResponseException e) {
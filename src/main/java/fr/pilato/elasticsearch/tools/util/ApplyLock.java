@@ -0,0 +1,369 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A lock stored in the state index, so only one instance applies the resources when a lot of instances
+ * of the same application start at the same time.
+ * <br>
+ * The lock is a lease: a document created with the <code>_create</code> API which expires after a TTL. While it
+ * holds the lock, the owner extends the lease with a heartbeat. When the owner is done, it marks the lock as
+ * <code>done</code> or <code>failed</code>. A lock which is done, failed or expired can be taken over by another instance.
+ * All the updates use optimistic concurrency control (<code>if_seq_no</code> and <code>if_primary_term</code>),
+ * so two instances can never hold the lock at the same time. If the heartbeat finds out that another instance took
+ * the lock over, the lock is lost: the listener given to {@link #onLost(Runnable)} is called, so the owner can stop
+ * applying the resources, and {@link #release(boolean)} fails.
+ * <br>
+ * The expiration date is computed with the clock of each instance, so the clocks should be roughly in sync
+ * compared to the TTL.
+ */
+public class ApplyLock implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ApplyLock.class);
+
+	static final String TYPE = "lock";
+
+	/**
+	 * The state of the lock
+	 */
+	public enum State {
+		/**
+		 * An instance is applying the resources
+		 */
+		RUNNING,
+		/**
+		 * The last instance which held the lock applied the resources
+		 */
+		DONE,
+		/**
+		 * The last instance which held the lock failed to apply the resources
+		 */
+		FAILED;
+
+		private String value() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * The outcome of {@link #acquire(RestClient, String, String, String, Duration, Duration)}
+	 */
+	public enum Outcome {
+		/**
+		 * We got the lock: we must apply the resources
+		 */
+		ACQUIRED,
+		/**
+		 * Another instance applied the resources while we were waiting
+		 */
+		DONE_BY_OTHER,
+		/**
+		 * Another instance still holds the lock after the wait timeout
+		 */
+		BUSY
+	}
+
+	private final RestClient client;
+	private final String index;
+	private final String id;
+	private final String owner;
+	private final Duration ttl;
+	private final Clock clock;
+	private final Outcome outcome;
+	private long seqNo;
+	private long primaryTerm;
+	private volatile boolean lost = false;
+	private volatile Runnable onLost = () -> {};
+	private ScheduledExecutorService heartbeat;
+
+	private ApplyLock(RestClient client, String index, String id, String owner, Duration ttl, Clock clock, Outcome outcome,
+					  long seqNo, long primaryTerm) {
+		this.client = client;
+		this.index = index;
+		this.id = id;
+		this.owner = owner;
+		this.ttl = ttl;
+		this.clock = clock;
+		this.outcome = outcome;
+		this.seqNo = seqNo;
+		this.primaryTerm = primaryTerm;
+	}
+
+	/**
+	 * @return a name which identifies the current instance, like "my-host/1234/5f2b1c"
+	 */
+	public static String defaultOwner() {
+		String host = System.getenv("HOSTNAME");
+		return (host == null ? "unknown" : host) + "/" + ProcessHandle.current().pid() + "/" +
+				UUID.randomUUID().toString().substring(0, 8);
+	}
+
+	/**
+	 * Try to get the lock. If another instance holds it, wait for it to be released, done or expired.
+	 * When the lock is acquired, a heartbeat extends the lease until the lock is closed.
+	 * @param client	Elasticsearch client
+	 * @param index		The state index name
+	 * @param name		The lock name, like the root dir of the resources
+	 * @param owner		The name of the current instance
+	 * @param ttl		How long the lock is held without any heartbeat
+	 * @param wait		How long to wait for the lock. Zero to not wait at all.
+	 * @return the lock. Check {@link #getOutcome()} to know if it has been acquired.
+	 * @throws IOException if the elasticsearch API calls are failing
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public static ApplyLock acquire(RestClient client, String index, String name, String owner, Duration ttl,
+									Duration wait) throws IOException, InterruptedException {
+		return acquire(client, index, name, owner, ttl, wait, Clock.systemUTC());
+	}
+
+	static ApplyLock acquire(RestClient client, String index, String name, String owner, Duration ttl,
+							 Duration wait, Clock clock) throws IOException, InterruptedException {
+		logger.trace("acquire([{}], [{}])", name, owner);
+		String id = TYPE + ":" + name;
+		StateIndex.createIfNeeded(client, index);
+
+		long deadline = clock.millis() + wait.toMillis();
+		// We poll a few times within the TTL, but not too often
+		long pollInterval = Math.max(100, Math.min(1000, ttl.toMillis() / 10));
+		boolean waited = false;
+		while (true) {
+			ApplyLock lock = tryAcquire(client, index, id, owner, ttl, clock, waited);
+			if (lock != null) {
+				logger.trace("/acquire([{}], [{}]) = {}", name, owner, lock.outcome);
+				return lock;
+			}
+			if (clock.millis() >= deadline) {
+				logger.debug("lock [{}] is still held by another instance after [{}]", id, wait);
+				return new ApplyLock(client, index, id, owner, ttl, clock, Outcome.BUSY, -1, -1);
+			}
+			waited = true;
+			Thread.sleep(Math.min(pollInterval, Math.max(1, deadline - clock.millis())));
+		}
+	}
+
+	/**
+	 * @return the lock, or null if it is held by another instance
+	 */
+	private static ApplyLock tryAcquire(RestClient client, String index, String id, String owner, Duration ttl,
+										Clock clock, boolean waited) throws IOException {
+		Request create = new Request("PUT", StateIndex.documentEndpoint(index, "_create", id));
+		create.setJsonEntity(document(owner, State.RUNNING, clock.millis() + ttl.toMillis()));
+		try {
+			Map<String, Object> response = readObject(Requests.perform(client, create));
+			logger.debug("lock [{}] acquired by [{}]", id, owner);
+			return acquired(client, index, id, owner, ttl, clock, response);
+		} catch (ResponseException e) {
+			if (e.getResponse().getStatusLine().getStatusCode() != 409) {
+				throw e;
+			}
+		}
+
+		// The lock already exists. Let's see if we can take it over.
+		Map<String, Object> current;
+		try {
+			current = readObject(Requests.perform(client, new Request("GET", StateIndex.documentEndpoint(index, "_doc", id))));
+		} catch (ResponseException e) {
+			if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+				throw e;
+			}
+			// It has been removed in the meantime
+			return null;
+		}
+		Map<?, ?> source = current.get("_source") instanceof Map ? (Map<?, ?>) current.get("_source") : Map.of();
+		String state = String.valueOf(source.get("state"));
+		long expiresAt = toLong(source.get("expires_at"));
+		if (State.RUNNING.value().equals(state) && expiresAt > clock.millis()) {
+			logger.debug("lock [{}] is held by [{}] until [{}]", id, source.get("owner"), expiresAt);
+			return null;
+		}
+		if (waited && State.DONE.value().equals(state)) {
+			// We were waiting for another instance which is now done
+			logger.debug("lock [{}] has been released by [{}]", id, source.get("owner"));
+			return new ApplyLock(client, index, id, owner, ttl, clock, Outcome.DONE_BY_OTHER, -1, -1);
+		}
+
+		Request takeover = new Request("PUT", StateIndex.documentEndpoint(index, "_doc", id));
+		takeover.addParameter("if_seq_no", String.valueOf(toLong(current.get("_seq_no"))));
+		takeover.addParameter("if_primary_term", String.valueOf(toLong(current.get("_primary_term"))));
+		takeover.setJsonEntity(document(owner, State.RUNNING, clock.millis() + ttl.toMillis()));
+		try {
+			Map<String, Object> response = readObject(Requests.perform(client, takeover));
+			logger.debug("lock [{}] taken over by [{}] from [{}] (state [{}])", id, owner, source.get("owner"), state);
+			return acquired(client, index, id, owner, ttl, clock, response);
+		} catch (ResponseException e) {
+			if (e.getResponse().getStatusLine().getStatusCode() != 409) {
+				throw e;
+			}
+			// Another instance has been faster than us
+			return null;
+		}
+	}
+
+	private static ApplyLock acquired(RestClient client, String index, String id, String owner, Duration ttl, Clock clock,
+									  Map<String, Object> response) {
+		ApplyLock lock = new ApplyLock(client, index, id, owner, ttl, clock, Outcome.ACQUIRED,
+				toLong(response.get("_seq_no")), toLong(response.get("_primary_term")));
+		lock.startHeartbeat();
+		return lock;
+	}
+
+	private void startHeartbeat() {
+		long interval = Math.max(1, ttl.toMillis() / 3);
+		heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "beyonder-lock-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeat.scheduleWithFixedDelay(() -> {
+			try {
+				update(State.RUNNING);
+				logger.trace("lock [{}] extended by [{}]", id, owner);
+			} catch (Exception e) {
+				logger.warn("Could not extend lock [{}]: {}", id, e.getMessage());
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void update(State state) throws IOException {
+		if (lost) {
+			return;
+		}
+		Request request = new Request("PUT", StateIndex.documentEndpoint(index, "_doc", id));
+		request.addParameter("if_seq_no", String.valueOf(seqNo));
+		request.addParameter("if_primary_term", String.valueOf(primaryTerm));
+		request.setJsonEntity(document(owner, state, clock.millis() + ttl.toMillis()));
+		try {
+			Map<String, Object> response = readObject(Requests.perform(client, request));
+			seqNo = toLong(response.get("_seq_no"));
+			primaryTerm = toLong(response.get("_primary_term"));
+		} catch (ResponseException e) {
+			if (e.getResponse().getStatusLine().getStatusCode() == 409) {
+				// The lease expired and another instance took the lock over
+				lost = true;
+				logger.warn("Lock [{}] has been taken over by another instance.", id);
+				onLost.run();
+				return;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return whether we got the lock, or why not
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * @return true if we got the lock and still hold it
+	 */
+	public boolean isHeld() {
+		return outcome == Outcome.ACQUIRED && !lost;
+	}
+
+	/**
+	 * Set what to do when we find out that another instance took the lock over, like stopping to apply the resources.
+	 * It is called from the heartbeat thread, or right away if the lock is already lost.
+	 * @param listener	The listener
+	 */
+	public void onLost(Runnable listener) {
+		onLost = listener;
+		if (lost) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Release the lock and mark it as done or failed
+	 * @param success	Whether the resources have been applied
+	 * @throws IOException if the elasticsearch API call is failing
+	 * @throws IllegalStateException if success is true but another instance took the lock over in the meantime,
+	 * as we can't know which instance applied what
+	 */
+	public void release(boolean success) throws IOException {
+		if (outcome != Outcome.ACQUIRED) {
+			return;
+		}
+		stopHeartbeat();
+		update(success ? State.DONE : State.FAILED);
+		if (lost) {
+			if (success) {
+				throw new IllegalStateException("Lock [" + id + "] has been taken over by another instance while we were applying the resources.");
+			}
+			return;
+		}
+		logger.debug("lock [{}] released by [{}]", id, owner);
+	}
+
+	private synchronized void stopHeartbeat() {
+		if (heartbeat != null) {
+			heartbeat.shutdownNow();
+			heartbeat = null;
+		}
+	}
+
+	/**
+	 * Stop the heartbeat without releasing the lock. It expires after the TTL.
+	 */
+	@Override
+	public void close() {
+		stopHeartbeat();
+	}
+
+	private static String document(String owner, State state, long expiresAt) {
+		return "{\"type\":\"" + TYPE + "\",\"owner\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(owner)) +
+				"\",\"state\":\"" + state.value() + "\",\"expires_at\":" + expiresAt + "}";
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> readObject(Response response) throws IOException {
+		try (InputStream stream = response.getEntity().getContent()) {
+			Object tree = JsonDiff.parse(stream);
+			return tree instanceof Map ? (Map<String, Object>) tree : Map.of();
+		}
+	}
+
+	private static long toLong(Object value) {
+		try {
+			return value == null ? -1 : Long.parseLong(value.toString());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+/**
+ * Get notified of what Beyonder does when it starts, for example to measure where the time is spent.
+ * All the methods do nothing by default, so you only need to implement the ones you need.
+ * <br>
+ * Methods can be called from multiple threads at the same time when {@link BeyonderOptions#getParallelism()}
+ * or {@link BeyonderOptions#getBulkConcurrency()} is greater than 1. They must be fast and must not throw any
+ * exception.
+ */
+public interface BeyonderListener {
+
+	/**
+	 * A listener which does nothing
+	 */
+	BeyonderListener NOOP = new BeyonderListener() {
+	};
+
+	/**
+	 * Called when Beyonder starts
+	 * @param root	The root dir within the classpath
+	 */
+	default void onStart(String root) {
+	}
+
+	/**
+	 * Called when Beyonder is done
+	 * @param root		The root dir within the classpath
+	 * @param tookNanos	How long it took
+	 * @param failure	The failure if any, null if successful
+	 */
+	default void onEnd(String root, long tookNanos, Exception failure) {
+	}
+
+	/**
+	 * Called when a phase, like creating all the pipelines, starts
+	 * @param phase	The phase name
+	 * @param tasks	The number of tasks within this phase
+	 */
+	default void onPhaseStart(String phase, int tasks) {
+	}
+
+	/**
+	 * Called when a phase is done
+	 * @param phase		The phase name
+	 * @param tasks		The number of tasks within this phase
+	 * @param tookNanos	How long it took
+	 * @param failure	The failure if any, null if successful
+	 */
+	default void onPhaseEnd(String phase, int tasks, long tookNanos, Exception failure) {
+	}
+
+	/**
+	 * Called after each request sent to elasticsearch
+	 * @param event	The request details
+	 */
+	default void onRequest(RequestEvent event) {
+	}
+}
@@ -0,0 +1,617 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options used when Beyonder starts. All the setters return the current instance so you can chain them:
+ * <pre>
+ * BeyonderOptions options = new BeyonderOptions()
+ *     .setForce(false)
+ *     .setBulkMaxActions(500);
+ * </pre>
+ */
+public class BeyonderOptions {
+
+	private boolean force = DefaultSettings.ForceCreation;
+	private int bulkMaxActions = DefaultSettings.BulkMaxActions;
+	private long bulkMaxBytes = DefaultSettings.BulkMaxBytes;
+	private int bulkConcurrency = DefaultSettings.BulkConcurrency;
+	private int bulkMaxRetries = DefaultSettings.BulkMaxRetries;
+	private Duration bulkRetryInitialDelay = DefaultSettings.BulkRetryInitialDelay;
+	private boolean jsonDataAsBulk = DefaultSettings.JsonDataAsBulk;
+	private int parallelism = DefaultSettings.Parallelism;
+	private boolean virtualThreads = DefaultSettings.VirtualThreads;
+	private String stateIndex = DefaultSettings.StateIndex;
+	private boolean skipUnchanged = DefaultSettings.SkipUnchanged;
+	private VariableSource variables = VariableSource.environment();
+	private BeyonderListener listener = BeyonderListener.NOOP;
+	private Duration timeout = null;
+	private boolean applyLock = DefaultSettings.ApplyLock;
+	private Duration lockTtl = DefaultSettings.LockTtl;
+	private Duration lockWait = DefaultSettings.LockWait;
+	private String lockOwner = null;
+	private boolean compressRequests = DefaultSettings.CompressRequests;
+	private long compressionThreshold = DefaultSettings.CompressionThreshold;
+	private boolean seedingMode = DefaultSettings.SeedingMode;
+	private boolean refreshAfterSeeding = DefaultSettings.RefreshAfterSeeding;
+	private String waitForStatus = DefaultSettings.WaitForStatus;
+	private Duration waitForStatusTimeout = DefaultSettings.WaitForStatusTimeout;
+	private String waitForActiveShards = DefaultSettings.WaitForActiveShards;
+	private boolean checkpointSeeding = DefaultSettings.CheckpointSeeding;
+	private final Map<String, List<String>> sharedSeeds = new LinkedHashMap<>();
+
+	/**
+	 * @return whether or not to force creation of indices and templates
+	 */
+	public boolean isForce() {
+		return force;
+	}
+
+	/**
+	 * @param force whether or not to force creation of indices and templates
+	 * @return the current options
+	 */
+	public BeyonderOptions setForce(boolean force) {
+		this.force = force;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of actions sent within a single bulk request
+	 */
+	public int getBulkMaxActions() {
+		return bulkMaxActions;
+	}
+
+	/**
+	 * @param bulkMaxActions the maximum number of actions sent within a single bulk request
+	 * @return the current options
+	 */
+	public BeyonderOptions setBulkMaxActions(int bulkMaxActions) {
+		if (bulkMaxActions < 1) {
+			throw new IllegalArgumentException("bulkMaxActions must be greater than 0.");
+		}
+		this.bulkMaxActions = bulkMaxActions;
+		return this;
+	}
+
+	/**
+	 * @return the maximum size in bytes of a single bulk request
+	 */
+	public long getBulkMaxBytes() {
+		return bulkMaxBytes;
+	}
+
+	/**
+	 * @param bulkMaxBytes the maximum size in bytes of a single bulk request
+	 * @return the current options
+	 */
+	public BeyonderOptions setBulkMaxBytes(long bulkMaxBytes) {
+		if (bulkMaxBytes < 1) {
+			throw new IllegalArgumentException("bulkMaxBytes must be greater than 0.");
+		}
+		this.bulkMaxBytes = bulkMaxBytes;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of bulk requests running at the same time
+	 */
+	public int getBulkConcurrency() {
+		return bulkConcurrency;
+	}
+
+	/**
+	 * @param bulkConcurrency the maximum number of bulk requests running at the same time
+	 * @return the current options
+	 */
+	public BeyonderOptions setBulkConcurrency(int bulkConcurrency) {
+		if (bulkConcurrency < 1) {
+			throw new IllegalArgumentException("bulkConcurrency must be greater than 0.");
+		}
+		this.bulkConcurrency = bulkConcurrency;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of times a bulk action rejected by elasticsearch is sent again
+	 */
+	public int getBulkMaxRetries() {
+		return bulkMaxRetries;
+	}
+
+	/**
+	 * Elasticsearch rejects bulk actions with a 429 status when it is overloaded. Only the rejected actions
+	 * are sent again. Set it to 0 to never retry.
+	 * @param bulkMaxRetries the maximum number of times a bulk action rejected by elasticsearch is sent again
+	 * @return the current options
+	 */
+	public BeyonderOptions setBulkMaxRetries(int bulkMaxRetries) {
+		if (bulkMaxRetries < 0) {
+			throw new IllegalArgumentException("bulkMaxRetries must not be negative.");
+		}
+		this.bulkMaxRetries = bulkMaxRetries;
+		return this;
+	}
+
+	/**
+	 * @return the delay before sending again bulk actions rejected by elasticsearch
+	 */
+	public Duration getBulkRetryInitialDelay() {
+		return bulkRetryInitialDelay;
+	}
+
+	/**
+	 * @param bulkRetryInitialDelay the delay before sending again bulk actions rejected by elasticsearch.
+	 *                              It doubles after each retry, up to 30 seconds.
+	 * @return the current options
+	 */
+	public BeyonderOptions setBulkRetryInitialDelay(Duration bulkRetryInitialDelay) {
+		if (bulkRetryInitialDelay == null || bulkRetryInitialDelay.isNegative()) {
+			throw new IllegalArgumentException("bulkRetryInitialDelay must not be negative.");
+		}
+		this.bulkRetryInitialDelay = bulkRetryInitialDelay;
+		return this;
+	}
+
+	/**
+	 * @return whether to send the json files found in _data dirs using the Bulk API
+	 */
+	public boolean isJsonDataAsBulk() {
+		return jsonDataAsBulk;
+	}
+
+	/**
+	 * When set, the json files found in _data dirs are grouped in bulk requests which are limited by
+	 * {@link #getBulkMaxActions()} and {@link #getBulkMaxBytes()}, instead of being sent one by one.
+	 * @param jsonDataAsBulk whether to send the json files found in _data dirs using the Bulk API
+	 * @return the current options
+	 */
+	public BeyonderOptions setJsonDataAsBulk(boolean jsonDataAsBulk) {
+		this.jsonDataAsBulk = jsonDataAsBulk;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of resources created at the same time
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Resources of the same kind (like all the pipelines) are created in parallel. Resources which depend
+	 * on others (like index templates which depend on component templates) are created only when their
+	 * dependencies are done.
+	 * @param parallelism the maximum number of resources created at the same time
+	 * @return the current options
+	 */
+	public BeyonderOptions setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be greater than 0.");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @return whether to create the resources within virtual threads when the JVM supports them
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * When set and when running on Java 21 or later, each resource is created within its own virtual thread instead
+	 * of using a pool of {@link #getParallelism()} platform threads. You can then use a much higher parallelism.
+	 * On older JVMs, this is ignored and a warning is logged. This is also ignored with a warning when the
+	 * parallelism is 1, as the tasks are then run one by one within the current thread.
+	 * @param virtualThreads whether to create the resources within virtual threads when the JVM supports them
+	 * @return the current options
+	 */
+	public BeyonderOptions setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	/**
+	 * @return the name of the hidden index where Beyonder stores its state
+	 */
+	public String getStateIndex() {
+		return stateIndex;
+	}
+
+	/**
+	 * @param stateIndex the name of the hidden index where Beyonder stores its state
+	 * @return the current options
+	 */
+	public BeyonderOptions setStateIndex(String stateIndex) {
+		this.stateIndex = stateIndex;
+		return this;
+	}
+
+	/**
+	 * @return whether to skip the resources which did not change since the last start
+	 */
+	public boolean isSkipUnchanged() {
+		return skipUnchanged;
+	}
+
+	/**
+	 * When set, Beyonder stores a hash of the index lifecycles, component templates, index templates and pipelines
+	 * it applies within the state index, and does not send them again if their content did not change and if they
+	 * still exist in the cluster. A resource modified manually in the cluster is not detected.
+	 * This is ignored when {@link #isForce()} is set.
+	 * @param skipUnchanged whether to skip the resources which did not change since the last start
+	 * @return the current options
+	 */
+	public BeyonderOptions setSkipUnchanged(boolean skipUnchanged) {
+		this.skipUnchanged = skipUnchanged;
+		return this;
+	}
+
+	/**
+	 * @return where to read the values of the variables found in the resources
+	 */
+	public VariableSource getVariables() {
+		return variables;
+	}
+
+	/**
+	 * By default, <code>${VARIABLE}</code> placeholders are replaced with environment variables. You can
+	 * read them from other sources, for example:
+	 * <pre>
+	 * options.setVariables(VariableSource.firstOf(
+	 *     VariableSource.of(Map.of("NUMBER_OF_SHARDS", "1")),
+	 *     VariableSource.environment()));
+	 * </pre>
+	 * @param variables where to read the values of the variables found in the resources
+	 * @return the current options
+	 */
+	public BeyonderOptions setVariables(VariableSource variables) {
+		if (variables == null) {
+			throw new IllegalArgumentException("variables must not be null.");
+		}
+		this.variables = variables;
+		return this;
+	}
+
+	/**
+	 * @return the listener notified of what Beyonder does
+	 */
+	public BeyonderListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @param listener the listener notified of each phase and each request sent to elasticsearch
+	 * @return the current options
+	 */
+	public BeyonderOptions setListener(BeyonderListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener must not be null.");
+		}
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @return how long {@code ElasticsearchBeyonder.startAsync()} can run, or null if there is no limit
+	 */
+	public Duration getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * When the timeout is reached, the future returned by {@code ElasticsearchBeyonder.startAsync()} fails with a
+	 * {@link java.util.concurrent.TimeoutException} and what is still running is stopped.
+	 * @param timeout how long {@code ElasticsearchBeyonder.startAsync()} can run, or null if there is no limit
+	 * @return the current options
+	 */
+	public BeyonderOptions setTimeout(Duration timeout) {
+		if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+			throw new IllegalArgumentException("timeout must be greater than 0.");
+		}
+		this.timeout = timeout;
+		return this;
+	}
+
+	/**
+	 * @return whether to use a lock so only one instance applies the resources at a time
+	 */
+	public boolean isApplyLock() {
+		return applyLock;
+	}
+
+	/**
+	 * When a lot of instances of the same application start at the same time, only the one which gets the lock,
+	 * stored in the state index, applies the resources. The other ones wait for it to be done, up to
+	 * {@link #getLockWait()}, and then don't apply anything.
+	 * @param applyLock whether to use a lock so only one instance applies the resources at a time
+	 * @return the current options
+	 */
+	public BeyonderOptions setApplyLock(boolean applyLock) {
+		this.applyLock = applyLock;
+		return this;
+	}
+
+	/**
+	 * @return how long the apply lock is held if its owner stops sending heartbeats
+	 */
+	public Duration getLockTtl() {
+		return lockTtl;
+	}
+
+	/**
+	 * The owner of the lock extends it every third of this duration. If the owner crashes, another instance
+	 * can take the lock over once this duration has elapsed.
+	 * @param lockTtl how long the apply lock is held if its owner stops sending heartbeats
+	 * @return the current options
+	 */
+	public BeyonderOptions setLockTtl(Duration lockTtl) {
+		if (lockTtl == null || lockTtl.isNegative() || lockTtl.isZero()) {
+			throw new IllegalArgumentException("lockTtl must be greater than 0.");
+		}
+		this.lockTtl = lockTtl;
+		return this;
+	}
+
+	/**
+	 * @return how long to wait for the apply lock when another instance holds it
+	 */
+	public Duration getLockWait() {
+		return lockWait;
+	}
+
+	/**
+	 * @param lockWait how long to wait for the apply lock when another instance holds it. Zero to skip immediately.
+	 * @return the current options
+	 */
+	public BeyonderOptions setLockWait(Duration lockWait) {
+		if (lockWait == null || lockWait.isNegative()) {
+			throw new IllegalArgumentException("lockWait must not be negative.");
+		}
+		this.lockWait = lockWait;
+		return this;
+	}
+
+	/**
+	 * @return the name of the current instance stored within the apply lock, or null to generate one
+	 */
+	public String getLockOwner() {
+		return lockOwner;
+	}
+
+	/**
+	 * @param lockOwner the name of the current instance stored within the apply lock, like the pod name.
+	 *                  If null, it is generated from the host name and the process id.
+	 * @return the current options
+	 */
+	public BeyonderOptions setLockOwner(String lockOwner) {
+		this.lockOwner = lockOwner;
+		return this;
+	}
+
+	/**
+	 * @return whether the request bodies bigger than {@link #getCompressionThreshold()} are compressed with gzip
+	 */
+	public boolean isCompressRequests() {
+		return compressRequests;
+	}
+
+	/**
+	 * Compressing the requests saves network bandwidth but costs some CPU on both sides.
+	 * @param compressRequests whether the request bodies bigger than {@link #getCompressionThreshold()} are compressed with gzip
+	 * @return the current options
+	 */
+	public BeyonderOptions setCompressRequests(boolean compressRequests) {
+		this.compressRequests = compressRequests;
+		return this;
+	}
+
+	/**
+	 * @return the minimum size in bytes of the request bodies to compress
+	 */
+	public long getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * @param compressionThreshold the minimum size in bytes of the request bodies to compress. Smaller bodies
+	 *                             are sent as is as compressing them would not save much.
+	 * @return the current options
+	 */
+	public BeyonderOptions setCompressionThreshold(long compressionThreshold) {
+		if (compressionThreshold < 0) {
+			throw new IllegalArgumentException("compressionThreshold must not be negative.");
+		}
+		this.compressionThreshold = compressionThreshold;
+		return this;
+	}
+
+	/**
+	 * @return whether the refresh and the replicas are disabled while loading the data of a new index
+	 */
+	public boolean isSeedingMode() {
+		return seedingMode;
+	}
+
+	/**
+	 * When an index has been created and has data to load, its <code>refresh_interval</code> is set to <code>-1</code>
+	 * and its <code>number_of_replicas</code> to <code>0</code> while the data is loaded. The previous values,
+	 * coming from the <code>_settings.json</code> and <code>_update_settings.json</code> files, are then restored.
+	 * @param seedingMode whether the refresh and the replicas are disabled while loading the data of a new index
+	 * @return the current options
+	 */
+	public BeyonderOptions setSeedingMode(boolean seedingMode) {
+		this.seedingMode = seedingMode;
+		return this;
+	}
+
+	/**
+	 * @return whether an index is refreshed once its data has been loaded in seeding mode
+	 */
+	public boolean isRefreshAfterSeeding() {
+		return refreshAfterSeeding;
+	}
+
+	/**
+	 * @param refreshAfterSeeding whether an index is refreshed once its data has been loaded in seeding mode,
+	 *                            so the documents can be searched immediately
+	 * @return the current options
+	 */
+	public BeyonderOptions setRefreshAfterSeeding(boolean refreshAfterSeeding) {
+		this.refreshAfterSeeding = refreshAfterSeeding;
+		return this;
+	}
+
+	/**
+	 * @return the health status the new indices must reach before loading the data, or null to not wait
+	 */
+	public String getWaitForStatus() {
+		return waitForStatus;
+	}
+
+	/**
+	 * Once all the indices have been created, a single cluster health call waits for all of them to reach this
+	 * status, up to {@link #getWaitForStatusTimeout()}, before the data is loaded.
+	 * @param waitForStatus the health status the new indices must reach before loading the data:
+	 *                      <code>green</code>, <code>yellow</code> or <code>red</code>. Null to not wait.
+	 * @return the current options
+	 */
+	public BeyonderOptions setWaitForStatus(String waitForStatus) {
+		if (waitForStatus != null && !waitForStatus.equals("green") && !waitForStatus.equals("yellow") && !waitForStatus.equals("red")) {
+			throw new IllegalArgumentException("waitForStatus must be green, yellow or red.");
+		}
+		this.waitForStatus = waitForStatus;
+		return this;
+	}
+
+	/**
+	 * @return how long to wait for the new indices to reach {@link #getWaitForStatus()}
+	 */
+	public Duration getWaitForStatusTimeout() {
+		return waitForStatusTimeout;
+	}
+
+	/**
+	 * @param waitForStatusTimeout how long to wait for the new indices to reach {@link #getWaitForStatus()}.
+	 *                             If they don't, Beyonder fails.
+	 * @return the current options
+	 */
+	public BeyonderOptions setWaitForStatusTimeout(Duration waitForStatusTimeout) {
+		if (waitForStatusTimeout == null || waitForStatusTimeout.isNegative() || waitForStatusTimeout.isZero()) {
+			throw new IllegalArgumentException("waitForStatusTimeout must be greater than 0.");
+		}
+		this.waitForStatusTimeout = waitForStatusTimeout;
+		return this;
+	}
+
+	/**
+	 * @return the number of active shard copies an index creation waits for, or null to use the elasticsearch default
+	 */
+	public String getWaitForActiveShards() {
+		return waitForActiveShards;
+	}
+
+	/**
+	 * @param waitForActiveShards the number of active shard copies an index creation waits for: a number or
+	 *                            <code>all</code>. Null to use the elasticsearch default (the primary shards).
+	 * @return the current options
+	 */
+	public BeyonderOptions setWaitForActiveShards(String waitForActiveShards) {
+		if (waitForActiveShards != null && !waitForActiveShards.equals("all") && !waitForActiveShards.matches("\\d+")) {
+			throw new IllegalArgumentException("waitForActiveShards must be a positive number or all.");
+		}
+		this.waitForActiveShards = waitForActiveShards;
+		return this;
+	}
+
+	/**
+	 * @return whether the progress of the data loading is saved so it can be resumed after a restart
+	 */
+	public boolean isCheckpointSeeding() {
+		return checkpointSeeding;
+	}
+
+	/**
+	 * The position up to which each data file of an index has been loaded is saved in the state index.
+	 * If the application stops while loading the data of an index, the next start loads the remaining data
+	 * even if the index already exists: the files which have been loaded are skipped and the loading of the
+	 * other ones is resumed where it stopped.
+	 * @param checkpointSeeding whether the progress of the data loading is saved so it can be resumed after a restart
+	 * @return the current options
+	 */
+	public BeyonderOptions setCheckpointSeeding(boolean checkpointSeeding) {
+		this.checkpointSeeding = checkpointSeeding;
+		return this;
+	}
+
+	/**
+	 * @return for each index whose data is shared, the indices which are copied from it
+	 */
+	public Map<String, List<String>> getSharedSeeds() {
+		return Collections.unmodifiableMap(sharedSeeds);
+	}
+
+	/**
+	 * Declare that some indices share the data of another index. The data is loaded only once in the source index,
+	 * which is then made read-only, and copied to the target indices when they don't exist yet:
+	 * <ul>
+	 *     <li>with the Clone API if the target index has no directory in the classpath. It gets the settings,
+	 *     the mappings and the data of the source index.</li>
+	 *     <li>with the Reindex API if the target index has been created by Beyonder from its own directory.</li>
+	 * </ul>
+	 * @param source the index which contains the data
+	 * @param targets the indices to create from the source index
+	 * @return the current options
+	 */
+	public BeyonderOptions addSharedSeed(String source, String... targets) {
+		if (source == null || targets.length == 0) {
+			throw new IllegalArgumentException("a shared seed needs a source index and at least one target index.");
+		}
+		for (String target : targets) {
+			if (target == null || target.equals(source)) {
+				throw new IllegalArgumentException("target index [" + target + "] is not valid for source index [" + source + "].");
+			}
+		}
+		List<String> indices = sharedSeeds.computeIfAbsent(source, k -> new ArrayList<>());
+		for (String target : targets) {
+			if (!indices.contains(target)) {
+				indices.add(target);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return the minimum size in bytes of the request bodies to compress, or -1 if the requests must not be compressed
+	 */
+	long compressionThreshold() {
+		return compressRequests ? compressionThreshold : -1;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * What Beyonder would do if it was started. See {@code ElasticsearchBeyonder.plan()}.
+ */
+public class BeyonderPlan {
+
+	private final List<PlannedChange> changes;
+
+	/**
+	 * Create a plan
+	 * @param changes	What would happen to each resource
+	 */
+	public BeyonderPlan(List<PlannedChange> changes) {
+		this.changes = Collections.unmodifiableList(changes);
+	}
+
+	/**
+	 * @return what would happen to each resource, in the order Beyonder applies them
+	 */
+	public List<PlannedChange> getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @param action	The action
+	 * @return the resources which would have this action
+	 */
+	public List<PlannedChange> getChanges(PlannedChange.Action action) {
+		return changes.stream().filter(change -> change.getAction() == action).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return true if at least one resource would be created or updated
+	 */
+	public boolean hasChanges() {
+		return changes.stream().anyMatch(change -> change.getAction() != PlannedChange.Action.NOOP);
+	}
+
+	@Override
+	public String toString() {
+		return changes.stream().map(PlannedChange::toString).collect(Collectors.joining("\n"));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * What Beyonder did when it started
+ */
+public class BeyonderResult {
+
+	private final String root;
+	private final Set<String> createdIndices;
+	private final BulkStats bulkStats;
+	private final long tookNanos;
+	private final boolean skipped;
+
+	/**
+	 * Create a result
+	 * @param root				The root dir within the classpath
+	 * @param createdIndices	The names of the indices which have been created
+	 * @param bulkStats			The counts of the documents sent with the Bulk API
+	 * @param tookNanos			How long it took
+	 */
+	public BeyonderResult(String root, Set<String> createdIndices, BulkStats bulkStats, long tookNanos) {
+		this(root, createdIndices, bulkStats, tookNanos, false);
+	}
+
+	/**
+	 * Create a result
+	 * @param root				The root dir within the classpath
+	 * @param createdIndices	The names of the indices which have been created
+	 * @param bulkStats			The counts of the documents sent with the Bulk API
+	 * @param tookNanos			How long it took
+	 * @param skipped			Whether nothing has been applied because another instance holds the apply lock
+	 */
+	public BeyonderResult(String root, Set<String> createdIndices, BulkStats bulkStats, long tookNanos, boolean skipped) {
+		this.root = root;
+		this.createdIndices = Collections.unmodifiableSet(createdIndices);
+		this.bulkStats = bulkStats;
+		this.tookNanos = tookNanos;
+		this.skipped = skipped;
+	}
+
+	/**
+	 * @return the root dir within the classpath
+	 */
+	public String getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return the names of the indices which have been created
+	 */
+	public Set<String> getCreatedIndices() {
+		return createdIndices;
+	}
+
+	/**
+	 * @return the number of documents of the ndjson files which have been indexed, retried and failed
+	 */
+	public BulkStats getBulkStats() {
+		return bulkStats;
+	}
+
+	/**
+	 * @return how long it took
+	 */
+	public long getTookNanos() {
+		return tookNanos;
+	}
+
+	/**
+	 * @return true if nothing has been applied because another instance holds the apply lock
+	 * (see {@link BeyonderOptions#setApplyLock(boolean)})
+	 */
+	public boolean isSkipped() {
+		return skipped;
+	}
+
+	@Override
+	public String toString() {
+		return "root [" + root + "], " + (skipped ? "skipped, " : "") + "created indices " + createdIndices + ", bulk: " + bulkStats +
+				", took [" + tookNanos / 1_000_000 + "] ms";
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import java.util.List;
+
+/**
+ * A part of a ndjson file which can be sent to elasticsearch within a single bulk request.
+ * The content is kept as raw bytes, so it is never decoded to a String.
+ */
+public class BulkChunk {
+
+	private final byte[] body;
+	private final int length;
+	// The position of each action within the body
+	private final int[] offsets;
+	// The name of the file each action comes from, if the actions come from different files
+	private final String[] sources;
+
+	BulkChunk(byte[] body, int length, int[] offsets) {
+		this(body, length, offsets, null);
+	}
+
+	BulkChunk(byte[] body, int length, int[] offsets, String[] sources) {
+		this.body = body;
+		this.length = length;
+		this.offsets = offsets;
+		this.sources = sources;
+	}
+
+	/**
+	 * @return the number of bytes of this chunk
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the number of bulk actions within this chunk
+	 */
+	public int getActions() {
+		return offsets.length;
+	}
+
+	/**
+	 * @param position	The position of the action, starting at 0
+	 * @return the name of the file the action comes from, or null if all the actions come from the same file
+	 */
+	public String getSource(int position) {
+		return sources == null ? null : sources[position];
+	}
+
+	/**
+	 * Build a new chunk which contains only some of the actions of this chunk, like the ones
+	 * which have been rejected by elasticsearch and which we want to send again.
+	 * @param positions	The positions of the actions to keep, starting at 0, in ascending order
+	 * @return a new chunk
+	 */
+	public BulkChunk subset(List<Integer> positions) {
+		int size = 0;
+		for (int position : positions) {
+			size += end(position) - offsets[position];
+		}
+		byte[] subsetBody = new byte[size];
+		int[] subsetOffsets = new int[positions.size()];
+		String[] subsetSources = sources == null ? null : new String[positions.size()];
+		int written = 0;
+		for (int i = 0; i < positions.size(); i++) {
+			int position = positions.get(i);
+			int actionLength = end(position) - offsets[position];
+			System.arraycopy(body, offsets[position], subsetBody, written, actionLength);
+			subsetOffsets[i] = written;
+			if (subsetSources != null) {
+				subsetSources[i] = sources[position];
+			}
+			written += actionLength;
+		}
+		return new BulkChunk(subsetBody, size, subsetOffsets, subsetSources);
+	}
+
+	private int end(int position) {
+		return position + 1 < offsets.length ? offsets[position + 1] : length;
+	}
+
+	/**
+	 * @return the chunk content as an entity we can send to elasticsearch
+	 */
+	public HttpEntity toEntity() {
+		return new ByteArrayEntity(body, 0, length, ContentType.APPLICATION_JSON);
+	}
+
+	/**
+	 * @return the chunk content as an entity which is compressed with gzip while it is sent
+	 */
+	public HttpEntity toCompressedEntity() {
+		return new GzipEntity(body, 0, length, ContentType.APPLICATION_JSON);
+	}
+}
@@ -0,0 +1,423 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send bulk requests to elasticsearch using the asynchronous API of the {@link RestClient}.
+ * <br>
+ * At most {@code concurrency} requests are running at the same time. When this limit is reached,
+ * {@link #add(String, String, BulkChunk)} blocks until a running request is done, so we never read
+ * more data from the files than what we can send.
+ * <br>
+ * Each bulk response is parsed to find the items which failed. The items rejected by elasticsearch
+ * (status 429) are sent again, up to {@code maxRetries} times, with an exponential backoff. Any other
+ * failure makes the ingester fail.
+ * <br>
+ * Requests can complete in any order, but they are reported in the order they have been added.
+ */
+public class BulkIngester {
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkIngester.class);
+
+	/**
+	 * A task to run once a file has been indexed up to a given position
+	 */
+	@FunctionalInterface
+	public interface Callback {
+		void run() throws Exception;
+	}
+
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	private final RestClient client;
+	private final int concurrency;
+	private final int maxRetries;
+	private final long retryInitialDelayMillis;
+	private final BeyonderListener listener;
+	private final long compressionThreshold;
+	private final Semaphore inFlight;
+	private final BulkStats stats = new BulkStats();
+
+	private final Deque<BulkOperation> pending = new ArrayDeque<>();
+	private long sequence = 0;
+	private long completedRequests = 0;
+	private long completedActions = 0;
+	private final Map<String, Long> completedPositions = new HashMap<>();
+	private final List<Completion> completions = new ArrayList<>();
+	private volatile Exception failure;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Create a bulk ingester
+	 * @param client		Elasticsearch client
+	 * @param concurrency	Maximum number of bulk requests running at the same time
+	 */
+	public BulkIngester(RestClient client, int concurrency) {
+		this(client, concurrency, DefaultSettings.BulkMaxRetries, DefaultSettings.BulkRetryInitialDelay);
+	}
+
+	/**
+	 * Create a bulk ingester
+	 * @param client				Elasticsearch client
+	 * @param concurrency			Maximum number of bulk requests running at the same time
+	 * @param maxRetries			Maximum number of times a rejected action is sent again
+	 * @param retryInitialDelay		Delay before sending rejected actions again. It doubles after each retry.
+	 */
+	public BulkIngester(RestClient client, int concurrency, int maxRetries, Duration retryInitialDelay) {
+		this(client, concurrency, maxRetries, retryInitialDelay, BeyonderListener.NOOP, -1);
+	}
+
+	/**
+	 * Create a bulk ingester using the bulk options, the compression options and the listener of the Beyonder options
+	 * @param client	Elasticsearch client
+	 * @param options	Beyonder options
+	 */
+	public BulkIngester(RestClient client, BeyonderOptions options) {
+		this(client, options.getBulkConcurrency(), options.getBulkMaxRetries(), options.getBulkRetryInitialDelay(),
+				options.getListener(), options.compressionThreshold());
+	}
+
+	private BulkIngester(RestClient client, int concurrency, int maxRetries, Duration retryInitialDelay,
+						 BeyonderListener listener, long compressionThreshold) {
+		this.client = client;
+		this.concurrency = concurrency;
+		this.maxRetries = maxRetries;
+		this.retryInitialDelayMillis = retryInitialDelay.toMillis();
+		this.listener = listener;
+		this.compressionThreshold = compressionThreshold;
+		this.inFlight = new Semaphore(concurrency);
+	}
+
+	/**
+	 * Send a chunk of data to elasticsearch. Blocks if too many requests are already running.
+	 * @param endpoint	The bulk endpoint like "/_bulk" or "/index/_bulk"
+	 * @param source	The name of the file the chunk comes from
+	 * @param chunk		The chunk to send
+	 * @throws Exception if a previous request failed
+	 */
+	public void add(String endpoint, String source, BulkChunk chunk) throws Exception {
+		add(endpoint, source, chunk, -1);
+	}
+
+	/**
+	 * Send a chunk of data to elasticsearch. Blocks if too many requests are already running.
+	 * @param endpoint	The bulk endpoint like "/_bulk" or "/index/_bulk"
+	 * @param source	The name of the file the chunk comes from
+	 * @param chunk		The chunk to send
+	 * @param position	The position in the file just after the chunk, or -1 if we don't track it
+	 *                  (see {@link #getCompletedPosition(String)})
+	 * @throws Exception if a previous request failed
+	 */
+	public void add(String endpoint, String source, BulkChunk chunk, long position) throws Exception {
+		checkFailure();
+		runCompletions();
+		inFlight.acquire();
+		// A request might have failed while we were waiting
+		if (failure != null) {
+			inFlight.release();
+			checkFailure();
+		}
+
+		BulkOperation operation;
+		synchronized (pending) {
+			operation = new BulkOperation(++sequence, source, chunk, position);
+			pending.addLast(operation);
+		}
+
+		send(endpoint, operation, chunk, 0);
+	}
+
+	/**
+	 * Wait for all the running requests to be done.
+	 * @throws Exception if any of the requests failed
+	 */
+	public void awaitCompletion() throws Exception {
+		inFlight.acquire(concurrency);
+		inFlight.release(concurrency);
+		synchronized (this) {
+			if (scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		}
+		runCompletions();
+		checkFailure();
+		logger.debug("[{}] bulk requests with [{}] actions sent: {}", completedRequests, completedActions, stats);
+	}
+
+	/**
+	 * As requests can complete in any order, we only know that a file has been sent up to a given position
+	 * when all the requests added before have completed.
+	 * @param source	The name of the file
+	 * @return the position in the file up to which all the chunks have been indexed, or -1 if we don't know
+	 */
+	public long getCompletedPosition(String source) {
+		synchronized (pending) {
+			return completedPositions.getOrDefault(source, -1L);
+		}
+	}
+
+	/**
+	 * Run a task once all the chunks of a file up to a given position have been indexed, without waiting for it.
+	 * As the task might send requests with the same client, it does not run in the threads of the client but in
+	 * the next call to {@link #add(String, String, BulkChunk, long)} or {@link #awaitCompletion()}.
+	 * It never runs if a request failed before the file reached this position.
+	 * @param source	The name of the file
+	 * @param position	The position in the file
+	 * @param callback	The task to run
+	 */
+	public void onCompleted(String source, long position, Callback callback) {
+		synchronized (pending) {
+			completions.add(new Completion(source, position, callback));
+		}
+	}
+
+	/**
+	 * @return the number of documents indexed, retried and failed so far
+	 */
+	public BulkStats getStats() {
+		return stats;
+	}
+
+	private void send(String endpoint, BulkOperation operation, BulkChunk chunk, int attempt) {
+		logger.trace("sending bulk request #{} from [{}] with [{}] actions (attempt [{}])",
+				operation.id, operation.source, chunk.getActions(), attempt);
+		Request request = new Request("POST", endpoint);
+		boolean compress = compressionThreshold >= 0 && chunk.getLength() >= compressionThreshold;
+		request.setEntity(compress ? chunk.toCompressedEntity() : chunk.toEntity());
+		long start = System.nanoTime();
+		client.performRequestAsync(request, new ResponseListener() {
+			@Override
+			public void onSuccess(Response response) {
+				int status = response.getStatusLine().getStatusCode();
+				Requests.report(listener, ResourceKind.DATA, operation.source, request, chunk.getActions(),
+						status, System.nanoTime() - start, null);
+				if (status != 200) {
+					failed(new Exception("Could not load bulk data from file [" + operation.source + "]: " +
+							response.getStatusLine()), status);
+					return;
+				}
+
+				List<BulkItemError> errors;
+				try (InputStream stream = response.getEntity().getContent()) {
+					errors = JsonResponses.readBulkErrors(stream);
+				} catch (IOException e) {
+					failed(e, status);
+					return;
+				}
+				onResponse(endpoint, operation, chunk, attempt, errors);
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				int status = e instanceof ResponseException ?
+						((ResponseException) e).getResponse().getStatusLine().getStatusCode() : 0;
+				Requests.report(listener, ResourceKind.DATA, operation.source, request, chunk.getActions(),
+						status, System.nanoTime() - start, e);
+				failed(e, status);
+			}
+
+			private void failed(Exception e, int status) {
+				if (status == TOO_MANY_REQUESTS && attempt < maxRetries) {
+					// The whole request has been rejected
+					retry(endpoint, operation, chunk, attempt);
+					return;
+				}
+				logger.warn("Could not load bulk request #{} from file [{}] of size [{}] into Elasticsearch",
+						operation.id, operation.source, chunk.getLength());
+				stats.onFailed(chunk.getActions());
+				complete(operation, e);
+			}
+		});
+	}
+
+	private void onResponse(String endpoint, BulkOperation operation, BulkChunk chunk, int attempt, List<BulkItemError> errors) {
+		stats.onIndexed(chunk.getActions() - errors.size());
+		if (errors.isEmpty()) {
+			complete(operation, null);
+			return;
+		}
+
+		List<Integer> rejected = new ArrayList<>();
+		List<BulkItemError> failed = new ArrayList<>();
+		for (BulkItemError error : errors) {
+			if (error.getStatus() == TOO_MANY_REQUESTS && attempt < maxRetries) {
+				rejected.add(error.getPosition());
+			} else {
+				failed.add(error);
+			}
+		}
+
+		if (!failed.isEmpty()) {
+			// No need to retry anything as we are going to fail anyway
+			stats.onFailed(errors.size());
+			for (BulkItemError error : failed) {
+				logger.debug("bulk request #{} from [{}]: {}", operation.id, operation.source, error);
+			}
+			logger.warn("[{}] actions of bulk request #{} from file [{}] failed", errors.size(), operation.id, operation.source);
+			String source = chunk.getSource(failed.get(0).getPosition());
+			complete(operation, new Exception(source == null ?
+					"Could not load bulk data from file [" + operation.source + "]: [" + errors.size() +
+							"] actions failed. First failure: " + failed.get(0) :
+					"Could not load json data from file [" + source + "]: " + failed.get(0)));
+			return;
+		}
+
+		retry(endpoint, operation, chunk.subset(rejected), attempt);
+	}
+
+	private void retry(String endpoint, BulkOperation operation, BulkChunk chunk, int attempt) {
+		long delay = retryDelay(retryInitialDelayMillis, attempt);
+		stats.onRetried(chunk.getActions());
+		logger.debug("[{}] actions of bulk request #{} from [{}] have been rejected. Retrying in [{}] ms.",
+				chunk.getActions(), operation.id, operation.source, delay);
+		scheduler().schedule(() -> send(endpoint, operation, chunk, attempt + 1), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Compute the delay before sending rejected actions again. It doubles after each retry, up to
+	 * {@link DefaultSettings#BulkRetryMaxDelay} (or the initial delay if it is bigger).
+	 * @param initialDelayMillis	The delay before the first retry
+	 * @param attempt				The number of retries already done
+	 * @return the delay in milliseconds
+	 */
+	public static long retryDelay(long initialDelayMillis, int attempt) {
+		long maxDelay = Math.max(DefaultSettings.BulkRetryMaxDelay.toMillis(), initialDelayMillis);
+		// Shifting more than that would overflow
+		if (attempt >= Long.numberOfLeadingZeros(initialDelayMillis) - 1) {
+			return initialDelayMillis == 0 ? 0 : maxDelay;
+		}
+		return Math.min(initialDelayMillis << attempt, maxDelay);
+	}
+
+	private synchronized ScheduledExecutorService scheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "beyonder-bulk-retry");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return scheduler;
+	}
+
+	private void complete(BulkOperation operation, Exception e) {
+		if (e != null && failure == null) {
+			failure = e;
+		}
+
+		synchronized (pending) {
+			operation.done = true;
+			operation.failed = e != null;
+			// Report the operations in the order they have been sent
+			while (!pending.isEmpty() && pending.peekFirst().done) {
+				BulkOperation done = pending.pollFirst();
+				if (done.failed) {
+					logger.debug("bulk request #{} from [{}] failed", done.id, done.source);
+				} else {
+					completedRequests++;
+					completedActions += done.actions;
+					// Once a request failed, we must not move the position past it
+					if (done.position >= 0 && failure == null) {
+						completedPositions.put(done.source, done.position);
+					}
+					logger.debug("bulk request #{} from [{}] done: [{}] actions, [{}] actions sent so far",
+							done.id, done.source, done.actions, completedActions);
+				}
+			}
+		}
+
+		inFlight.release();
+	}
+
+	private void runCompletions() throws Exception {
+		List<Callback> callbacks = new ArrayList<>();
+		synchronized (pending) {
+			for (Iterator<Completion> iterator = completions.iterator(); iterator.hasNext(); ) {
+				Completion completion = iterator.next();
+				if (completedPositions.getOrDefault(completion.source, -1L) >= completion.position) {
+					callbacks.add(completion.callback);
+					iterator.remove();
+				}
+			}
+		}
+		for (Callback callback : callbacks) {
+			callback.run();
+		}
+	}
+
+	private void checkFailure() throws Exception {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static class Completion {
+		private final String source;
+		private final long position;
+		private final Callback callback;
+
+		private Completion(String source, long position, Callback callback) {
+			this.source = source;
+			this.position = position;
+			this.callback = callback;
+		}
+	}
+
+	private static class BulkOperation {
+		private final long id;
+		private final String source;
+		// We don't keep the chunk itself, so its content can be garbage collected as soon as it has been sent
+		private final int actions;
+		private final long position;
+		private boolean done = false;
+		private boolean failed = false;
+
+		private BulkOperation(long id, String source, BulkChunk chunk, long position) {
+			this.id = id;
+			this.source = source;
+			this.actions = chunk.getActions();
+			this.position = position;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+/**
+ * An item which failed within a bulk response
+ */
+public class BulkItemError {
+
+	private final int position;
+	private final String action;
+	private final String id;
+	private final int status;
+	private final String type;
+	private final String reason;
+
+	BulkItemError(int position, String action, String id, int status, String type, String reason) {
+		this.position = position;
+		this.action = action;
+		this.id = id;
+		this.status = status;
+		this.type = type;
+		this.reason = reason;
+	}
+
+	/**
+	 * @return the position of the item within the bulk request, starting at 0
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the action like "index", "create", "update" or "delete"
+	 */
+	public String getAction() {
+		return action;
+	}
+
+	/**
+	 * @return the document id if any
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the http status of the item, like 429 when the item has been rejected
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the error type, like "mapper_parsing_exception"
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return the error reason
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + action + "] item #" + position + (id == null ? "" : " with id [" + id + "]") +
+				" failed with status [" + status + "]: [" + type + "] " + reason;
+	}
+}
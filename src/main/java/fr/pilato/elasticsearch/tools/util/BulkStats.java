@@ -0,0 +1,80 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count the documents sent with the Bulk API
+ */
+public class BulkStats {
+
+	private final LongAdder indexed = new LongAdder();
+	private final LongAdder retried = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	void onIndexed(long count) {
+		indexed.add(count);
+	}
+
+	void onRetried(long count) {
+		retried.add(count);
+	}
+
+	void onFailed(long count) {
+		failed.add(count);
+	}
+
+	/**
+	 * Add the counts of other stats to this one
+	 * @param other	The other stats
+	 */
+	public void add(BulkStats other) {
+		indexed.add(other.getIndexed());
+		retried.add(other.getRetried());
+		failed.add(other.getFailed());
+	}
+
+	/**
+	 * @return the number of actions which succeeded
+	 */
+	public long getIndexed() {
+		return indexed.sum();
+	}
+
+	/**
+	 * @return the number of times an action has been sent again because elasticsearch rejected it
+	 */
+	public long getRetried() {
+		return retried.sum();
+	}
+
+	/**
+	 * @return the number of actions which failed
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "indexed [" + getIndexed() + "], retried [" + getRetried() + "], failed [" + getFailed() + "]";
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keep the hash of the content of the resources we applied, so we don't send them again to elasticsearch
+ * when they did not change.
+ * <br>
+ * Hashes are stored in the state index, one document per resource. All of them are read with a single search request
+ * when the store is loaded.
+ * <br>
+ * As a resource might have been removed from the cluster since we applied it, we also read the names of the existing
+ * resources with one request per kind of resource we know a hash for. A resource which has been modified in the
+ * cluster is not detected.
+ */
+public class ChecksumStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChecksumStore.class);
+
+	static final String TYPE = "checksum";
+
+	private final RestClient client;
+	private final String index;
+	private final Map<String, String> hashes;
+	private final Set<String> existing;
+	private volatile boolean indexCreated;
+
+	private ChecksumStore(RestClient client, String index, Map<String, String> hashes, Set<String> existing,
+						  boolean indexCreated) {
+		this.client = client;
+		this.index = index;
+		this.hashes = hashes;
+		this.existing = existing;
+		this.indexCreated = indexCreated;
+	}
+
+	/**
+	 * Read all the known hashes from the state index and the names of the resources which exist in the cluster
+	 * @param client	Elasticsearch client
+	 * @param index		The state index name
+	 * @return the store
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public static ChecksumStore load(RestClient client, String index) throws IOException {
+		logger.trace("load([{}])", index);
+		Map<String, String> hashes = new ConcurrentHashMap<>();
+		Request request = new Request("GET", "/" + index + "/_search");
+		request.addParameter("size", "10000");
+		request.addParameter("q", "type:" + TYPE);
+		request.addParameter("filter_path", "hits.hits._id,hits.hits._source.hash");
+		boolean indexExists = true;
+		try {
+			Response response = Requests.perform(client, request);
+			try (InputStream stream = response.getEntity().getContent()) {
+				readHashes(stream, hashes);
+			}
+		} catch (ResponseException e) {
+			if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+				throw e;
+			}
+			logger.debug("State index [{}] does not exist yet", index);
+			indexExists = false;
+		}
+		logger.debug("[{}] checksums loaded from [{}]", hashes.size(), index);
+		Set<String> existing = ConcurrentHashMap.newKeySet();
+		for (ResourceKind kind : ResourceKind.values()) {
+			String prefix = id(kind, "");
+			if (hashes.keySet().stream().anyMatch(id -> id.startsWith(prefix))) {
+				for (String name : readNames(client, kind)) {
+					existing.add(id(kind, name));
+				}
+			}
+		}
+		return new ChecksumStore(client, index, hashes, existing, indexExists);
+	}
+
+	/**
+	 * Check if a resource is the same as the last one we applied
+	 * @param kind		The resource kind
+	 * @param name		The resource name
+	 * @param content	The resource content
+	 * @return true if the resource did not change
+	 */
+	public boolean isUnchanged(ResourceKind kind, String name, String content) {
+		return isUnchanged(kind, name, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Check if a resource is the same as the last one we applied
+	 * @param kind		The resource kind
+	 * @param name		The resource name
+	 * @param content	The resource content as UTF-8 bytes
+	 * @return true if the resource did not change and still exists in the cluster
+	 */
+	public boolean isUnchanged(ResourceKind kind, String name, byte[] content) {
+		String id = id(kind, name);
+		String previous = hashes.get(id);
+		if (previous == null || !previous.equals(hash(content))) {
+			return false;
+		}
+		if (!existing.contains(id)) {
+			logger.debug("[{}] did not change but does not exist anymore in the cluster", id);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Save the hash of a resource we just applied
+	 * @param kind		The resource kind
+	 * @param name		The resource name
+	 * @param content	The resource content
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public void save(ResourceKind kind, String name, String content) throws IOException {
+		save(kind, name, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Save the hash of a resource we just applied
+	 * @param kind		The resource kind
+	 * @param name		The resource name
+	 * @param content	The resource content as UTF-8 bytes
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public void save(ResourceKind kind, String name, byte[] content) throws IOException {
+		if (!indexCreated) {
+			StateIndex.createIfNeeded(client, index);
+			indexCreated = true;
+		}
+		String id = id(kind, name);
+		String hash = hash(content);
+		Request request = new Request("PUT", StateIndex.documentEndpoint(index, "_doc", id));
+		request.setJsonEntity("{\"type\":\"" + TYPE + "\",\"kind\":\"" + kind.getName() + "\"," +
+				"\"name\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(name)) + "\"," +
+				"\"hash\":\"" + hash + "\"}");
+		Requests.perform(client, request);
+		hashes.put(id, hash);
+		existing.add(id);
+		logger.trace("checksum [{}] saved for [{}]", hash, id);
+	}
+
+	private static String id(ResourceKind kind, String name) {
+		return kind.getName() + ":" + name;
+	}
+
+	/**
+	 * Compute the SHA-256 hash of a content
+	 * @param content	The content
+	 * @return the hash as an hex String
+	 */
+	public static String hash(String content) {
+		return hash(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Compute the SHA-256 hash of a content
+	 * @param content	The content
+	 * @return the hash as an hex String
+	 */
+	public static String hash(byte[] content) {
+		return HexFormat.of().formatHex(sha256().digest(content));
+	}
+
+	/**
+	 * Compute the SHA-256 hash of a stream
+	 * @param stream	The content. It is not closed.
+	 * @return the hash as an hex String
+	 * @throws IOException if the stream can not be read
+	 */
+	public static String hash(InputStream stream) throws IOException {
+		MessageDigest digest = sha256();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = stream.read(buffer)) != -1) {
+			digest.update(buffer, 0, read);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Wrap a stream to compute the SHA-256 hash of what is read from it, see {@link #digest(DigestInputStream)}
+	 * @param stream	The content
+	 * @return the stream to read
+	 */
+	public static DigestInputStream hashing(InputStream stream) {
+		return new DigestInputStream(stream, sha256());
+	}
+
+	/**
+	 * @param stream	A stream created with {@link #hashing(InputStream)}
+	 * @return the SHA-256 hash of what has been read from the stream as an hex String
+	 */
+	public static String digest(DigestInputStream stream) {
+		return HexFormat.of().formatHex(stream.getMessageDigest().digest());
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// This should never happen as SHA-256 is always available
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Read the names of all the resources of a given kind which exist in the cluster
+	 */
+	private static Set<String> readNames(RestClient client, ResourceKind kind) throws IOException {
+		Request request;
+		// The name of the list of resources in the response, null if the resources are the fields of the response
+		String list = null;
+		switch (kind) {
+			case INDEX_LIFECYCLE:
+				request = new Request("GET", "/_ilm/policy");
+				request.addParameter("filter_path", "*.version");
+				break;
+			case COMPONENT_TEMPLATE:
+				list = "component_templates";
+				request = new Request("GET", "/_component_template");
+				request.addParameter("filter_path", list + ".name");
+				break;
+			case INDEX_TEMPLATE:
+				list = "index_templates";
+				request = new Request("GET", "/_index_template");
+				request.addParameter("filter_path", list + ".name");
+				break;
+			case PIPELINE:
+				request = new Request("GET", "/_ingest/pipeline");
+				request.addParameter("summary", "true");
+				break;
+			default:
+				return Set.of();
+		}
+
+		Set<String> names = new HashSet<>();
+		try {
+			Response response = client.performRequest(request);
+			try (InputStream stream = response.getEntity().getContent()) {
+				readNames(stream, list, names);
+			}
+		} catch (ResponseException e) {
+			// Some APIs answer 404 when there is nothing to return
+			if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+				throw e;
+			}
+		}
+		logger.trace("[{}] existing resources of kind [{}]", names.size(), kind);
+		return names;
+	}
+
+	/**
+	 * Read a response like <code>{"foo":{...},"bar":{...}}</code> when there is no list name, or like
+	 * <code>{"component_templates":[{"name":"foo"},{"name":"bar"}]}</code>
+	 */
+	private static void readNames(InputStream stream, String list, Set<String> names) throws IOException {
+		try (JsonParser parser = JsonResponses.createParser(stream)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if (list == null) {
+					names.add(field);
+				} else if (list.equals(field) && value == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						while (parser.nextToken() == JsonToken.FIELD_NAME) {
+							String name = parser.currentName();
+							parser.nextToken();
+							if ("name".equals(name)) {
+								names.add(parser.getText());
+							} else {
+								parser.skipChildren();
+							}
+						}
+					}
+					continue;
+				}
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Read a response like <code>{"hits":{"hits":[{"_id":"pipeline:foo","_source":{"hash":"abcd"}}]}}</code>
+	 */
+	private static void readHashes(InputStream stream, Map<String, String> hashes) throws IOException {
+		try (JsonParser parser = JsonResponses.createParser(stream)) {
+			String id = null;
+			String hash = null;
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token == JsonToken.FIELD_NAME) {
+					String field = parser.currentName();
+					if ("_id".equals(field)) {
+						id = parser.nextTextValue();
+					} else if ("hash".equals(field)) {
+						hash = parser.nextTextValue();
+					}
+				} else if (token == JsonToken.END_OBJECT && id != null && hash != null) {
+					hashes.put(id, hash);
+					id = null;
+					hash = null;
+				}
+			}
+		}
+	}
+}
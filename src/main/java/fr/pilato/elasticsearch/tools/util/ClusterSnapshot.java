@@ -0,0 +1,237 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static fr.pilato.elasticsearch.tools.util.ResourceList.replaceIndexName;
+import static fr.pilato.elasticsearch.tools.util.ResourceList.wildcardToRegex;
+
+/**
+ * The definitions of the resources which exist in the cluster: index lifecycles, component templates,
+ * index templates, pipelines and the settings and mappings of the indices.
+ * <br>
+ * It can be read from a running cluster with a few requests (one per kind of resource), or built from the
+ * responses of the same APIs which have been saved before, for example to check a plan within a CI job.
+ */
+public class ClusterSnapshot {
+
+	private static final Logger logger = LoggerFactory.getLogger(ClusterSnapshot.class);
+
+	private static final int MAX_URL_LENGTH = 3000;
+
+	private final Map<String, Object> indexLifecycles;
+	private final Map<String, Object> componentTemplates;
+	private final Map<String, Object> indexTemplates;
+	private final Map<String, Object> pipelines;
+	private final Map<String, Object> indices;
+
+	private ClusterSnapshot(Map<String, Object> indexLifecycles, Map<String, Object> componentTemplates,
+							Map<String, Object> indexTemplates, Map<String, Object> pipelines, Map<String, Object> indices) {
+		this.indexLifecycles = indexLifecycles;
+		this.componentTemplates = componentTemplates;
+		this.indexTemplates = indexTemplates;
+		this.pipelines = pipelines;
+		this.indices = indices;
+	}
+
+	/**
+	 * Read the resources from the cluster. Nothing is written.
+	 * @param client	Elasticsearch client
+	 * @param indices	The names of the indices we want to read the settings and mappings of.
+	 *                  They can be date math expressions like {@code <my-index-{now/d}-000001>}.
+	 * @return the snapshot
+	 * @throws IOException if the elasticsearch API calls are failing
+	 */
+	public static ClusterSnapshot fetch(RestClient client, Collection<String> indices) throws IOException {
+		logger.trace("fetch({})", indices);
+		Map<String, Object> indexLifecycles = readByName(get(client, "/_ilm/policy", "*.policy"), "policy");
+		Map<String, Object> componentTemplates = readList(get(client, "/_component_template",
+				"component_templates.name,component_templates.component_template"), "component_templates", "component_template");
+		Map<String, Object> indexTemplates = readList(get(client, "/_index_template",
+				"index_templates.name,index_templates.index_template"), "index_templates", "index_template");
+		Map<String, Object> pipelines = readByName(get(client, "/_ingest/pipeline", null), null);
+
+		Map<String, Object> existingIndices = new LinkedHashMap<>();
+		StringBuilder batch = new StringBuilder();
+		for (String pattern : new LinkedHashSet<>(indices.stream().map(ResourceList::replaceIndexName).toList())) {
+			if (batch.length() > 0 && batch.length() + pattern.length() > MAX_URL_LENGTH) {
+				existingIndices.putAll(readByName(getIndices(client, batch.toString()), null));
+				batch.setLength(0);
+			}
+			if (batch.length() > 0) {
+				batch.append(",");
+			}
+			batch.append(pattern);
+		}
+		if (batch.length() > 0) {
+			existingIndices.putAll(readByName(getIndices(client, batch.toString()), null));
+		}
+
+		ClusterSnapshot snapshot = new ClusterSnapshot(indexLifecycles, componentTemplates, indexTemplates, pipelines,
+				existingIndices);
+		logger.trace("/fetch({}) = {}", indices, snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Build a snapshot from the responses of the elasticsearch APIs
+	 * @param indexLifecycles		The response of <code>GET /_ilm/policy</code>. Can be null.
+	 * @param componentTemplates	The response of <code>GET /_component_template</code>. Can be null.
+	 * @param indexTemplates		The response of <code>GET /_index_template</code>. Can be null.
+	 * @param pipelines				The response of <code>GET /_ingest/pipeline</code>. Can be null.
+	 * @param indices				The response of <code>GET /my-index,my-other-index</code>. Can be null.
+	 * @return the snapshot
+	 * @throws IOException if a response is not valid json
+	 */
+	public static ClusterSnapshot fromResponses(String indexLifecycles, String componentTemplates, String indexTemplates,
+												String pipelines, String indices) throws IOException {
+		return new ClusterSnapshot(
+				readByName(JsonDiff.parse(indexLifecycles), "policy"),
+				readList(JsonDiff.parse(componentTemplates), "component_templates", "component_template"),
+				readList(JsonDiff.parse(indexTemplates), "index_templates", "index_template"),
+				readByName(JsonDiff.parse(pipelines), null),
+				readByName(JsonDiff.parse(indices), null));
+	}
+
+	/**
+	 * Get the definition of a resource
+	 * @param kind	The resource kind. Only index lifecycles, component templates, index templates and pipelines are supported.
+	 * @param name	The resource name
+	 * @return the definition, as returned by {@link JsonDiff#parse(String)}, or null if the resource does not exist
+	 */
+	public Object get(ResourceKind kind, String name) {
+		switch (kind) {
+			case INDEX_LIFECYCLE:
+				return indexLifecycles.get(name);
+			case COMPONENT_TEMPLATE:
+				return componentTemplates.get(name);
+			case INDEX_TEMPLATE:
+				return indexTemplates.get(name);
+			case PIPELINE:
+				return pipelines.get(name);
+			default:
+				throw new IllegalArgumentException("Resources of kind [" + kind + "] are not supported.");
+		}
+	}
+
+	/**
+	 * Find the indices matching an index name
+	 * @param index	The index name. It can be a date math expression like {@code <my-index-{now/d}-000001>}.
+	 * @return the settings and mappings of each matching index, by index name. Empty if none.
+	 */
+	public Map<String, Object> findIndices(String index) {
+		Pattern regex = wildcardToRegex(replaceIndexName(index));
+		Map<String, Object> matching = new LinkedHashMap<>();
+		for (Map.Entry<String, Object> entry : indices.entrySet()) {
+			if (regex.matcher(entry.getKey()).matches()) {
+				matching.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return matching;
+	}
+
+	private static Object get(RestClient client, String endpoint, String filterPath) throws IOException {
+		Request request = new Request("GET", endpoint);
+		if (filterPath != null) {
+			request.addParameter("filter_path", filterPath);
+		}
+		return read(client, request);
+	}
+
+	private static Object getIndices(RestClient client, String expression) throws IOException {
+		Request request = new Request("GET", "/" + expression);
+		request.addParameter("ignore_unavailable", "true");
+		request.addParameter("allow_no_indices", "true");
+		request.addParameter("filter_path", "*.settings,*.mappings");
+		return read(client, request);
+	}
+
+	private static Object read(RestClient client, Request request) throws IOException {
+		try {
+			Response response = Requests.perform(client, request);
+			if (response.getEntity() == null) {
+				return null;
+			}
+			try (InputStream stream = response.getEntity().getContent()) {
+				return JsonDiff.parse(stream);
+			}
+		} catch (ResponseException e) {
+			// Some APIs answer 404 when there is nothing to return
+			if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+				throw e;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Read a response like <code>{"name":{"field":{...}}}</code>
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> readByName(Object response, String field) {
+		Map<String, Object> resources = new LinkedHashMap<>();
+		if (response instanceof Map) {
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) response).entrySet()) {
+				Object value = entry.getValue();
+				resources.put(entry.getKey(), field == null || !(value instanceof Map) ? value : ((Map<String, Object>) value).get(field));
+			}
+		}
+		return resources;
+	}
+
+	/**
+	 * Read a response like <code>{"list":[{"name":"name","field":{...}}]}</code>
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> readList(Object response, String list, String field) {
+		Map<String, Object> resources = new LinkedHashMap<>();
+		if (response instanceof Map && ((Map<String, Object>) response).get(list) instanceof List) {
+			for (Object item : (List<Object>) ((Map<String, Object>) response).get(list)) {
+				if (item instanceof Map) {
+					Map<String, Object> resource = (Map<String, Object>) item;
+					resources.put(String.valueOf(resource.get("name")), resource.get(field));
+				}
+			}
+		}
+		return resources;
+	}
+
+	@Override
+	public String toString() {
+		return "index lifecycles " + indexLifecycles.keySet() + ", component templates " + componentTemplates.keySet() +
+				", index templates " + indexTemplates.keySet() + ", pipelines " + pipelines.keySet() +
+				", indices " + indices.keySet();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decode compressed bulk files while they are read, so a file is never inflated fully in memory.
+ * Files ending with {@link DefaultSettings#NdJsonGzFileExtension} are decoded with gzip.
+ * Files ending with {@link DefaultSettings#NdJsonZstFileExtension} are decoded with zstd, which needs
+ * <a href="https://github.com/luben/zstd-jni">zstd-jni</a> in the classpath.
+ */
+public class CompressedStreams {
+
+	private static final Logger logger = LoggerFactory.getLogger(CompressedStreams.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String ZSTD_CLASS = "com.github.luben.zstd.ZstdInputStream";
+
+	private CompressedStreams() {
+		// empty
+	}
+
+	/**
+	 * @param name	The file name
+	 * @return true if the file is compressed and will be decoded by {@link #decode(String, InputStream)}
+	 */
+	public static boolean isCompressed(String name) {
+		return name.endsWith(DefaultSettings.NdJsonGzFileExtension) || name.endsWith(DefaultSettings.NdJsonZstFileExtension);
+	}
+
+	/**
+	 * @return true if zstd-jni is available in the classpath
+	 */
+	public static boolean isZstdAvailable() {
+		try {
+			Class.forName(ZSTD_CLASS, false, CompressedStreams.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Wrap a stream so it is decoded depending on the file extension. If the file is not compressed,
+	 * the stream is returned as is.
+	 * @param name		The file name
+	 * @param stream	The raw stream. It is closed when the returned stream is closed.
+	 * @return the decoded stream
+	 * @throws IOException if the stream is not using the expected format or if zstd-jni is missing
+	 */
+	public static InputStream decode(String name, InputStream stream) throws IOException {
+		if (!isCompressed(name)) {
+			return stream;
+		}
+		try {
+			if (name.endsWith(DefaultSettings.NdJsonGzFileExtension)) {
+				logger.trace("decoding [{}] with gzip", name);
+				return new GZIPInputStream(stream, BUFFER_SIZE);
+			}
+			if (!isZstdAvailable()) {
+				throw new IOException("Can not read [" + name + "]: zstd files need com.github.luben:zstd-jni in the classpath.");
+			}
+			logger.trace("decoding [{}] with zstd", name);
+			return Zstd.decode(stream);
+		} catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Only loaded when a zstd file is read, so zstd-jni remains optional.
+	 */
+	private static class Zstd {
+		private static InputStream decode(InputStream stream) throws IOException {
+			return new ZstdInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+		}
+	}
+}
@@ -19,6 +19,8 @@
 
 package fr.pilato.elasticsearch.tools.util;
 
+import java.time.Duration;
+
 /**
  * Settings finder
  */
@@ -42,6 +44,16 @@ public class DefaultSettings {
 	 */
 	public static final String NdJsonFileExtension = ".ndjson";
 
+	/**
+	 * Gzip compressed NdJson file extension: ".ndjson.gz"
+	 */
+	public static final String NdJsonGzFileExtension = ".ndjson.gz";
+
+	/**
+	 * Zstd compressed NdJson file extension: ".ndjson.zst"
+	 */
+	public static final String NdJsonZstFileExtension = ".ndjson.zst";
+
 	/**
 	 * Default index settings file name: "_settings.json"
 	 */
@@ -91,4 +103,114 @@ public class DefaultSettings {
 	 * Default setting of whether to force creation of indices and templates on start.
 	 */
 	public static final boolean ForceCreation = false;
+
+	/**
+	 * Default maximum number of actions sent within a single bulk request: 1000
+	 */
+	public static final int BulkMaxActions = 1000;
+
+	/**
+	 * Default maximum size in bytes of a single bulk request: 5mb
+	 */
+	public static final long BulkMaxBytes = 5 * 1024 * 1024;
+
+	/**
+	 * Default maximum number of bulk requests running at the same time: 1
+	 */
+	public static final int BulkConcurrency = 1;
+
+	/**
+	 * Default maximum number of times a bulk action rejected by elasticsearch is sent again: 3
+	 */
+	public static final int BulkMaxRetries = 3;
+
+	/**
+	 * Default delay before sending again bulk actions rejected by elasticsearch: 100ms. It doubles after each retry.
+	 */
+	public static final Duration BulkRetryInitialDelay = Duration.ofMillis(100);
+
+	/**
+	 * Maximum delay before sending rejected bulk actions again, unless the initial delay is bigger: 30 seconds
+	 */
+	public static final Duration BulkRetryMaxDelay = Duration.ofSeconds(30);
+
+	/**
+	 * Default to send the json files found in _data dirs one by one: false
+	 */
+	public static final boolean JsonDataAsBulk = false;
+
+	/**
+	 * Default maximum number of resources created at the same time when Beyonder starts: 1
+	 */
+	public static final int Parallelism = 1;
+
+	/**
+	 * Default setting of whether to run the tasks within virtual threads when the JVM supports them: false
+	 */
+	public static final boolean VirtualThreads = false;
+
+	/**
+	 * Default hidden index where Beyonder stores its state: "beyonder-state"
+	 */
+	public static final String StateIndex = "beyonder-state";
+
+	/**
+	 * Default setting of whether to skip the resources which did not change since the last start.
+	 */
+	public static final boolean SkipUnchanged = false;
+
+	/**
+	 * Default setting of whether to use a lock so only one instance applies the resources at a time: false
+	 */
+	public static final boolean ApplyLock = false;
+
+	/**
+	 * Default duration of the apply lock lease: 30 seconds
+	 */
+	public static final Duration LockTtl = Duration.ofSeconds(30);
+
+	/**
+	 * Default time to wait for the apply lock held by another instance: 1 minute
+	 */
+	public static final Duration LockWait = Duration.ofMinutes(1);
+
+	/**
+	 * Default setting of whether to compress the request bodies with gzip: false
+	 */
+	public static final boolean CompressRequests = false;
+
+	/**
+	 * Default minimum size of the request bodies to compress: 8kb
+	 */
+	public static final long CompressionThreshold = 8 * 1024;
+
+	/**
+	 * Default setting of whether to disable refresh and replicas while loading the data of a new index: false
+	 */
+	public static final boolean SeedingMode = false;
+
+	/**
+	 * Default setting of whether to refresh an index once its data has been loaded in seeding mode: true
+	 */
+	public static final boolean RefreshAfterSeeding = true;
+
+	/**
+	 * Default health status the new indices must reach before loading the data: null (don't wait)
+	 */
+	public static final String WaitForStatus = null;
+
+	/**
+	 * Default time to wait for the new indices to reach the expected health status: 30 seconds
+	 */
+	public static final Duration WaitForStatusTimeout = Duration.ofSeconds(30);
+
+	/**
+	 * Default number of active shard copies an index creation waits for: null (elasticsearch default)
+	 */
+	public static final String WaitForActiveShards = null;
+
+	/**
+	 * Default setting of whether to save the progress of the data loading so it can be resumed after a restart: false
+	 */
+	public static final boolean CheckpointSeeding = false;
 }
@@ -0,0 +1,274 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execute phases which depend on each other. A phase contains tasks which are independent, like creating
+ * all the pipelines. A phase starts as soon as all the phases it depends on are done.
+ * <br>
+ * When the parallelism is 1, phases and tasks are executed one after the other in the order they have been added
+ * within the calling thread. Otherwise, the tasks of a phase are executed in parallel, and the phases which don't
+ * depend on each other are also executed in parallel.
+ * <br>
+ * Dependencies must be added before the phases which depend on them, so the graph can not contain any cycle.
+ * <br>
+ * When virtual threads are enabled and the JVM supports them (Java 21 or later), each task runs within its own
+ * virtual thread instead of a fixed pool of platform threads. The parallelism still limits the number of tasks
+ * running at the same time, but can then be much higher without creating as many platform threads.
+ * <br>
+ * The execution can be stopped from another thread with {@link #cancel()}.
+ */
+public class DependencyGraphExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(DependencyGraphExecutor.class);
+
+	/**
+	 * A task to run within a phase
+	 */
+	@FunctionalInterface
+	public interface Task {
+		void run() throws Exception;
+	}
+
+	private final int parallelism;
+	private final BeyonderListener listener;
+	private final boolean virtualThreads;
+	private final Map<String, Phase> phases = new LinkedHashMap<>();
+	private volatile boolean cancelled = false;
+	private volatile ExecutorService running;
+
+	/**
+	 * Create an executor
+	 * @param parallelism	Maximum number of tasks running at the same time
+	 */
+	public DependencyGraphExecutor(int parallelism) {
+		this(parallelism, BeyonderListener.NOOP);
+	}
+
+	/**
+	 * Create an executor
+	 * @param parallelism	Maximum number of tasks running at the same time
+	 * @param listener		Notified when each phase starts and ends
+	 */
+	public DependencyGraphExecutor(int parallelism, BeyonderListener listener) {
+		this(parallelism, listener, false);
+	}
+
+	/**
+	 * Create an executor
+	 * @param parallelism		Maximum number of tasks running at the same time
+	 * @param listener			Notified when each phase starts and ends
+	 * @param virtualThreads	Whether to run the tasks within virtual threads when the JVM supports them
+	 */
+	public DependencyGraphExecutor(int parallelism, BeyonderListener listener, boolean virtualThreads) {
+		this.parallelism = parallelism;
+		this.listener = listener;
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Add a phase
+	 * @param name			The phase name
+	 * @param tasks			The tasks to run within this phase
+	 * @param dependencies	The names of the phases which must be done before this one starts
+	 * @return the current executor
+	 */
+	public DependencyGraphExecutor addPhase(String name, Collection<Task> tasks, String... dependencies) {
+		if (phases.containsKey(name)) {
+			throw new IllegalArgumentException("Phase [" + name + "] already exists.");
+		}
+		for (String dependency : dependencies) {
+			if (!phases.containsKey(dependency)) {
+				throw new IllegalArgumentException("Phase [" + name + "] depends on unknown phase [" + dependency + "].");
+			}
+		}
+		phases.put(name, new Phase(name, new ArrayList<>(tasks), dependencies));
+		return this;
+	}
+
+	/**
+	 * Execute all the phases and wait for them to be done.
+	 * @throws Exception the first exception thrown by a task
+	 */
+	public void execute() throws Exception {
+		checkCancelled();
+		if (parallelism <= 1) {
+			if (virtualThreads) {
+				logger.warn("virtual threads are not used as the parallelism is [{}]. The tasks are run one by one.", parallelism);
+			}
+			for (Phase phase : phases.values()) {
+				long start = phaseStarted(phase);
+				try {
+					for (Task task : phase.tasks) {
+						checkCancelled();
+						task.run();
+					}
+				} catch (Exception e) {
+					listener.onPhaseEnd(phase.name, phase.tasks.size(), System.nanoTime() - start, e);
+					throw e;
+				}
+				phaseDone(phase, start);
+			}
+			return;
+		}
+
+		ExecutorService virtual = virtualThreads ? VirtualThreads.newExecutor("beyonder-") : null;
+		if (virtualThreads && virtual == null) {
+			logger.warn("virtual threads require Java 21 or later. Using a pool of [{}] threads.", parallelism);
+		}
+		ExecutorService executor = virtual != null ? virtual :
+				Executors.newFixedThreadPool(parallelism, new BeyonderThreadFactory());
+		// A new virtual thread is created for each task, so we have to limit the number of running tasks
+		Semaphore permits = virtual != null ? new Semaphore(parallelism) : null;
+		running = executor;
+		try {
+			Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+			for (Phase phase : phases.values()) {
+				CompletableFuture<?>[] dependencies = new CompletableFuture<?>[phase.dependencies.length];
+				for (int i = 0; i < phase.dependencies.length; i++) {
+					dependencies[i] = futures.get(phase.dependencies[i]);
+				}
+				futures.put(phase.name, CompletableFuture.allOf(dependencies).thenCompose(v -> runPhase(phase, executor, permits)));
+			}
+			CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			checkCancelled();
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		} finally {
+			running = null;
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Stop the execution. The tasks which did not start yet are not executed, and the running ones are interrupted.
+	 * {@link #execute()} then fails with a {@link CancellationException}.
+	 */
+	public void cancel() {
+		cancelled = true;
+		ExecutorService executor = running;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return true if {@link #cancel()} has been called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	private void checkCancelled() {
+		if (cancelled) {
+			throw new CancellationException("Execution has been cancelled.");
+		}
+	}
+
+	private CompletableFuture<Void> runPhase(Phase phase, ExecutorService executor, Semaphore permits) {
+		long start = phaseStarted(phase);
+		List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		for (Task task : phase.tasks) {
+			tasks.add(CompletableFuture.runAsync(() -> {
+				try {
+					checkCancelled();
+					if (permits == null) {
+						task.run();
+					} else {
+						permits.acquire();
+						try {
+							task.run();
+						} finally {
+							permits.release();
+						}
+					}
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, executor));
+		}
+		return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+				.whenComplete((v, e) -> {
+					if (e == null) {
+						phaseDone(phase, start);
+					} else {
+						Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+						listener.onPhaseEnd(phase.name, phase.tasks.size(), System.nanoTime() - start,
+								cause instanceof Exception ? (Exception) cause : new CompletionException(cause));
+					}
+				});
+	}
+
+	private long phaseStarted(Phase phase) {
+		logger.trace("starting phase [{}] with [{}] tasks", phase.name, phase.tasks.size());
+		listener.onPhaseStart(phase.name, phase.tasks.size());
+		return System.nanoTime();
+	}
+
+	private void phaseDone(Phase phase, long start) {
+		long took = System.nanoTime() - start;
+		logger.debug("phase [{}] with [{}] tasks done in [{}] ms", phase.name, phase.tasks.size(), took / 1_000_000);
+		listener.onPhaseEnd(phase.name, phase.tasks.size(), took, null);
+	}
+
+	private static class Phase {
+		private final String name;
+		private final List<Task> tasks;
+		private final String[] dependencies;
+
+		private Phase(String name, List<Task> tasks, String[] dependencies) {
+			this.name = name;
+			this.tasks = tasks;
+			this.dependencies = dependencies;
+		}
+	}
+
+	private static class BeyonderThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "beyonder-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
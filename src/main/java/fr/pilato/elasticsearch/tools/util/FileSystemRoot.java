@@ -0,0 +1,63 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.nio.file.Path;
+
+/**
+ * Resources can be read from a dir of the filesystem instead of the classpath, for example when big datasets
+ * are mounted as a volume. Such a root dir is given to Beyonder as a String starting with {@link #PREFIX},
+ * like "file:/data/seeds", so it goes through the same methods as a classpath root.
+ */
+public class FileSystemRoot {
+
+	/**
+	 * The prefix of the roots which are read from the filesystem: "file:"
+	 */
+	public static final String PREFIX = "file:";
+
+	private FileSystemRoot() {
+		// empty
+	}
+
+	/**
+	 * @param dir	A dir of the filesystem
+	 * @return the root to give to Beyonder, like "file:/data/seeds"
+	 */
+	public static String of(Path dir) {
+		return PREFIX + dir.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * @param path	A root or a resource path built from a root
+	 * @return true if the path must be read from the filesystem
+	 */
+	public static boolean isFileSystem(String path) {
+		return path != null && path.startsWith(PREFIX);
+	}
+
+	/**
+	 * @param path	A resource path built from a filesystem root, like "file:/data/seeds/twitter/_data/bulk.ndjson"
+	 * @return the file
+	 */
+	public static Path toPath(String path) {
+		return Path.of(path.substring(PREFIX.length()));
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * A request body which is compressed with gzip while it is sent, so the compressed body is never
+ * fully held in memory, and the uncompressed body is never copied. The http client adds the
+ * <code>Content-Encoding: gzip</code> header.
+ * <br>
+ * The compressed size is only known once the body has been sent, see {@link #getCompressedLength()}.
+ */
+public class GzipEntity extends AbstractHttpEntity {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] HEADER = {
+			(byte) 0x1f, (byte) 0x8b,	// magic number
+			Deflater.DEFLATED,			// compression method
+			0,							// flags
+			0, 0, 0, 0,					// modification time
+			0,							// extra flags
+			(byte) 0xff					// operating system: unknown
+	};
+
+	/**
+	 * Opens the uncompressed content each time the entity is sent
+	 */
+	@FunctionalInterface
+	private interface Content {
+		InputStream open() throws IOException;
+	}
+
+	private final Content content;
+	private final long length;
+	private volatile long compressedLength = -1;
+
+	/**
+	 * Create an entity
+	 * @param content		The uncompressed content. It is not copied.
+	 * @param offset		Where the content starts
+	 * @param length		The content length
+	 * @param contentType	The content type
+	 */
+	public GzipEntity(byte[] content, int offset, int length, ContentType contentType) {
+		this(() -> new ByteArrayInputStream(content, offset, length), length, contentType.toString());
+	}
+
+	/**
+	 * Create an entity which compresses another one
+	 * @param entity	The uncompressed entity. It must be repeatable and its length must be known.
+	 *                  It is read again each time this entity is sent.
+	 */
+	public GzipEntity(HttpEntity entity) {
+		this(entity::getContent, entity.getContentLength(),
+				entity.getContentType() == null ? ContentType.APPLICATION_JSON.toString() : entity.getContentType().getValue());
+		if (!entity.isRepeatable() || entity.getContentLength() < 0) {
+			throw new IllegalArgumentException("Only repeatable entities with a known length can be compressed.");
+		}
+	}
+
+	private GzipEntity(Content content, long length, String contentType) {
+		this.content = content;
+		this.length = length;
+		setContentType(contentType);
+		setContentEncoding("gzip");
+	}
+
+	/**
+	 * Compress an entity if it is big enough
+	 * @param entity	The entity to compress. Can be null.
+	 * @param threshold	The minimum size in bytes of the entities to compress. -1 to never compress.
+	 * @return a {@link GzipEntity} which wraps the entity, or the entity itself if it is smaller than the threshold,
+	 * already encoded or can not be read twice
+	 */
+	public static HttpEntity compress(HttpEntity entity, long threshold) {
+		if (entity == null || threshold < 0 || entity instanceof GzipEntity || entity.getContentEncoding() != null) {
+			return entity;
+		}
+		long contentLength = entity.getContentLength();
+		if (contentLength < threshold || !entity.isRepeatable()) {
+			return entity;
+		}
+		return new GzipEntity(entity);
+	}
+
+	/**
+	 * @return the size of the content before compression
+	 */
+	public long getUncompressedLength() {
+		return length;
+	}
+
+	/**
+	 * @return the size of the compressed content, or -1 if it has not been fully sent yet
+	 */
+	public long getCompressedLength() {
+		return compressedLength;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	/**
+	 * @return -1 as the compressed size is not known in advance
+	 */
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		// The checksum is computed while the content is compressed
+		CheckedInputStream checked = new CheckedInputStream(content.open(), new CRC32());
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		// The deflater is released when the compressed content is closed, before the trailer is built
+		long[] bytesRead = new long[1];
+		InputStream deflated = new DeflaterInputStream(checked, deflater, BUFFER_SIZE) {
+			private boolean closed = false;
+
+			@Override
+			public void close() throws IOException {
+				super.close();
+				if (!closed) {
+					closed = true;
+					bytesRead[0] = deflater.getBytesRead();
+					deflater.end();
+				}
+			}
+		};
+		// The trailer is only built once all the content has been read
+		Iterator<Supplier<InputStream>> parts = List.<Supplier<InputStream>>of(
+				() -> new ByteArrayInputStream(HEADER),
+				() -> deflated,
+				() -> {
+					byte[] trailer = new byte[8];
+					writeInt(trailer, 0, checked.getChecksum().getValue());
+					writeInt(trailer, 4, bytesRead[0]);
+					return new ByteArrayInputStream(trailer);
+				}).iterator();
+		return new CountingInputStream(new SequenceInputStream(new Enumeration<>() {
+			@Override
+			public boolean hasMoreElements() {
+				return parts.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				return parts.next().get();
+			}
+		}));
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		try (InputStream stream = getContent()) {
+			stream.transferTo(out);
+		}
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	private static void writeInt(byte[] bytes, int position, long value) {
+		// gzip uses little endian
+		for (int i = 0; i < 4; i++) {
+			bytes[position + i] = (byte) (value >> (8 * i));
+		}
+	}
+
+	/**
+	 * Count the compressed bytes and record the total once everything has been read
+	 */
+	private class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				compressedLength = count;
+			} else {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read == -1) {
+				compressedLength = count;
+			} else {
+				count += read;
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Group single json documents in {@link BulkChunk}s which contain at most {@code maxActions} documents
+ * and which are not bigger than {@code maxBytes} (unless a single document is already bigger than this limit).
+ * <br>
+ * Each document is written on a single line after an <code>{"index":{}}</code> action, so the chunk must be sent
+ * to the <code>/index/_bulk</code> endpoint. The name of the file each document comes from is kept within the chunk,
+ * so failures can be reported per file.
+ */
+public class JsonBulkBuilder {
+
+	private static final JsonFactory jsonFactory = new JsonFactory();
+	private static final byte[] INDEX_ACTION = "{\"index\":{}}\n".getBytes(StandardCharsets.UTF_8);
+
+	private final int maxActions;
+	private final long maxBytes;
+
+	private final ByteArrayOutputStream item = new ByteArrayOutputStream();
+	private ChunkBuffer chunk = new ChunkBuffer();
+	private final List<String> sources = new ArrayList<>();
+	private int[] offsets = new int[16];
+
+	/**
+	 * Create a builder
+	 * @param maxActions	Maximum number of documents per chunk
+	 * @param maxBytes		Maximum number of bytes per chunk
+	 */
+	public JsonBulkBuilder(int maxActions, long maxBytes) {
+		this.maxActions = maxActions;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Add a json document
+	 * @param source	The name of the file the document comes from
+	 * @param stream	The json document. It is closed when read.
+	 * @return a chunk which is ready to be sent, or null if the current chunk is not full yet
+	 * @throws IOException if the stream can not be read or does not contain a single json document
+	 */
+	public BulkChunk add(String source, InputStream stream) throws IOException {
+		item.reset();
+		item.write(INDEX_ACTION);
+		// The document must be written on a single line
+		try (JsonParser parser = jsonFactory.createParser(stream);
+			 JsonGenerator generator = jsonFactory.createGenerator(item)) {
+			if (parser.nextToken() == null) {
+				throw new IOException("Json file [" + source + "] is empty.");
+			}
+			generator.copyCurrentStructure(parser);
+			if (parser.nextToken() != null) {
+				throw new IOException("Json file [" + source + "] must contain a single json document.");
+			}
+		}
+		item.write('\n');
+
+		BulkChunk ready = null;
+		int actions = sources.size();
+		if (actions > 0 && (actions >= maxActions || (long) chunk.size() + item.size() > maxBytes)) {
+			ready = flush();
+			actions = 0;
+		}
+		if (actions == offsets.length) {
+			offsets = Arrays.copyOf(offsets, actions * 2);
+		}
+		offsets[actions] = chunk.size();
+		sources.add(source);
+		item.writeTo(chunk);
+		return ready;
+	}
+
+	/**
+	 * Get the current chunk, even if it is not full
+	 * @return the chunk or null if there is no document to send
+	 */
+	public BulkChunk flush() {
+		if (sources.isEmpty()) {
+			return null;
+		}
+		BulkChunk ready = new BulkChunk(chunk.buffer(), chunk.size(), Arrays.copyOf(offsets, sources.size()),
+				sources.toArray(new String[0]));
+		// We can not reuse the buffer as it is now owned by the chunk
+		chunk = new ChunkBuffer();
+		sources.clear();
+		return ready;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare the json content of a resource with what elasticsearch returns for it.
+ * <br>
+ * Elasticsearch adds default values and normalizes what we send, so we only check that every value of the
+ * resource exists with the same value in elasticsearch:
+ * <ul>
+ *     <li>numbers and booleans are compared as strings, like <code>1</code> and <code>"1"</code></li>
+ *     <li>settings can be nested or flat, with or without the <code>index.</code> prefix</li>
+ *     <li>arrays must have the same size</li>
+ * </ul>
+ */
+public class JsonDiff {
+
+	private JsonDiff() {
+		// empty
+	}
+
+	/**
+	 * Parse a json content as a tree of {@link Map}, {@link List} and {@link String} values.
+	 * Numbers and booleans are read as strings.
+	 * @param json	The json content. Can be null.
+	 * @return the tree or null if the content is null or empty
+	 * @throws IOException if the content is not valid json
+	 */
+	public static Object parse(String json) throws IOException {
+		if (json == null) {
+			return null;
+		}
+		return parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Parse a json content as a tree of {@link Map}, {@link List} and {@link String} values.
+	 * Numbers and booleans are read as strings.
+	 * @param stream	The json content
+	 * @return the tree or null if the content is empty
+	 * @throws IOException if the content is not valid json
+	 */
+	public static Object parse(InputStream stream) throws IOException {
+		try (JsonParser parser = JsonResponses.createParser(stream)) {
+			JsonToken token = parser.nextToken();
+			return token == null ? null : readValue(parser, token);
+		}
+	}
+
+	private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+		switch (token) {
+			case START_OBJECT:
+				Map<String, Object> map = new LinkedHashMap<>();
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.currentName();
+					map.put(field, readValue(parser, parser.nextToken()));
+				}
+				return map;
+			case START_ARRAY:
+				List<Object> list = new ArrayList<>();
+				JsonToken next;
+				while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+					list.add(readValue(parser, next));
+				}
+				return list;
+			case VALUE_NULL:
+				return null;
+			default:
+				return parser.getText();
+		}
+	}
+
+	/**
+	 * Find the values of a resource which are missing or different in elasticsearch
+	 * @param expected	The resource, as returned by {@link #parse(String)}
+	 * @param actual	What elasticsearch returns, as returned by {@link #parse(String)}
+	 * @return the differences, like <code>settings.number_of_replicas: [1] -&gt; [2]</code>. Empty if none.
+	 */
+	public static List<String> diff(Object expected, Object actual) {
+		Map<String, String> expectedValues = flatten(expected);
+		Map<String, String> actualValues = flatten(actual);
+		List<String> differences = new ArrayList<>();
+		for (Map.Entry<String, String> entry : expectedValues.entrySet()) {
+			String path = entry.getKey();
+			if (!actualValues.containsKey(path)) {
+				differences.add(path + ": missing -> [" + entry.getValue() + "]");
+			} else if (!String.valueOf(entry.getValue()).equals(String.valueOf(actualValues.get(path)))) {
+				differences.add(path + ": [" + actualValues.get(path) + "] -> [" + entry.getValue() + "]");
+			}
+		}
+		return differences;
+	}
+
+	/**
+	 * Flatten a tree to a map of paths like <code>settings.number_of_shards</code> or <code>processors[0].set.field</code>
+	 * to values. The size of an array is kept with a path like <code>processors[]</code>.
+	 */
+	static Map<String, String> flatten(Object tree) {
+		Map<String, String> values = new LinkedHashMap<>();
+		flatten("", tree, values);
+		return values;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void flatten(String path, Object value, Map<String, String> values) {
+		if (value instanceof Map) {
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+				flatten(path.isEmpty() ? entry.getKey() : path + "." + entry.getKey(), entry.getValue(), values);
+			}
+		} else if (value instanceof List) {
+			List<Object> list = (List<Object>) value;
+			values.put(normalize(path) + "[]", String.valueOf(list.size()));
+			for (int i = 0; i < list.size(); i++) {
+				flatten(path + "[" + i + "]", list.get(i), values);
+			}
+		} else if (!path.isEmpty()) {
+			values.put(normalize(path), value == null ? null : value.toString());
+		}
+	}
+
+	/**
+	 * Settings can be written as <code>{"settings":{"index":{"number_of_shards":1}}}</code>,
+	 * <code>{"settings":{"index.number_of_shards":1}}</code> or <code>{"settings":{"number_of_shards":1}}</code>.
+	 * We remove the <code>index.</code> prefix of the settings.
+	 */
+	private static String normalize(String path) {
+		return path.startsWith("settings.index.") ? "settings." + path.substring("settings.index.".length()) :
+				path.replace(".settings.index.", ".settings.");
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.elasticsearch.client.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Answer the questions Beyonder asks to elasticsearch responses by streaming them with a {@link JsonParser}.
+ * The response bodies are never read as a String or as a Map, so big responses don't need a lot of memory.
+ */
+public class JsonResponses {
+
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	private JsonResponses() {
+		// empty
+	}
+
+	/**
+	 * Create a parser on a stream. The stream is closed when the parser is closed.
+	 * @param stream	The json content
+	 * @return a parser
+	 * @throws IOException if the stream can not be read
+	 */
+	public static JsonParser createParser(InputStream stream) throws IOException {
+		return jsonFactory.createParser(stream);
+	}
+
+	/**
+	 * Check if a response is an empty json object like <code>{}</code>
+	 * @param response	The elasticsearch response
+	 * @return true if the response is an empty object
+	 * @throws IOException if the response can not be read
+	 */
+	public static boolean isEmptyObject(Response response) throws IOException {
+		if (response.getEntity() == null) {
+			return false;
+		}
+		return isEmptyObject(response.getEntity().getContent());
+	}
+
+	/**
+	 * Check if a json content is an empty object like <code>{}</code>. Only the first two tokens are read.
+	 * @param stream	The json content
+	 * @return true if the content is an empty object
+	 * @throws IOException if the content can not be read
+	 */
+	public static boolean isEmptyObject(InputStream stream) throws IOException {
+		try (JsonParser parser = createParser(stream)) {
+			return parser.nextToken() == JsonToken.START_OBJECT && parser.nextToken() == JsonToken.END_OBJECT;
+		}
+	}
+
+	/**
+	 * Read the elasticsearch version from the response of <code>GET /</code>
+	 * @param response	The elasticsearch response
+	 * @return the version number like "9.0.2" or null if not found
+	 * @throws IOException if the response can not be read
+	 */
+	public static String readVersion(Response response) throws IOException {
+		try (JsonParser parser = createParser(response.getEntity().getContent())) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if ("version".equals(field) && value == JsonToken.START_OBJECT) {
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String versionField = parser.currentName();
+						parser.nextToken();
+						if ("number".equals(versionField)) {
+							return parser.getValueAsString();
+						}
+						parser.skipChildren();
+					}
+					return null;
+				}
+				parser.skipChildren();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Read all the text values of a given field, whatever its depth in the document.
+	 * For example, reading "name" from <code>{"indices":[{"name":"foo"}],"aliases":[{"name":"bar"}]}</code>
+	 * gives "foo" and "bar".
+	 * @param stream	The json content
+	 * @param field		The field name
+	 * @return the values in the order they appear
+	 * @throws IOException if the content can not be read
+	 */
+	public static Set<String> readFieldValues(InputStream stream, String field) throws IOException {
+		Set<String> values = new LinkedHashSet<>();
+		try (JsonParser parser = createParser(stream)) {
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token == JsonToken.FIELD_NAME && field.equals(parser.currentName())
+						&& parser.nextToken() == JsonToken.VALUE_STRING) {
+					values.add(parser.getText());
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Read the items which failed from a bulk response. When the response says <code>"errors":false</code>
+	 * before the items, which is the case with elasticsearch, the items are not read at all.
+	 * @param stream	The bulk response
+	 * @return the items which failed, empty if none
+	 * @throws IOException if the content can not be read
+	 */
+	public static List<BulkItemError> readBulkErrors(InputStream stream) throws IOException {
+		List<BulkItemError> errors = new ArrayList<>();
+		try (JsonParser parser = createParser(stream)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("A bulk response must be a json object.");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if ("errors".equals(field) && value == JsonToken.VALUE_FALSE) {
+					return errors;
+				}
+				if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+					int position = 0;
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						BulkItemError error = readBulkItem(parser, position++);
+						if (error != null) {
+							errors.add(error);
+						}
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Read an item like <code>{"index":{"_id":"1","status":429,"error":{"type":"...","reason":"..."}}}</code>.
+	 * The parser is on the START_OBJECT token of the item and is left on its END_OBJECT token.
+	 */
+	private static BulkItemError readBulkItem(JsonParser parser, int position) throws IOException {
+		BulkItemError error = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String action = parser.currentName();
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				parser.skipChildren();
+				continue;
+			}
+			String id = null;
+			int status = 0;
+			String type = null;
+			String reason = null;
+			boolean failed = false;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if ("_id".equals(field)) {
+					id = parser.getValueAsString();
+				} else if ("status".equals(field)) {
+					status = parser.getValueAsInt();
+				} else if ("error".equals(field)) {
+					failed = true;
+					if (value == JsonToken.START_OBJECT) {
+						while (parser.nextToken() == JsonToken.FIELD_NAME) {
+							String errorField = parser.currentName();
+							parser.nextToken();
+							if ("type".equals(errorField)) {
+								type = parser.getValueAsString();
+							} else if ("reason".equals(errorField)) {
+								reason = parser.getValueAsString();
+							} else {
+								parser.skipChildren();
+							}
+						}
+					} else {
+						reason = parser.getValueAsString();
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if (failed) {
+				error = new BulkItemError(position, action, id, status, type, reason);
+			}
+		}
+		return error;
+	}
+}
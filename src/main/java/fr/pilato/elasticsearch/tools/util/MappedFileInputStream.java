@@ -0,0 +1,126 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read a file through memory mapped regions of its {@link FileChannel}. The bytes are copied from the
+ * page cache to the caller's buffer, without going through a heap buffer of the stream or being decoded.
+ * <br>
+ * Files bigger than 2gb are mapped one region after the other.
+ */
+public class MappedFileInputStream extends InputStream {
+
+	private static final long REGION_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final long regionSize;
+	private long position = 0;
+	private MappedByteBuffer region;
+
+	/**
+	 * Open a file
+	 * @param file	The file to read
+	 * @throws IOException if the file can not be opened
+	 */
+	public MappedFileInputStream(Path file) throws IOException {
+		this(file, REGION_SIZE);
+	}
+
+	/**
+	 * Open a file
+	 * @param file			The file to read
+	 * @param regionSize	The size of each mapped region
+	 * @throws IOException if the file can not be opened
+	 */
+	public MappedFileInputStream(Path file, long regionSize) throws IOException {
+		if (regionSize < 1 || regionSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("regionSize must be between 1 and " + Integer.MAX_VALUE + ".");
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.regionSize = regionSize;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextRegion()) {
+			return -1;
+		}
+		position++;
+		return region.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextRegion()) {
+			return -1;
+		}
+		int read = Math.min(len, region.remaining());
+		region.get(b, off, read);
+		position += read;
+		return read;
+	}
+
+	@Override
+	public long skip(long n) {
+		long skipped = Math.max(0, Math.min(n, size - position));
+		position += skipped;
+		// The next read maps the region where we are now
+		region = null;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(size - position, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		region = null;
+		channel.close();
+	}
+
+	/**
+	 * Map the next region if we have read all the current one
+	 * @return false if we reached the end of the file
+	 */
+	private boolean nextRegion() throws IOException {
+		if (region != null && region.hasRemaining()) {
+			return true;
+		}
+		if (position >= size) {
+			return false;
+		}
+		region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+		return true;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read a ndjson stream line by line and split it in {@link BulkChunk}s which contain at most
+ * {@code maxActions} actions and which are not bigger than {@code maxBytes} (unless a single action
+ * is already bigger than this limit).
+ * <br>
+ * Only the current chunk is kept in memory, so the size of the file does not matter.
+ * An action is never split across two chunks: an {@code index}, {@code create} or {@code update}
+ * line is always sent with the source line which follows it. A {@code delete} line has no source.
+ */
+public class NdJsonBulkReader implements Closeable {
+
+	private static final byte[] DELETE = "delete".getBytes(StandardCharsets.UTF_8);
+
+	private final InputStream stream;
+	private final int maxActions;
+	private final long maxBytes;
+
+	private final byte[] readBuffer = new byte[8192];
+	private int readPosition = 0;
+	private int readLimit = 0;
+
+	private final ChunkBuffer line = new ChunkBuffer();
+	private final ChunkBuffer item = new ChunkBuffer();
+	private ChunkBuffer chunk = new ChunkBuffer();
+	private int chunkActions = 0;
+	private int[] chunkOffsets = new int[16];
+	private long lineNumber = 0;
+	private boolean eof = false;
+	// Number of bytes read from the stream, including the ones which are still in the read buffer
+	private long bytesRead = 0;
+	private long chunkEnd = 0;
+
+	/**
+	 * Create a reader
+	 * @param stream		The ndjson content
+	 * @param maxActions	Maximum number of actions per chunk
+	 * @param maxBytes		Maximum number of bytes per chunk
+	 */
+	public NdJsonBulkReader(InputStream stream, int maxActions, long maxBytes) {
+		this.stream = stream;
+		this.maxActions = maxActions;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Read the next chunk
+	 * @return the next chunk or null if we reached the end of the stream
+	 * @throws IOException if the stream can not be read or if the stream ends in the middle of an action
+	 */
+	public BulkChunk next() throws IOException {
+		while (!eof) {
+			item.reset();
+			long itemStart = position();
+			if (!readLine()) {
+				break;
+			}
+			boolean delete = isDeleteAction(line.buffer(), line.size());
+			line.writeTo(item);
+			if (!delete) {
+				if (!readLine()) {
+					throw new IOException("Missing source after the action at line [" + lineNumber + "].");
+				}
+				line.writeTo(item);
+			}
+
+			BulkChunk ready = null;
+			if (chunkActions > 0 && (chunkActions >= maxActions || (long) chunk.size() + item.size() > maxBytes)) {
+				ready = flush(itemStart);
+			}
+			if (chunkActions == chunkOffsets.length) {
+				chunkOffsets = Arrays.copyOf(chunkOffsets, chunkActions * 2);
+			}
+			chunkOffsets[chunkActions++] = chunk.size();
+			item.writeTo(chunk);
+			if (ready != null) {
+				return ready;
+			}
+		}
+
+		return chunkActions > 0 ? flush(position()) : null;
+	}
+
+	/**
+	 * @return the position in the stream just after the last action of the chunk returned by {@link #next()}.
+	 * The stream can be read again from this position without sending any action twice.
+	 */
+	public long getChunkEnd() {
+		return chunkEnd;
+	}
+
+	/**
+	 * @return the number of bytes of the stream which have been consumed
+	 */
+	private long position() {
+		return bytesRead - (readLimit - readPosition);
+	}
+
+	private BulkChunk flush(long end) {
+		chunkEnd = end;
+		BulkChunk ready = new BulkChunk(chunk.buffer(), chunk.size(), Arrays.copyOf(chunkOffsets, chunkActions));
+		// We can not reuse the buffer as it is now owned by the chunk
+		chunk = new ChunkBuffer();
+		chunkActions = 0;
+		return ready;
+	}
+
+	/**
+	 * Read the next non-empty line in the line buffer. The line ends with a '\n'.
+	 * @return false if we reached the end of the stream
+	 */
+	private boolean readLine() throws IOException {
+		while (true) {
+			line.reset();
+			boolean blank = true;
+			boolean endOfLine = false;
+			while (!endOfLine) {
+				if (readPosition == readLimit) {
+					readLimit = stream.read(readBuffer);
+					readPosition = 0;
+					if (readLimit == -1) {
+						readLimit = 0;
+						eof = true;
+						break;
+					}
+					bytesRead += readLimit;
+				}
+				int start = readPosition;
+				while (readPosition < readLimit && readBuffer[readPosition] != '\n') {
+					if (blank && !Character.isWhitespace(readBuffer[readPosition])) {
+						blank = false;
+					}
+					readPosition++;
+				}
+				line.write(readBuffer, start, readPosition - start);
+				if (readPosition < readLimit) {
+					// We found the end of the line
+					readPosition++;
+					endOfLine = true;
+				}
+			}
+			if (!blank) {
+				lineNumber++;
+				line.write('\n');
+				return true;
+			}
+			if (eof) {
+				return false;
+			}
+			lineNumber++;
+		}
+	}
+
+	/**
+	 * Check if the action line is a delete action like <code>{ "delete" : { "_id" : "1" } }</code>
+	 * @param bytes	the line
+	 * @param length	the line length
+	 * @return true if this is a delete action
+	 */
+	static boolean isDeleteAction(byte[] bytes, int length) {
+		int i = skipWhitespaces(bytes, 0, length);
+		if (i >= length || bytes[i] != '{') {
+			return false;
+		}
+		i = skipWhitespaces(bytes, i + 1, length);
+		if (i >= length || bytes[i] != '"') {
+			return false;
+		}
+		i++;
+		if (i + DELETE.length >= length) {
+			return false;
+		}
+		for (int j = 0; j < DELETE.length; j++) {
+			if (bytes[i + j] != DELETE[j]) {
+				return false;
+			}
+		}
+		return bytes[i + DELETE.length] == '"';
+	}
+
+	private static int skipWhitespaces(byte[] bytes, int from, int length) {
+		int i = from;
+		while (i < length && Character.isWhitespace(bytes[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	@Override
+	public void close() throws IOException {
+		stream.close();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What Beyonder would do with a resource if it was started
+ */
+public class PlannedChange {
+
+	/**
+	 * What would happen to the resource
+	 */
+	public enum Action {
+		/**
+		 * The resource does not exist and would be created
+		 */
+		CREATE,
+		/**
+		 * The resource exists and would be modified
+		 */
+		UPDATE,
+		/**
+		 * The resource exists and is already up to date
+		 */
+		NOOP
+	}
+
+	private final ResourceKind kind;
+	private final String name;
+	private final Action action;
+	private final List<String> differences;
+
+	/**
+	 * Create a planned change
+	 * @param kind			The resource kind
+	 * @param name			The resource name. Can be null for the aliases.
+	 * @param action		What would happen to the resource
+	 * @param differences	Why the resource would be updated. Empty if not updated.
+	 */
+	public PlannedChange(ResourceKind kind, String name, Action action, List<String> differences) {
+		this.kind = kind;
+		this.name = name;
+		this.action = action;
+		this.differences = Collections.unmodifiableList(differences);
+	}
+
+	/**
+	 * @return the resource kind
+	 */
+	public ResourceKind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the resource name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return what would happen to the resource
+	 */
+	public Action getAction() {
+		return action;
+	}
+
+	/**
+	 * @return why the resource would be updated, like <code>settings.number_of_replicas: [1] -&gt; [2]</code>
+	 */
+	public List<String> getDifferences() {
+		return differences;
+	}
+
+	@Override
+	public String toString() {
+		return action + " " + kind + (name == null ? "" : " [" + name + "]") +
+				(differences.isEmpty() ? "" : ": " + String.join(", ", differences));
+	}
+}
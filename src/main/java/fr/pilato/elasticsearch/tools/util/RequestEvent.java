@@ -0,0 +1,144 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+/**
+ * A request sent to elasticsearch
+ */
+public class RequestEvent {
+
+	private final ResourceKind kind;
+	private final String name;
+	private final String method;
+	private final String endpoint;
+	private final long bytesSent;
+	private final long uncompressedBytes;
+	private final int actions;
+	private final int status;
+	private final long tookNanos;
+	private final Exception failure;
+
+	RequestEvent(ResourceKind kind, String name, String method, String endpoint, long bytesSent, long uncompressedBytes,
+				 int actions, int status, long tookNanos, Exception failure) {
+		this.kind = kind;
+		this.name = name;
+		this.method = method;
+		this.endpoint = endpoint;
+		this.bytesSent = bytesSent;
+		this.uncompressedBytes = uncompressedBytes;
+		this.actions = actions;
+		this.status = status;
+		this.tookNanos = tookNanos;
+		this.failure = failure;
+	}
+
+	/**
+	 * @return the kind of resource the request is about, or null if unknown
+	 */
+	public ResourceKind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the name of the resource the request is about, like the pipeline name or the data file name.
+	 * Null if unknown.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the http method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the endpoint, like "/_ingest/pipeline/my_pipeline"
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the size of the request body in bytes as sent over the network (so after compression), 0 if none,
+	 * -1 if unknown
+	 */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @return the size of the request body in bytes before compression, 0 if none, -1 if unknown
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+
+	/**
+	 * @return true if the request body has been compressed with gzip
+	 */
+	public boolean isCompressed() {
+		return bytesSent != uncompressedBytes;
+	}
+
+	/**
+	 * @return the number of bytes saved by compressing the request body, 0 if it has not been compressed
+	 */
+	public long getBytesSaved() {
+		return bytesSent < 0 || uncompressedBytes < 0 ? 0 : uncompressedBytes - bytesSent;
+	}
+
+	/**
+	 * @return the number of bulk actions sent, 0 if this is not a bulk request
+	 */
+	public int getActions() {
+		return actions;
+	}
+
+	/**
+	 * @return the http status, or 0 if we did not get any response
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return how long the request took
+	 */
+	public long getTookNanos() {
+		return tookNanos;
+	}
+
+	/**
+	 * @return the failure if any, null if successful. A response with an error status is also a failure.
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + endpoint + " [" + kind + "/" + name + "]: status [" + status + "], [" + bytesSent +
+				"] bytes" + (isCompressed() ? " ([" + uncompressedBytes + "] uncompressed)" : "") +
+				", [" + tookNanos / 1_000_000 + "] ms";
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import fr.pilato.elasticsearch.tools.util.DependencyGraphExecutor.Task;
+import org.apache.http.HttpEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+
+/**
+ * Send requests to elasticsearch and report them to the {@link BeyonderListener} of the current resource.
+ * <br>
+ * The updaters are static methods, so instead of passing the listener to each of them, the listener and the
+ * resource being processed are kept for the current thread while {@link #run(BeyonderListener, ResourceKind, String, Task)}
+ * is running. The request bodies are compressed if {@link #run(BeyonderOptions, ResourceKind, String, Task)}
+ * has been called with {@link BeyonderOptions#isCompressRequests()}.
+ */
+public class Requests {
+
+	private static final ThreadLocal<Resource> current = new ThreadLocal<>();
+
+	private Requests() {
+		// empty
+	}
+
+	/**
+	 * Run a task for a given resource. The requests sent with {@link #perform(RestClient, Request)} within this
+	 * task are reported to the listener.
+	 * @param listener	The listener
+	 * @param kind		The resource kind
+	 * @param name		The resource name. Can be null.
+	 * @param task		The task
+	 * @throws Exception if the task fails
+	 */
+	public static void run(BeyonderListener listener, ResourceKind kind, String name, Task task) throws Exception {
+		Resource previous = current.get();
+		run(previous, new Resource(listener, kind, name, previous == null ? -1 : previous.compressionThreshold), task);
+	}
+
+	/**
+	 * Run a task for a given resource using the listener and the compression settings of the options.
+	 * The nested calls to {@link #run(BeyonderListener, ResourceKind, String, Task)} keep the compression settings.
+	 * @param options	The Beyonder options
+	 * @param kind		The resource kind
+	 * @param name		The resource name. Can be null.
+	 * @param task		The task
+	 * @throws Exception if the task fails
+	 */
+	public static void run(BeyonderOptions options, ResourceKind kind, String name, Task task) throws Exception {
+		run(current.get(), new Resource(options.getListener(), kind, name, options.compressionThreshold()), task);
+	}
+
+	private static void run(Resource previous, Resource resource, Task task) throws Exception {
+		current.set(resource);
+		try {
+			task.run();
+		} finally {
+			if (previous == null) {
+				current.remove();
+			} else {
+				current.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Send a request and report it. The request body is compressed if needed.
+	 * @param client	Elasticsearch client
+	 * @param request	The request
+	 * @return the response
+	 * @throws IOException if the request fails
+	 */
+	public static Response perform(RestClient client, Request request) throws IOException {
+		Resource resource = current.get();
+		if (resource == null) {
+			return client.performRequest(request);
+		}
+		if (resource.compressionThreshold >= 0) {
+			request.setEntity(GzipEntity.compress(request.getEntity(), resource.compressionThreshold));
+		}
+
+		long start = System.nanoTime();
+		try {
+			Response response = client.performRequest(request);
+			report(resource.listener, resource.kind, resource.name, request, 0, response.getStatusLine().getStatusCode(),
+					System.nanoTime() - start, null);
+			return response;
+		} catch (ResponseException e) {
+			report(resource.listener, resource.kind, resource.name, request, 0,
+					e.getResponse().getStatusLine().getStatusCode(), System.nanoTime() - start, e);
+			throw e;
+		} catch (IOException | RuntimeException e) {
+			report(resource.listener, resource.kind, resource.name, request, 0, 0, System.nanoTime() - start, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Report a request
+	 * @param listener	The listener
+	 * @param kind		The resource kind
+	 * @param name		The resource name
+	 * @param request	The request
+	 * @param actions	The number of bulk actions, 0 if this is not a bulk request
+	 * @param status	The response status, 0 if none
+	 * @param tookNanos	How long it took
+	 * @param failure	The failure if any
+	 */
+	static void report(BeyonderListener listener, ResourceKind kind, String name, Request request, int actions,
+					   int status, long tookNanos, Exception failure) {
+		HttpEntity entity = request.getEntity();
+		long bytesSent;
+		long uncompressedBytes;
+		if (entity instanceof GzipEntity) {
+			bytesSent = ((GzipEntity) entity).getCompressedLength();
+			uncompressedBytes = ((GzipEntity) entity).getUncompressedLength();
+		} else {
+			bytesSent = entity == null ? 0 : entity.getContentLength();
+			uncompressedBytes = bytesSent;
+		}
+		listener.onRequest(new RequestEvent(kind, name, request.getMethod(), request.getEndpoint(), bytesSent,
+				uncompressedBytes, actions, status, tookNanos, failure));
+	}
+
+	private static class Resource {
+		private final BeyonderListener listener;
+		private final ResourceKind kind;
+		private final String name;
+		private final long compressionThreshold;
+
+		private Resource(BeyonderListener listener, ResourceKind kind, String name, long compressionThreshold) {
+			this.listener = listener;
+			this.kind = kind;
+			this.name = name;
+			this.compressionThreshold = compressionThreshold;
+		}
+	}
+}
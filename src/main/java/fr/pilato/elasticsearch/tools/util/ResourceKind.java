@@ -0,0 +1,51 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+/**
+ * The kinds of resources Beyonder manages
+ */
+public enum ResourceKind {
+	INDEX_LIFECYCLE("index_lifecycle"),
+	COMPONENT_TEMPLATE("component_template"),
+	INDEX_TEMPLATE("index_template"),
+	PIPELINE("pipeline"),
+	INDEX("index"),
+	ALIASES("aliases"),
+	DATA("data");
+
+	private final String name;
+
+	ResourceKind(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name of this kind, like "index_template"
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
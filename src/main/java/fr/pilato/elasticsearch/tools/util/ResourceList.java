@@ -32,6 +32,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.regex.Pattern;
 
 /**
  * list resources available from the classpath @ *
@@ -59,6 +60,15 @@ public class ResourceList {
      */
     public static String[] getResources(final String root) throws URISyntaxException, IOException {
         logger.trace("Reading classpath resources from {}", root);
+        if (FileSystemRoot.isFileSystem(root)) {
+            String[] resources = FileSystemRoot.toPath(root).toFile().list();
+            if (resources == null) {
+                return NO_RESOURCE;
+            }
+            Arrays.sort(resources);
+            return resources;
+        }
+
         URL dirURL = ResourceList.class.getClassLoader().getResource(root);
         if (dirURL != null && dirURL.getProtocol().equals("file")) {
             /* A file path: easy enough */
@@ -173,10 +183,17 @@ public class ResourceList {
         }
 
         logger.debug("Looking for indices in classpath under [{}].", path);
+        return extractIndexNames(ResourceList.getResources(path + "/")); // "es/" or "a/b/c/"
+    }
 
+    /**
+     * Extract the index names from the resources available in the root dir
+     * @param resources available resources in the root dir
+     * @return a list of indices
+     */
+    static List<String> extractIndexNames(String[] resources) {
         final List<String> indexNames = new ArrayList<>();
         final Set<String> keys = new HashSet<>();
-        String[] resources = ResourceList.getResources(path + "/"); // "es/" or "a/b/c/"
         for (String resource : resources) {
             if (!resource.isEmpty()) {
                 logger.trace(" - resource [{}].", resource);
@@ -204,16 +221,18 @@ public class ResourceList {
     }
 
     /**
-     * Find all bulk files (*.ndjson) existing in a given classpath dir for a given index under the _data subdir
+     * Find all bulk files (*.ndjson, *.ndjson.gz and *.ndjson.zst) existing in a given classpath dir for a given index
+     * under the _data subdir
      *
      * @param root  dir within the classpath
      * @param index index name
-     * @return a set of bulk files (*.ndjson)
+     * @return a set of bulk files (*.ndjson, *.ndjson.gz and *.ndjson.zst)
      * @throws IOException        if we can't read the classpath or the filesystem
      * @throws URISyntaxException this should not happen
      */
     public static Collection<String> findBulkFiles(final String root, final String index) throws IOException, URISyntaxException {
-        return findFilesByExtension(root, index, DefaultSettings.NdJsonFileExtension);
+        return findFilesByExtension(root, index, DefaultSettings.NdJsonFileExtension,
+                DefaultSettings.NdJsonGzFileExtension, DefaultSettings.NdJsonZstFileExtension);
     }
 
     /**
@@ -234,12 +253,12 @@ public class ResourceList {
      *
      * @param root  dir within the classpath
      * @param index index name
-     * @param extension the extension to look for like json or ndjson
+     * @param extensions the extensions to look for like json or ndjson
      * @return a set of files
      * @throws IOException        if we can't read the classpath or the filesystem
      * @throws URISyntaxException this should not happen
      */
-    private static Collection<String> findFilesByExtension(final String root, final String index, final String extension) throws IOException, URISyntaxException {
+    private static Collection<String> findFilesByExtension(final String root, final String index, final String... extensions) throws IOException, URISyntaxException {
         String path = root;
         String indexName = index;
         if (path == null) {
@@ -251,10 +270,18 @@ public class ResourceList {
             indexName = indexName + "/" + DefaultSettings.DataDir;
         }
 
-        logger.debug("Looking for [{}] files in classpath under [{}/{}].", extension, path, indexName);
+        logger.debug("Looking for {} files in classpath under [{}/{}].", Arrays.toString(extensions), path, indexName);
+        return extractFilesByExtension(ResourceList.getResources(path + "/" + indexName), extensions);
+    }
 
+    /**
+     * Extract the files matching a given extension from the resources available in a _data dir
+     * @param resources available resources in the _data dir
+     * @param extensions the extensions to look for like json or ndjson
+     * @return a sorted list of files
+     */
+    static List<String> extractFilesByExtension(String[] resources, String... extensions) {
         final Set<String> filenames = new HashSet<>();
-        String[] resources = ResourceList.getResources(path + "/" + indexName); // "es/" or "a/b/c/"
         for (String resource : resources) {
             if (!resource.isEmpty()) {
                 logger.trace(" - resource [{}].", resource);
@@ -264,7 +291,7 @@ public class ResourceList {
                 } else {
                     key = resource;
                 }
-                if (key.endsWith(extension) && !filenames.contains(key)) {
+                if (endsWithAny(key, extensions) && !filenames.contains(key)) {
                     logger.trace(" - found [{}].", key);
                     filenames.add(key);
                 }
@@ -278,6 +305,15 @@ public class ResourceList {
         return sortedFilenames;
     }
 
+    private static boolean endsWithAny(String key, String[] extensions) {
+        for (String extension : extensions) {
+            if (key.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Replace index name from a form of {@code "<my-index-{now/d}-000001>"} or
      * {@code "%3Cmy-index-%7Bnow%2Fd%7D-000001%3E"} to "my-index-*-*".
@@ -298,4 +334,23 @@ public class ResourceList {
         logger.trace("/replaceIndexName({}) = [{}]", indexName, replaced);
         return replaced;
     }
+
+    /**
+     * Build a regular expression from a name which can contain {@code *} wildcards, like the ones
+     * returned by {@link #replaceIndexName(String)}.
+     * @param wildcard the name with wildcards
+     * @return the regular expression
+     */
+    public static Pattern wildcardToRegex(String wildcard) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : wildcard.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            if (!part.isEmpty()) {
+                regex.append(Pattern.quote(part));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
 }
@@ -0,0 +1,200 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A manifest which lists all the resources available under a root dir. It is generated at build time and
+ * stored in the classpath as {@code META-INF/beyonder/<root>/index.json}:
+ * <pre>
+ * {
+ *   "root": "elasticsearch",
+ *   "resources": [
+ *     { "path": "twitter/_settings.json", "kind": "index" },
+ *     { "path": "_pipelines/my_pipeline.json", "kind": "pipeline" },
+ *     { "path": "empty_index/", "kind": "index" }
+ *   ]
+ * }
+ * </pre>
+ * When this manifest exists, {@link ResourceTree#scan(String)} reads it instead of scanning the classpath,
+ * unless the resources are in a directory of the classpath.
+ * <br>
+ * You can generate it with the {@link #main(String[])} method, for example with the exec-maven-plugin
+ * during the {@code process-classes} phase.
+ */
+public class ResourceManifest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResourceManifest.class);
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	/**
+	 * The dir of the manifests within the classpath: "META-INF/beyonder"
+	 */
+	public static final String ManifestDir = "META-INF/beyonder";
+
+	/**
+	 * The manifest file name: "index.json"
+	 */
+	public static final String ManifestFileName = "index.json";
+
+	private ResourceManifest() {
+		// empty
+	}
+
+	/**
+	 * Generate the manifests
+	 * @param args the classes dir (like target/classes) followed by the root dirs to index.
+	 *             If no root dir is given, {@link DefaultSettings#ConfigDir} is used.
+	 * @throws IOException if the files can not be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			throw new IllegalArgumentException("Usage: ResourceManifest <classes dir> [root dir...]");
+		}
+		Path classesDir = Paths.get(args[0]);
+		if (args.length == 1) {
+			generate(classesDir, DefaultSettings.ConfigDir, classesDir);
+		}
+		for (int i = 1; i < args.length; i++) {
+			generate(classesDir, args[i], classesDir);
+		}
+	}
+
+	/**
+	 * Generate the manifest of a root dir
+	 * @param resourcesDir	The dir which contains the root dir, like target/classes
+	 * @param root			The root dir, like "elasticsearch"
+	 * @param outputDir		The dir where the manifest is written, like target/classes
+	 * @return the manifest file
+	 * @throws IOException if the files can not be read or written
+	 */
+	public static Path generate(Path resourcesDir, String root, Path outputDir) throws IOException {
+		Path rootDir = resourcesDir.resolve(root);
+		Path manifest = outputDir.resolve(getPath(root));
+		Files.createDirectories(manifest.getParent());
+
+		// We keep the files and the empty dirs (an empty dir is enough to create an index)
+		List<Path> files = new ArrayList<>();
+		if (Files.isDirectory(rootDir)) {
+			try (Stream<Path> walk = Files.walk(rootDir)) {
+				walk.filter(path -> !path.equals(rootDir) && (Files.isRegularFile(path) || isEmptyDirectory(path)))
+						.sorted()
+						.forEach(files::add);
+			}
+		}
+
+		try (OutputStream os = Files.newOutputStream(manifest);
+			 JsonGenerator generator = jsonFactory.createGenerator(os, JsonEncoding.UTF8)) {
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartObject();
+			generator.writeStringField("root", root);
+			generator.writeArrayFieldStart("resources");
+			for (Path file : files) {
+				String path = rootDir.relativize(file).toString().replace(File.separatorChar, '/');
+				generator.writeStartObject();
+				generator.writeStringField("path", Files.isDirectory(file) ? path + "/" : path);
+				generator.writeStringField("kind", kindOf(path).getName());
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+
+		logger.info("Manifest [{}] generated with [{}] resources", manifest, files.size());
+		return manifest;
+	}
+
+	private static boolean isEmptyDirectory(Path path) {
+		if (!Files.isDirectory(path)) {
+			return false;
+		}
+		try (Stream<Path> content = Files.list(path)) {
+			return content.findAny().isEmpty();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Read the paths of the resources listed in a manifest
+	 * @param stream	The manifest content
+	 * @return the paths of the resources, relative to the root dir
+	 * @throws IOException if the manifest can not be read
+	 */
+	public static List<String> readPaths(InputStream stream) throws IOException {
+		List<String> paths = new ArrayList<>();
+		try (JsonParser parser = jsonFactory.createParser(stream)) {
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token == JsonToken.FIELD_NAME && "path".equals(parser.currentName())) {
+					paths.add(parser.nextTextValue());
+				}
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Get the path of the manifest within the classpath for a given root dir
+	 * @param root	The root dir, like "elasticsearch"
+	 * @return the path like "META-INF/beyonder/elasticsearch/index.json"
+	 */
+	public static String getPath(String root) {
+		return ManifestDir + "/" + root + "/" + ManifestFileName;
+	}
+
+	/**
+	 * Guess the kind of resource from its path
+	 * @param path	The path relative to the root dir
+	 * @return the resource kind
+	 */
+	static ResourceKind kindOf(String path) {
+		String[] parts = path.split("/");
+		switch (parts[0]) {
+			case DefaultSettings.IndexLifecyclesDir: return ResourceKind.INDEX_LIFECYCLE;
+			case DefaultSettings.ComponentTemplatesDir: return ResourceKind.COMPONENT_TEMPLATE;
+			case DefaultSettings.IndexTemplatesDir: return ResourceKind.INDEX_TEMPLATE;
+			case DefaultSettings.PipelinesDir: return ResourceKind.PIPELINE;
+			case DefaultSettings.AliasesFile: return ResourceKind.ALIASES;
+			case DefaultSettings.DataDir: return ResourceKind.DATA;
+			default:
+				return parts.length > 1 && parts[1].equals(DefaultSettings.DataDir) ? ResourceKind.DATA : ResourceKind.INDEX;
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An in-memory tree of all the resources available under a root dir of the classpath.
+ * <br>
+ * The classpath (a directory or a JAR file) is read only once when the tree is built. All the lookups
+ * which are needed when Beyonder starts are then served from memory. This is much faster than
+ * {@link ResourceList} which reads again the whole JAR file for every lookup.
+ * <br>
+ * When a manifest has been generated at build time with {@link ResourceManifest}, the classpath is not read at all,
+ * unless the resources are in a directory which might have changed since the manifest was generated.
+ */
+public class ResourceTree {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResourceTree.class);
+	private static final String[] NO_RESOURCE = {};
+
+	private final Node top = new Node();
+
+	private ResourceTree() {
+		// empty
+	}
+
+	/**
+	 * Scan the classpath and build the tree of the resources. If a manifest has been generated at build time
+	 * by {@link ResourceManifest} and the resources are not in a directory, like within a JAR file, the manifest
+	 * is read instead. If the root is a {@link FileSystemRoot}, the filesystem dir is scanned.
+	 * @param root dir within the classpath. If null, {@link DefaultSettings#ConfigDir} is used.
+	 * @return the tree
+	 * @throws URISyntaxException When a file:// resource can not be converted to URL
+	 * @throws IOException When the resources can not be read
+	 */
+	public static ResourceTree scan(final String root) throws URISyntaxException, IOException {
+		String path = root == null ? DefaultSettings.ConfigDir : root;
+
+		if (FileSystemRoot.isFileSystem(path)) {
+			logger.debug("Indexing filesystem resources under [{}].", path);
+			ResourceTree tree = new ResourceTree();
+			Path dir = FileSystemRoot.toPath(path);
+			if (Files.isDirectory(dir)) {
+				tree.addDirectory(dir);
+			}
+			return tree;
+		}
+
+		URL dirURL = ResourceTree.class.getClassLoader().getResource(path + "/");
+		boolean directory = dirURL != null && dirURL.getProtocol().equals("file");
+		String manifestPath = ResourceManifest.getPath(path);
+
+		// If we have a manifest generated at build time, we don't need to scan the classpath. But a directory is
+		// cheap to scan and its files might have changed since the manifest was generated, like within an IDE.
+		if (directory) {
+			if (ResourceTree.class.getClassLoader().getResource(manifestPath) != null) {
+				logger.debug("Ignoring the manifest [{}] as the resources under [{}] are in a directory.", manifestPath, path);
+			}
+		} else {
+			try (InputStream manifest = ResourceTree.class.getClassLoader().getResourceAsStream(manifestPath)) {
+				if (manifest != null) {
+					logger.debug("Reading resources under [{}] from the manifest [{}].", path, manifestPath);
+					return fromPaths(ResourceManifest.readPaths(manifest));
+				}
+			}
+		}
+
+		logger.debug("Indexing classpath resources under [{}].", path);
+		ResourceTree tree = new ResourceTree();
+
+		if (directory) {
+			logger.trace("found a file resource: {}", dirURL);
+			tree.addDirectory(new File(dirURL.toURI()).toPath());
+			return tree;
+		}
+
+		if (dirURL == null) {
+			// In case of a jar file, we can't actually find a directory. Have to assume the same jar as this class.
+			String me = ResourceTree.class.getName().replace(".", "/") + ".class";
+			dirURL = ResourceTree.class.getClassLoader().getResource(me);
+		}
+
+		if (dirURL != null && dirURL.getProtocol().equals("jar")) {
+			logger.trace("found a jar file resource: {}", dirURL);
+			String jarPath = dirURL.getPath().substring(5, dirURL.getPath().indexOf("!")); //strip out only the JAR file
+			String prefix = dirURL.getPath().substring(5 + jarPath.length())
+					// remove any ! that a class loader (e.g. from spring boot) could have added
+					.replaceAll("!", "")
+					// remove leading slash that is not part of the JarEntry::getName
+					.substring(1);
+			try (JarFile jar = new JarFile(URLDecoder.decode(jarPath, StandardCharsets.UTF_8))) {
+				// We read all the entries only once
+				Enumeration<JarEntry> entries = jar.entries();
+				while (entries.hasMoreElements()) {
+					String name = entries.nextElement().getName();
+					if (name.startsWith(prefix)) {
+						tree.add(name.substring(prefix.length()));
+					}
+				}
+			}
+		}
+
+		return tree;
+	}
+
+	/**
+	 * Build a tree from a list of resources
+	 * @param paths the paths of the resources relative to the root dir, like "twitter/_settings.json"
+	 * @return the tree
+	 */
+	public static ResourceTree fromPaths(Collection<String> paths) {
+		ResourceTree tree = new ResourceTree();
+		for (String path : paths) {
+			tree.add(path);
+		}
+		return tree;
+	}
+
+	private void addDirectory(Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path current, BasicFileAttributes attrs) {
+				add(relativize(dir, current));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				add(relativize(dir, file));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static String relativize(Path dir, Path current) {
+		return dir.relativize(current).toString().replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Add a resource to the tree
+	 * @param relativePath the path of the resource relative to the root dir, like "twitter/_settings.json"
+	 */
+	private void add(String relativePath) {
+		Node node = top;
+		for (String part : relativePath.split("/")) {
+			if (!part.isEmpty()) {
+				node = node.children.computeIfAbsent(part, key -> new Node());
+			}
+		}
+	}
+
+	/**
+	 * List the content of a dir. Not recursive.
+	 * @param relativePath the path of the dir relative to the root dir, like "twitter/_data"
+	 * @return Just the name of each member item, sorted, not the full paths.
+	 */
+	public String[] list(String relativePath) {
+		Node node = top;
+		if (relativePath != null) {
+			for (String part : relativePath.split("/")) {
+				if (!part.isEmpty()) {
+					node = node.children.get(part);
+					if (node == null) {
+						return NO_RESOURCE;
+					}
+				}
+			}
+		}
+		return node.children.keySet().toArray(NO_RESOURCE);
+	}
+
+	/**
+	 * Get the list of resource names (without the .json extension) from a given folder
+	 * @param subdir Subdir name like "_index_templates".
+	 * @return A list of names we found
+	 */
+	public List<String> getResourceNames(final String subdir) {
+		return ResourceList.extractNamesFromJsonResources(list(subdir));
+	}
+
+	/**
+	 * Find all indices existing in the root dir
+	 * @return a list of indices
+	 */
+	public List<String> findIndexNames() {
+		return ResourceList.extractIndexNames(list(null));
+	}
+
+	/**
+	 * Find all bulk files (*.ndjson, *.ndjson.gz and *.ndjson.zst) existing for a given index under the _data subdir
+	 * @param index index name or null for the _data dir of the root dir
+	 * @return a sorted list of bulk files (*.ndjson, *.ndjson.gz and *.ndjson.zst)
+	 */
+	public Collection<String> findBulkFiles(final String index) {
+		return ResourceList.extractFilesByExtension(list(dataDir(index)), DefaultSettings.NdJsonFileExtension,
+				DefaultSettings.NdJsonGzFileExtension, DefaultSettings.NdJsonZstFileExtension);
+	}
+
+	/**
+	 * Find all json files (*.json) existing for a given index under the _data subdir
+	 * @param index index name
+	 * @return a sorted list of json files (*.json)
+	 */
+	public Collection<String> findJsonFiles(final String index) {
+		return ResourceList.extractFilesByExtension(list(dataDir(index)), DefaultSettings.JsonFileExtension);
+	}
+
+	private static String dataDir(String index) {
+		return index == null ? DefaultSettings.DataDir : index + "/" + DefaultSettings.DataDir;
+	}
+
+	private static class Node {
+		// Sorted by name, like ResourceList#getResources
+		private final Map<String, Node> children = new TreeMap<>();
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep track of the data files loaded in each index, so the loading can be resumed where it stopped if the
+ * application is stopped while seeding an index.
+ * <br>
+ * Checkpoints are stored in the state index: one document per index which tells if all its data has been loaded,
+ * and one document per data file with the hash of the file and the position up to which it has been loaded. All of them are read with a single search request when the store is loaded.
+ * <br>
+ * In seeding mode, the index document also keeps the settings the index had before we changed them, so they
+ * can be restored if the loading is resumed after a crash.
+ */
+public class SeedCheckpoints {
+
+	private static final Logger logger = LoggerFactory.getLogger(SeedCheckpoints.class);
+
+	static final String TYPE = "seed";
+
+	/**
+	 * The offset returned by {@link #getOffset(String, String, String)} when a file has been fully loaded
+	 */
+	public static final long DONE = -1;
+
+	// We don't want to send a checkpoint for every bulk request
+	private static final long SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final RestClient client;
+	private final String index;
+	private final Map<String, Checkpoint> checkpoints;
+	private final Map<String, Long> lastSaves = new ConcurrentHashMap<>();
+	private volatile boolean indexCreated;
+
+	private SeedCheckpoints(RestClient client, String index, Map<String, Checkpoint> checkpoints, boolean indexCreated) {
+		this.client = client;
+		this.index = index;
+		this.checkpoints = checkpoints;
+		this.indexCreated = indexCreated;
+	}
+
+	/**
+	 * Read all the checkpoints from the state index
+	 * @param client	Elasticsearch client
+	 * @param index		The state index name
+	 * @return the store
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public static SeedCheckpoints load(RestClient client, String index) throws IOException {
+		logger.trace("load([{}])", index);
+		Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+		Request request = new Request("GET", "/" + index + "/_search");
+		request.addParameter("size", "10000");
+		request.addParameter("q", "type:" + TYPE);
+		request.addParameter("filter_path", "hits.hits._id,hits.hits._source.hash,hits.hits._source.offset," +
+				"hits.hits._source.done,hits.hits._source.settings");
+		boolean indexExists = true;
+		try {
+			Response response = Requests.perform(client, request);
+			try (InputStream stream = response.getEntity().getContent()) {
+				readCheckpoints(stream, checkpoints);
+			}
+		} catch (ResponseException e) {
+			if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+				throw e;
+			}
+			logger.debug("State index [{}] does not exist yet", index);
+			indexExists = false;
+		}
+		logger.debug("[{}] seed checkpoints loaded from [{}]", checkpoints.size(), index);
+		return new SeedCheckpoints(client, index, checkpoints, indexExists);
+	}
+
+	/**
+	 * @param index	The index name
+	 * @return true if we started to load the data of this index but did not finish
+	 */
+	public boolean isIncomplete(String index) {
+		Checkpoint checkpoint = checkpoints.get(id(index, null));
+		return checkpoint != null && !checkpoint.done;
+	}
+
+	/**
+	 * Start to load the data of a new index. The checkpoints of a previous index with the same name are removed.
+	 * @param index	The index name
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public void start(String index) throws IOException {
+		String prefix = id(index, null) + "/";
+		List<String> stale = new ArrayList<>();
+		for (String id : checkpoints.keySet()) {
+			if (id.startsWith(prefix)) {
+				stale.add(id);
+			}
+		}
+		for (String id : stale) {
+			delete(id);
+		}
+		save(id(index, null), null, 0, false, null);
+	}
+
+	/**
+	 * @param index	The index name
+	 * @return the settings saved with {@link #saveSettings(String, Map)} while loading the data of this index,
+	 * or null if there are none
+	 */
+	public Map<String, String> getSettings(String index) {
+		Checkpoint checkpoint = checkpoints.get(id(index, null));
+		return checkpoint == null ? null : checkpoint.settings;
+	}
+
+	/**
+	 * Remember the settings an index had before we changed them to load its data
+	 * @param index		The index name
+	 * @param settings	The settings. Null values mean that the setting was not set.
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public void saveSettings(String index, Map<String, String> settings) throws IOException {
+		save(id(index, null), null, 0, false, settings);
+	}
+
+	/**
+	 * Mark all the data of an index as loaded
+	 * @param index	The index name
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public void done(String index) throws IOException {
+		save(id(index, null), null, 0, true, null);
+	}
+
+	/**
+	 * @param index	The index name
+	 * @param file	The file name
+	 * @return true if we started to load this file, so we must check if it changed since
+	 */
+	public boolean contains(String index, String file) {
+		return checkpoints.containsKey(id(index, file));
+	}
+
+	/**
+	 * Find from where a file must be loaded
+	 * @param index	The index name
+	 * @param file	The file name
+	 * @param hash	The hash of the whole file
+	 * @return the position from where the file must be read, 0 if we don't know this file or if it changed,
+	 * or {@link #DONE} if it has already been loaded
+	 */
+	public long getOffset(String index, String file, String hash) {
+		Checkpoint checkpoint = checkpoints.get(id(index, file));
+		if (checkpoint == null || !hash.equals(checkpoint.hash)) {
+			return 0;
+		}
+		return checkpoint.done ? DONE : checkpoint.offset;
+	}
+
+	/**
+	 * Save the position up to which a file has been loaded. Does nothing if we saved a position for this file
+	 * less than a second ago.
+	 * @param index		The index name
+	 * @param file		The file name
+	 * @param hash		The hash of the file
+	 * @param offset	The position up to which the file has been loaded
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public void progress(String index, String file, String hash, long offset) throws IOException {
+		String id = id(index, file);
+		long now = System.nanoTime();
+		Long lastSave = lastSaves.get(id);
+		if (lastSave != null && now - lastSave < SAVE_INTERVAL_NANOS) {
+			return;
+		}
+		lastSaves.put(id, now);
+		save(id, hash, offset, false, null);
+	}
+
+	/**
+	 * Mark a file as fully loaded
+	 * @param index		The index name
+	 * @param file		The file name
+	 * @param hash		The hash of the file
+	 * @param offset	The size of the file
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public void done(String index, String file, String hash, long offset) throws IOException {
+		save(id(index, file), hash, offset, true, null);
+	}
+
+	private void save(String id, String hash, long offset, boolean done, Map<String, String> settings) throws IOException {
+		if (!indexCreated) {
+			StateIndex.createIfNeeded(client, index);
+			indexCreated = true;
+		}
+		Request request = new Request("PUT", StateIndex.documentEndpoint(index, "_doc", id));
+		request.setJsonEntity("{\"type\":\"" + TYPE + "\"," +
+				"\"name\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(id)) + "\"," +
+				(hash == null ? "" : "\"hash\":\"" + hash + "\",") +
+				"\"offset\":" + offset + ",\"done\":" + done +
+				(settings == null ? "" : ",\"settings\":" + toJson(settings)) + "}");
+		Requests.perform(client, request);
+		checkpoints.put(id, new Checkpoint(hash, offset, done, settings));
+		logger.trace("seed checkpoint [{}] saved for [{}], done [{}]", offset, id, done);
+	}
+
+	private void delete(String id) throws IOException {
+		try {
+			Requests.perform(client, new Request("DELETE", StateIndex.documentEndpoint(index, "_doc", id)));
+		} catch (ResponseException e) {
+			if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+				throw e;
+			}
+		}
+		checkpoints.remove(id);
+		lastSaves.remove(id);
+	}
+
+	private static String toJson(Map<String, String> settings) {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json.append('"').append(JsonStringEncoder.getInstance().quoteAsString(setting.getKey())).append("\":");
+			if (setting.getValue() == null) {
+				json.append("null");
+			} else {
+				json.append('"').append(JsonStringEncoder.getInstance().quoteAsString(setting.getValue())).append('"');
+			}
+		}
+		return json.append('}').toString();
+	}
+
+	private static String id(String index, String file) {
+		return TYPE + ":" + index + (file == null ? "" : "/" + file);
+	}
+
+	/**
+	 * Read a response like
+	 * <code>{"hits":{"hits":[{"_id":"seed:foo/bulk.ndjson","_source":{"hash":"abcd","offset":100,"done":false}}]}}</code>.
+	 * Index documents may also have <code>"settings":{"refresh_interval":"1s","number_of_replicas":null}</code>.
+	 */
+	private static void readCheckpoints(InputStream stream, Map<String, Checkpoint> checkpoints) throws IOException {
+		try (JsonParser parser = JsonResponses.createParser(stream)) {
+			String id = null;
+			String hash = null;
+			long offset = 0;
+			boolean done = false;
+			Map<String, String> settings = null;
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token == JsonToken.FIELD_NAME) {
+					String field = parser.currentName();
+					if ("_id".equals(field)) {
+						id = parser.nextTextValue();
+					} else if ("hash".equals(field)) {
+						hash = parser.nextTextValue();
+					} else if ("offset".equals(field)) {
+						parser.nextToken();
+						offset = parser.getLongValue();
+					} else if ("done".equals(field)) {
+						parser.nextToken();
+						done = parser.getBooleanValue();
+					} else if ("settings".equals(field)) {
+						parser.nextToken();
+						settings = readSettings(parser);
+					}
+				} else if (token == JsonToken.END_OBJECT && id != null && parser.getParsingContext().inArray()) {
+					// We reached the end of a hit
+					checkpoints.put(id, new Checkpoint(hash, offset, done, settings));
+					id = null;
+					hash = null;
+					offset = 0;
+					done = false;
+					settings = null;
+				}
+			}
+		}
+	}
+
+	private static Map<String, String> readSettings(JsonParser parser) throws IOException {
+		Map<String, String> settings = new LinkedHashMap<>();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.currentName();
+			JsonToken value = parser.nextToken();
+			settings.put(name, value == JsonToken.VALUE_NULL ? null : parser.getText());
+		}
+		return settings;
+	}
+
+	private static class Checkpoint {
+		private final String hash;
+		private final long offset;
+		private final boolean done;
+		private final Map<String, String> settings;
+
+		private Checkpoint(String hash, long offset, boolean done, Map<String, String> settings) {
+			this.hash = hash;
+			this.offset = offset;
+			this.done = done;
+			this.settings = settings;
+		}
+	}
+}
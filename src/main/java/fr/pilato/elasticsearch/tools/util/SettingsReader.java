@@ -19,14 +19,16 @@
 
 package fr.pilato.elasticsearch.tools.util;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.text.StringSubstitutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Setting files reader
@@ -35,25 +37,53 @@ public class SettingsReader {
 
 	private static final Logger logger = LoggerFactory.getLogger(SettingsReader.class);
 
+	// Parsed resources by path
+	private static final Map<String, VariableTemplate> templates = new ConcurrentHashMap<>();
+
 	private SettingsReader() {
 		// empty
 	}
 
 	/**
-	 * Read a file content from the classpath
+	 * Read a file content from the classpath, or from the filesystem if the file starts with {@link FileSystemRoot#PREFIX}
 	 * @param file filename
 	 * @return The file content
 	 */
 	public static String readFileFromClasspath(String file) {
+		byte[] bytes = readBytesFromClasspath(file);
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read a file content from the classpath, or from the filesystem if the file starts with {@link FileSystemRoot#PREFIX},
+	 * without decoding it
+	 * @param file filename
+	 * @return The file content or null if the file does not exist
+	 */
+	public static byte[] readBytesFromClasspath(String file) {
 		logger.trace("Reading file [{}]...", file);
-		String content = null;
+		byte[] content = null;
+
+		if (FileSystemRoot.isFileSystem(file)) {
+			Path path = FileSystemRoot.toPath(file);
+			if (!Files.isRegularFile(path)) {
+				logger.trace("Can not find [{}] in the filesystem.", path);
+				return null;
+			}
+			try {
+				content = Files.readAllBytes(path);
+			} catch (IOException e) {
+				logger.warn("Can not read [{}].", path);
+			}
+			return content;
+		}
 
 		try (InputStream asStream = SettingsReader.class.getClassLoader().getResourceAsStream(file)) {
 			if (asStream == null) {
 				logger.trace("Can not find [{}] in class loader.", file);
 				return null;
 			}
-			content = IOUtils.toString(asStream, StandardCharsets.UTF_8);
+			content = asStream.readAllBytes();
 		} catch (IOException e) {
 			logger.warn("Can not read [{}].", file);
 		}
@@ -69,8 +99,57 @@ public class SettingsReader {
 	 * @return The content of the file
 	 */
 	public static String getJsonContent(String root, String subdir, String name) {
-		String content = getFileContent(root, subdir, name);
-		return StringSubstitutor.replace(content, System.getenv());
+		return getJsonContent(root, subdir, name, VariableSource.environment());
+	}
+
+	/**
+	 * This method will read a file from the classpath and replace variables with the given source.
+	 * The file is read and parsed only once, then it is kept in a cache: classpath resources don't change.
+	 * Files of a {@link FileSystemRoot} are not cached as they can be modified.
+	 * @param root		The root directory
+	 * @param subdir	The subdirectory
+	 * @param name		The resource name
+	 * @param variables	Where to read the values of the variables
+	 * @return The content of the file or null if the file does not exist
+	 */
+	public static String getJsonContent(String root, String subdir, String name, VariableSource variables) {
+		return getTemplate(root, subdir, name).resolve(variables);
+	}
+
+	/**
+	 * Same as {@link #getJsonContent(String, String, String, VariableSource)} but the content is kept as UTF-8 bytes,
+	 * so it can be sent to elasticsearch as is. The file is only decoded if it contains variables.
+	 * @param root		The root directory
+	 * @param subdir	The subdirectory
+	 * @param name		The resource name
+	 * @param variables	Where to read the values of the variables
+	 * @return The content of the file or null if the file does not exist. It must not be modified.
+	 */
+	public static byte[] getJsonBytes(String root, String subdir, String name, VariableSource variables) {
+		return getTemplate(root, subdir, name).resolveBytes(variables);
+	}
+
+	private static VariableTemplate getTemplate(String root, String subdir, String name) {
+		String path = getFilePath(root, subdir, name);
+		if (FileSystemRoot.isFileSystem(path)) {
+			logger.debug("Reading file [{}] from the filesystem.", path);
+			return VariableTemplate.compileBytes(readBytesFromClasspath(path));
+		}
+		VariableTemplate template = templates.get(path);
+		if (template == null) {
+			logger.debug("Reading file [{}] from the classpath.", path);
+			template = VariableTemplate.compileBytes(readBytesFromClasspath(path));
+			templates.putIfAbsent(path, template);
+		}
+		return template;
+	}
+
+	/**
+	 * Clear the cache used by {@link #getJsonContent(String, String, String, VariableSource)}.
+	 * Only useful if the classpath resources can change at runtime.
+	 */
+	public static void clearCache() {
+		templates.clear();
 	}
 
 	/**
@@ -81,6 +160,57 @@ public class SettingsReader {
 	 * @return The content of the file
 	 */
 	public static String getFileContent(String root, String subdir, String name) {
+		String path = getFilePath(root, subdir, name);
+		logger.debug("Reading file [{}] from the classpath.", path);
+		return readFileFromClasspath(path);
+	}
+
+	/**
+	 * Read the content of a file from the classpath without decoding it
+	 * @param root		The root directory
+	 * @param subdir	The subdirectory
+	 * @param name		The resource name
+	 * @return The content of the file or null if the file does not exist
+	 */
+	public static byte[] getFileBytes(String root, String subdir, String name) {
+		String path = getFilePath(root, subdir, name);
+		logger.debug("Reading file [{}] from the classpath.", path);
+		return readBytesFromClasspath(path);
+	}
+
+	/**
+	 * Open a file from the classpath as a stream, so it can be read without loading it fully in memory.
+	 * Files of a {@link FileSystemRoot} are read through memory mapped regions.
+	 * @param root		The root directory
+	 * @param subdir	The subdirectory
+	 * @param name		The resource name
+	 * @return The stream to read or null if the file does not exist. It must be closed by the caller.
+	 */
+	public static InputStream openFileStream(String root, String subdir, String name) {
+		String path = getFilePath(root, subdir, name);
+		if (FileSystemRoot.isFileSystem(path)) {
+			Path file = FileSystemRoot.toPath(path);
+			logger.debug("Opening file [{}] from the filesystem.", file);
+			if (!Files.isRegularFile(file)) {
+				logger.trace("Can not find [{}] in the filesystem.", file);
+				return null;
+			}
+			try {
+				return new MappedFileInputStream(file);
+			} catch (IOException e) {
+				logger.warn("Can not read [{}].", file);
+				return null;
+			}
+		}
+		logger.debug("Opening file [{}] from the classpath.", path);
+		InputStream asStream = SettingsReader.class.getClassLoader().getResourceAsStream(path);
+		if (asStream == null) {
+			logger.trace("Can not find [{}] in class loader.", path);
+		}
+		return asStream;
+	}
+
+	private static String getFilePath(String root, String subdir, String name) {
 		String path = root;
 		if (root == null) {
 			path = DefaultSettings.ConfigDir;
@@ -88,8 +218,6 @@ public class SettingsReader {
 		if (subdir != null) {
 			path += "/" + subdir;
 		}
-		path += "/" + name;
-		logger.debug("Reading file [{}] from the classpath.", path);
-		return readFileFromClasspath(path);
+		return path + "/" + name;
 	}
 }
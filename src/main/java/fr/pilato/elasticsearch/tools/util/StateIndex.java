@@ -0,0 +1,82 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A small hidden index where Beyonder stores its own state between two starts.
+ * All documents have a "type" field, so different kinds of state can live in the same index.
+ */
+public class StateIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(StateIndex.class);
+
+	private static final String STATE_INDEX_SETTINGS = "{" +
+			"\"settings\":{\"index.hidden\":true,\"number_of_shards\":1,\"auto_expand_replicas\":\"0-1\"}," +
+			"\"mappings\":{\"dynamic\":false,\"properties\":{\"type\":{\"type\":\"keyword\"}}}" +
+			"}";
+
+	private StateIndex() {
+		// empty
+	}
+
+	/**
+	 * Create the state index if it does not exist yet
+	 * @param client	Elasticsearch client
+	 * @param index		The state index name
+	 * @throws IOException if the elasticsearch API call is failing
+	 */
+	public static void createIfNeeded(RestClient client, String index) throws IOException {
+		logger.trace("createIfNeeded([{}])", index);
+		Request request = new Request("PUT", "/" + index);
+		request.setJsonEntity(STATE_INDEX_SETTINGS);
+		try {
+			Requests.perform(client, request);
+			logger.debug("State index [{}] created", index);
+		} catch (ResponseException e) {
+			// The index might have been created by another instance in the meantime
+			if (e.getResponse().getStatusLine().getStatusCode() != 400 ||
+					!e.getMessage().contains("resource_already_exists_exception")) {
+				throw e;
+			}
+		}
+		logger.trace("/createIfNeeded([{}])", index);
+	}
+
+	/**
+	 * Build the endpoint for a given document of the state index
+	 * @param index	The state index name
+	 * @param api	The document API to use, like "_doc" or "_create"
+	 * @param id	The document id
+	 * @return the endpoint like "/beyonder-state/_doc/pipeline%3Amy_pipeline"
+	 */
+	public static String documentEndpoint(String index, String api, String id) {
+		return "/" + index + "/" + api + "/" + URLEncoder.encode(id, StandardCharsets.UTF_8).replace("+", "%20");
+	}
+}
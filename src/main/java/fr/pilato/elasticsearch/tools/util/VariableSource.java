@@ -0,0 +1,80 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.util.Map;
+
+/**
+ * Where the values of the <code>${VARIABLE}</code> placeholders found in the resources come from.
+ * <pre>
+ * VariableSource variables = VariableSource.firstOf(
+ *     VariableSource.of(Map.of("NUMBER_OF_SHARDS", "1")),
+ *     VariableSource.systemProperties(),
+ *     VariableSource.environment());
+ * </pre>
+ */
+@FunctionalInterface
+public interface VariableSource {
+
+	/**
+	 * Get the value of a variable
+	 * @param name	The variable name
+	 * @return the value or null if the variable is unknown
+	 */
+	String get(String name);
+
+	/**
+	 * @return a source which reads the environment variables
+	 */
+	static VariableSource environment() {
+		return System::getenv;
+	}
+
+	/**
+	 * @return a source which reads the system properties
+	 */
+	static VariableSource systemProperties() {
+		return System::getProperty;
+	}
+
+	/**
+	 * @param variables	The variables
+	 * @return a source which reads a map
+	 */
+	static VariableSource of(Map<String, String> variables) {
+		return variables::get;
+	}
+
+	/**
+	 * @param sources	The sources to read, in order
+	 * @return a source which returns the value of the first source which knows the variable
+	 */
+	static VariableSource firstOf(VariableSource... sources) {
+		return name -> {
+			for (VariableSource source : sources) {
+				String value = source.get(name);
+				if (value != null) {
+					return value;
+				}
+			}
+			return null;
+		};
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A resource content parsed once, so its <code>${VARIABLE}</code> placeholders can be replaced many times
+ * without scanning the content again.
+ * <br>
+ * The syntax is the same as the one of commons-text StringSubstitutor which was used before:
+ * <ul>
+ *     <li><code>${VARIABLE}</code> is replaced by the value of the variable, or kept as is if the variable is unknown</li>
+ *     <li><code>${VARIABLE:-default}</code> is replaced by <code>default</code> if the variable is unknown</li>
+ *     <li><code>$${VARIABLE}</code> is replaced by <code>${VARIABLE}</code></li>
+ * </ul>
+ * Variables found within a value are replaced as well. An {@link IllegalStateException} is thrown if a variable
+ * references itself.
+ * <br>
+ * A content without any <code>${</code> is returned as is. When it has been read as bytes with {@link #compileBytes(byte[])},
+ * it is only decoded to a String if {@link #resolve(VariableSource)} is called.
+ */
+public class VariableTemplate {
+
+	private static final String PREFIX = "${";
+	private static final char SUFFIX = '}';
+	private static final char ESCAPE = '$';
+	private static final String DEFAULT_DELIMITER = ":-";
+
+	// Decoded lazily when the template has been compiled from bytes
+	private volatile String content;
+	// The raw content when the template has been compiled from bytes without any variable
+	private final byte[] bytes;
+	// null when there is nothing to replace
+	private final List<Part> parts;
+	private final int literalLength;
+
+	private VariableTemplate(String content, List<Part> parts, int literalLength) {
+		this(content, null, parts, literalLength);
+	}
+
+	private VariableTemplate(String content, byte[] bytes, List<Part> parts, int literalLength) {
+		this.content = content;
+		this.bytes = bytes;
+		this.parts = parts;
+		this.literalLength = literalLength;
+	}
+
+	/**
+	 * Parse a UTF-8 content. If it has no variable, it is not decoded.
+	 * @param bytes	The content. Can be null.
+	 * @return the template
+	 */
+	public static VariableTemplate compileBytes(byte[] bytes) {
+		if (bytes == null) {
+			return compile((String) null);
+		}
+		if (!containsPrefix(bytes)) {
+			return new VariableTemplate(null, bytes, null, 0);
+		}
+		return compile(new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Look for "${" without decoding the content. This is safe with UTF-8 as the bytes of the ASCII chars
+	 * are never part of a multi-byte char.
+	 */
+	private static boolean containsPrefix(byte[] bytes) {
+		for (int i = 0; i < bytes.length - 1; i++) {
+			if (bytes[i] == '$' && bytes[i + 1] == '{') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parse a content
+	 * @param content	The content. Can be null.
+	 * @return the template
+	 */
+	public static VariableTemplate compile(String content) {
+		if (content == null || !content.contains(PREFIX)) {
+			return new VariableTemplate(content, null, 0);
+		}
+
+		List<Part> parts = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int literalLength = 0;
+		int position = 0;
+		int length = content.length();
+		while (position < length) {
+			int start = content.indexOf(PREFIX, position);
+			if (start == -1) {
+				literal.append(content, position, length);
+				break;
+			}
+			int end = content.indexOf(SUFFIX, start + PREFIX.length());
+			if (start > position && content.charAt(start - 1) == ESCAPE) {
+				// $${VARIABLE} is kept as ${VARIABLE}
+				literal.append(content, position, start - 1).append(PREFIX);
+				position = start + PREFIX.length();
+				continue;
+			}
+			if (end == -1 || end == start + PREFIX.length()) {
+				// Not a variable
+				literal.append(content, position, start + PREFIX.length());
+				position = start + PREFIX.length();
+				continue;
+			}
+			literal.append(content, position, start);
+			if (literal.length() > 0) {
+				parts.add(new Part(literal.toString(), null, null, null));
+				literalLength += literal.length();
+				literal.setLength(0);
+			}
+			String placeholder = content.substring(start, end + 1);
+			String variable = content.substring(start + PREFIX.length(), end);
+			String defaultValue = null;
+			int delimiter = variable.indexOf(DEFAULT_DELIMITER);
+			if (delimiter != -1) {
+				defaultValue = variable.substring(delimiter + DEFAULT_DELIMITER.length());
+				variable = variable.substring(0, delimiter);
+			}
+			parts.add(new Part(null, variable, defaultValue, placeholder));
+			position = end + 1;
+		}
+		if (literal.length() > 0) {
+			parts.add(new Part(literal.toString(), null, null, null));
+			literalLength += literal.length();
+		}
+		return new VariableTemplate(content, parts, literalLength);
+	}
+
+	/**
+	 * @return true if the content contains at least one variable
+	 */
+	public boolean hasVariables() {
+		return parts != null;
+	}
+
+	/**
+	 * Replace the variables
+	 * @param variables	Where to read the variables from
+	 * @return the content with the variables replaced. The original content if it has no variable.
+	 */
+	public String resolve(VariableSource variables) {
+		if (parts == null) {
+			if (content == null && bytes != null) {
+				content = new String(bytes, StandardCharsets.UTF_8);
+			}
+			return content;
+		}
+		return resolve(variables, new HashSet<>());
+	}
+
+	/**
+	 * Replace the variables
+	 * @param variables	Where to read the variables from
+	 * @return the content with the variables replaced, as UTF-8 bytes. The original bytes if it has no variable
+	 * and has been compiled from bytes: they must not be modified.
+	 */
+	public byte[] resolveBytes(VariableSource variables) {
+		if (parts == null && bytes != null) {
+			return bytes;
+		}
+		String resolved = resolve(variables);
+		return resolved == null ? null : resolved.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private String resolve(VariableSource variables, Set<String> resolving) {
+		StringBuilder builder = new StringBuilder(literalLength + 16 * parts.size());
+		for (Part part : parts) {
+			if (part.literal != null) {
+				builder.append(part.literal);
+				continue;
+			}
+			String value = variables.get(part.variable);
+			if (value == null) {
+				value = part.defaultValue;
+			}
+			if (value == null) {
+				// Unknown variable: we keep the placeholder
+				builder.append(part.placeholder);
+				continue;
+			}
+			if (!resolving.add(part.variable)) {
+				throw new IllegalStateException("Infinite loop in property interpolation of " + part.placeholder +
+						": " + String.join("->", resolving) + "->" + part.variable);
+			}
+			VariableTemplate nested = compile(value);
+			builder.append(nested.parts == null ? value : nested.resolve(variables, resolving));
+			resolving.remove(part.variable);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Either a literal or a variable
+	 */
+	private static class Part {
+		private final String literal;
+		private final String variable;
+		private final String defaultValue;
+		private final String placeholder;
+
+		private Part(String literal, String variable, String defaultValue, String placeholder) {
+			this.literal = literal;
+			this.variable = variable;
+			this.defaultValue = defaultValue;
+			this.placeholder = placeholder;
+		}
+	}
+}
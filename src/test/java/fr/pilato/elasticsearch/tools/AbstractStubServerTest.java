@@ -0,0 +1,115 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Run the tests against a local http server which answers like elasticsearch would. Each test class decides
+ * how to answer with {@link #handle(HttpExchange)}. Requests are handled in parallel, so the implementations
+ * which keep a state must synchronize it.
+ */
+public abstract class AbstractStubServerTest {
+
+    protected HttpServer server;
+    protected RestClient client;
+    private ExecutorService executor;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            try {
+                handle(exchange);
+            } catch (Exception e) {
+                reply(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+            }
+        });
+        server.start();
+        client = RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort(), "http")).build();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        client.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Answer a request
+     * @param exchange the request and its response
+     * @throws Exception if something goes wrong. The stub then answers with a 500 status.
+     */
+    protected abstract void handle(HttpExchange exchange) throws Exception;
+
+    protected static String readBody(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the path elements, decoded, like ["index", "_doc", "id"] for "/index/_doc/id"
+     */
+    protected static String[] path(HttpExchange exchange) {
+        String[] path = exchange.getRequestURI().getRawPath().substring(1).split("/");
+        for (int i = 0; i < path.length; i++) {
+            path[i] = URLDecoder.decode(path[i], StandardCharsets.UTF_8);
+        }
+        return path;
+    }
+
+    protected static Map<String, String> params(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        if (exchange.getRequestURI().getRawQuery() != null) {
+            for (String param : exchange.getRequestURI().getRawQuery().split("&")) {
+                String[] keyValue = param.split("=", 2);
+                params.put(URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8),
+                        keyValue.length > 1 ? URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+        return params;
+    }
+
+    protected static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
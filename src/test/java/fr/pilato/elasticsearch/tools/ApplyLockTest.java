@@ -0,0 +1,243 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import fr.pilato.elasticsearch.tools.util.ApplyLock;
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+/**
+ * Test the apply lock against a local http server which behaves like the elasticsearch document APIs
+ */
+public class ApplyLockTest extends AbstractStubServerTest {
+
+    private static final String INDEX = "beyonder-state";
+
+    private final Map<String, Document> documents = new HashMap<>();
+    private long seqNo = 0;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    // How long to wait after another instance took the lock over while we create a pipeline, null to not do it
+    private Duration takeOverWhileApplying;
+
+    private static class Document {
+        private final long seqNo;
+        private final String source;
+
+        private Document(long seqNo, String source) {
+            this.seqNo = seqNo;
+            this.source = source;
+        }
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws Exception {
+        String[] path = path(exchange);
+        if (path[0].equals(INDEX)) {
+            handleState(exchange, path);
+            return;
+        }
+        // The other elasticsearch APIs used when applying the resources
+        readBody(exchange);
+        requests.add(exchange.getRequestMethod() + " /" + String.join("/", path));
+        if (path[0].equals("_resolve")) {
+            reply(exchange, 200, "{\"indices\":[],\"aliases\":[],\"data_streams\":[]}");
+            return;
+        }
+        if (path[0].equals("_ingest") && takeOverWhileApplying != null) {
+            // Another instance takes the lock over while we are creating the pipeline, and we wait for our heartbeat
+            synchronized (this) {
+                for (Map.Entry<String, Document> document : documents.entrySet()) {
+                    if (document.getKey().startsWith("lock:")) {
+                        document.setValue(new Document(++seqNo, document.getValue().source.replace("first", "second")));
+                    }
+                }
+            }
+            Thread.sleep(takeOverWhileApplying.toMillis());
+        }
+        reply(exchange, 200, "{\"acknowledged\":true}");
+    }
+
+    private synchronized void handleState(HttpExchange exchange, String[] path) throws IOException {
+        String method = exchange.getRequestMethod();
+        String body = readBody(exchange);
+        Map<String, String> params = params(exchange);
+
+        if (path.length == 1 && method.equals("PUT")) {
+            reply(exchange, 200, "{\"acknowledged\":true}");
+            return;
+        }
+        String id = path[2];
+        Document document = documents.get(id);
+        if (method.equals("GET")) {
+            if (document == null) {
+                reply(exchange, 404, "{\"found\":false}");
+            } else {
+                reply(exchange, 200, "{\"_id\":\"" + id + "\",\"_seq_no\":" + document.seqNo +
+                        ",\"_primary_term\":1,\"found\":true,\"_source\":" + document.source + "}");
+            }
+        } else if (path[1].equals("_create")) {
+            if (document != null) {
+                reply(exchange, 409, "{\"error\":{\"type\":\"version_conflict_engine_exception\"},\"status\":409}");
+            } else {
+                index(exchange, id, body, 201);
+            }
+        } else if (params.containsKey("if_seq_no") && (document == null ||
+                Long.parseLong(params.get("if_seq_no")) != document.seqNo)) {
+            reply(exchange, 409, "{\"error\":{\"type\":\"version_conflict_engine_exception\"},\"status\":409}");
+        } else {
+            index(exchange, id, body, 200);
+        }
+    }
+
+    private void index(HttpExchange exchange, String id, String body, int status) throws IOException {
+        documents.put(id, new Document(++seqNo, body));
+        reply(exchange, status, "{\"_id\":\"" + id + "\",\"_seq_no\":" + seqNo + ",\"_primary_term\":1}");
+    }
+
+    private ApplyLock acquire(String owner, Duration ttl, Duration wait) throws Exception {
+        return ApplyLock.acquire(client, INDEX, "models", owner, ttl, wait);
+    }
+
+    @Test
+    public void testOnlyOneInstanceGetsTheLock() throws Exception {
+        try (ApplyLock first = acquire("first", Duration.ofSeconds(30), Duration.ZERO);
+             ApplyLock second = acquire("second", Duration.ofSeconds(30), Duration.ZERO)) {
+            assertThat(first.getOutcome(), is(ApplyLock.Outcome.ACQUIRED));
+            assertThat(second.getOutcome(), is(ApplyLock.Outcome.BUSY));
+            assertThat(second.isHeld(), is(false));
+        }
+    }
+
+    @Test
+    public void testWaitForTheOtherInstance() throws Exception {
+        ApplyLock first = acquire("first", Duration.ofSeconds(30), Duration.ZERO);
+        assertThat(first.getOutcome(), is(ApplyLock.Outcome.ACQUIRED));
+        Thread release = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                first.release(true);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        release.start();
+        try (ApplyLock second = acquire("second", Duration.ofSeconds(30), Duration.ofSeconds(10))) {
+            assertThat(second.getOutcome(), is(ApplyLock.Outcome.DONE_BY_OTHER));
+        }
+        release.join();
+
+        // The next start, like the next rollout, gets the lock again
+        try (ApplyLock third = acquire("third", Duration.ofSeconds(30), Duration.ZERO)) {
+            assertThat(third.getOutcome(), is(ApplyLock.Outcome.ACQUIRED));
+        }
+    }
+
+    @Test
+    public void testFailedLockIsTakenOver() throws Exception {
+        ApplyLock first = acquire("first", Duration.ofSeconds(30), Duration.ZERO);
+        first.release(false);
+        try (ApplyLock second = acquire("second", Duration.ofSeconds(30), Duration.ofSeconds(10))) {
+            assertThat(second.getOutcome(), is(ApplyLock.Outcome.ACQUIRED));
+        }
+    }
+
+    @Test
+    public void testExpiredLockIsTakenOver() throws Exception {
+        ApplyLock first = acquire("first", Duration.ofMillis(200), Duration.ZERO);
+        assertThat(first.getOutcome(), is(ApplyLock.Outcome.ACQUIRED));
+        // Simulate a crash: no more heartbeat
+        first.close();
+        Thread.sleep(400);
+
+        try (ApplyLock second = acquire("second", Duration.ofSeconds(30), Duration.ZERO)) {
+            assertThat(second.getOutcome(), is(ApplyLock.Outcome.ACQUIRED));
+            // The first instance can not release a lock it does not hold anymore
+            try {
+                first.release(true);
+                fail("We should have caught an exception");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), containsString("taken over by another instance"));
+            }
+            assertThat(first.isHeld(), is(false));
+            assertThat(second.isHeld(), is(true));
+        }
+    }
+
+    @Test
+    public void testHeartbeatExtendsTheLock() throws Exception {
+        try (ApplyLock first = acquire("first", Duration.ofMillis(300), Duration.ZERO)) {
+            Thread.sleep(1000);
+            try (ApplyLock second = acquire("second", Duration.ofSeconds(30), Duration.ZERO)) {
+                assertThat(second.getOutcome(), is(ApplyLock.Outcome.BUSY));
+            }
+            assertThat(first.isHeld(), is(true));
+        }
+    }
+
+    @Test
+    public void testLostLockIsNotified() throws Exception {
+        try (ApplyLock first = acquire("first", Duration.ofMillis(300), Duration.ZERO)) {
+            CountDownLatch lost = new CountDownLatch(1);
+            first.onLost(lost::countDown);
+            // Another instance takes the lock over: our next heartbeat gets a conflict
+            synchronized (this) {
+                documents.put("lock:models", new Document(++seqNo, "{\"owner\":\"second\",\"state\":\"running\"}"));
+            }
+            assertThat(lost.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(first.isHeld(), is(false));
+            // Releasing a lost lock as failed does not throw, so it does not hide why we failed
+            first.release(false);
+        }
+    }
+
+    @Test
+    public void testLostLockAbortsTheStart() throws Exception {
+        takeOverWhileApplying = Duration.ofSeconds(1);
+        try {
+            ElasticsearchBeyonder.start(client, "models/pipeline-and-index", new BeyonderOptions()
+                    .setApplyLock(true)
+                    .setLockOwner("first")
+                    .setLockTtl(Duration.ofMillis(300)));
+            fail("We should have caught an exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("taken over by another instance"));
+        }
+        // The pipelines are created before the indices: we stopped before creating the index
+        assertThat(requests, hasItem("PUT /_ingest/pipeline/my_pipeline"));
+        assertThat(requests, not(hasItem("PUT /twitter")));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import fr.pilato.elasticsearch.tools.util.BeyonderPlan;
+import fr.pilato.elasticsearch.tools.util.ClusterSnapshot;
+import fr.pilato.elasticsearch.tools.util.PlannedChange;
+import fr.pilato.elasticsearch.tools.util.ResourceKind;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class BeyonderPlanTest {
+
+    private static final String PIPELINE = "{\"twitter_pipeline\":{\"description\":\"Twitter pipeline\"," +
+            "\"processors\":[{\"set\":{\"field\":\"foo\",\"value\":\"%s\"}}]}}";
+    private static final String INDEX = "{\"twitter\":{\"settings\":{\"index\":{\"number_of_shards\":\"1\"," +
+            "\"number_of_replicas\":\"%s\"}},\"mappings\":{}}}";
+
+    @Test
+    public void testCreate() throws Exception {
+        ClusterSnapshot snapshot = ClusterSnapshot.fromResponses(null, null, null, null, null);
+        BeyonderPlan plan = ElasticsearchBeyonder.plan(snapshot, "models/templatev2", new BeyonderOptions());
+        assertThat(plan.hasChanges(), is(true));
+        assertThat(plan.getChanges(PlannedChange.Action.CREATE), hasSize(plan.getChanges().size()));
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        BeyonderPlan plan = ElasticsearchBeyonder.plan(ClusterSnapshot.fromResponses(null, null, null,
+                String.format(PIPELINE, "bar"), null), "models/pipelines", new BeyonderOptions());
+        assertThat(plan.hasChanges(), is(false));
+
+        plan = ElasticsearchBeyonder.plan(ClusterSnapshot.fromResponses(null, null, null,
+                String.format(PIPELINE, "baz"), null), "models/pipelines", new BeyonderOptions());
+        List<PlannedChange> updates = plan.getChanges(PlannedChange.Action.UPDATE);
+        assertThat(updates, hasSize(1));
+        assertThat(updates.get(0).getKind(), is(ResourceKind.PIPELINE));
+        assertThat(updates.get(0).getName(), is("twitter_pipeline"));
+        assertThat(updates.get(0).getDifferences(), contains("processors[0].set.value: [baz] -> [bar]"));
+    }
+
+    @Test
+    public void testIndexSettings() throws Exception {
+        BeyonderPlan plan = ElasticsearchBeyonder.plan(ClusterSnapshot.fromResponses(null, null, null, null,
+                String.format(INDEX, "1")), "models/update-settings/step2", new BeyonderOptions());
+        assertThat(plan.getChanges(), hasSize(1));
+        assertThat(plan.getChanges().get(0).getAction(), is(PlannedChange.Action.NOOP));
+        assertThat(plan.getChanges().get(0).getDifferences(), empty());
+
+        plan = ElasticsearchBeyonder.plan(ClusterSnapshot.fromResponses(null, null, null, null,
+                String.format(INDEX, "0")), "models/update-settings/step2", new BeyonderOptions());
+        assertThat(plan.getChanges().get(0).getAction(), is(PlannedChange.Action.UPDATE));
+        assertThat(plan.getChanges().get(0).getDifferences(),
+                contains("[twitter] settings.number_of_replicas: [0] -> [1]"));
+    }
+}
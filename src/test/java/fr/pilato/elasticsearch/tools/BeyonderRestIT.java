@@ -19,6 +19,9 @@
 
 package fr.pilato.elasticsearch.tools;
 
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.JsonResponses;
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
@@ -35,13 +38,12 @@ import org.junit.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.ConnectException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -113,9 +115,8 @@ public class BeyonderRestIT extends AbstractBeyonderTest {
     private static ConnectException testClusterRunning() throws IOException {
         try {
             Response response = client.performRequest(new Request("GET", "/"));
-            @SuppressWarnings("unchecked")
-            Map<String, Object> asMap = (Map<String, Object>) JsonUtil.asMap(response).get("version");
-            logger.info("Starting integration tests against an external cluster running elasticsearch [{}]", asMap.get("number"));
+            logger.info("Starting integration tests against an external cluster running elasticsearch [{}]",
+                    JsonResponses.readVersion(response));
             return null;
         } catch (ConnectException e) {
             return e;
@@ -181,6 +182,9 @@ public class BeyonderRestIT extends AbstractBeyonderTest {
 
         // DELETE /_ilm/policy/index_lifecycle
         launchAndIgnoreFailure(() -> client.performRequest(new Request("DELETE", "/_ilm/policy/index_lifecycle")));
+
+        // DELETE /beyonder-state
+        launchAndIgnoreFailure(() -> client.performRequest(new Request("DELETE", "/" + DefaultSettings.StateIndex)));
     }
 
     @BeforeClass
@@ -303,6 +307,19 @@ public class BeyonderRestIT extends AbstractBeyonderTest {
         testBeyonder("models/pipelines", null, null, null, singletonList("twitter_pipeline"), null);
 	}
 
+    @Test
+    public void testSkipUnchanged() throws Exception {
+        BeyonderOptions options = new BeyonderOptions().setSkipUnchanged(true);
+        ElasticsearchBeyonder.start(client, "models/pipelines", options);
+        assertThat(isPipelineExist(client, "twitter_pipeline"), is(true));
+        client.performRequest(new Request("POST", "/" + DefaultSettings.StateIndex + "/_refresh"));
+
+        // We remove the pipeline behind Beyonder's back. Even if the file did not change, it must be created again.
+        client.performRequest(new Request("DELETE", "/_ingest/pipeline/twitter_pipeline"));
+        ElasticsearchBeyonder.start(client, "models/pipelines", options);
+        assertThat(isPipelineExist(client, "twitter_pipeline"), is(true));
+    }
+
     @Test
     public void testUpdateSettings() throws Exception {
         // 1 _settings
@@ -507,6 +524,153 @@ public class BeyonderRestIT extends AbstractBeyonderTest {
         assertThat(numberOfHits, equalTo("10"));
     }
 
+    @Test
+    public void testDataCompressed() throws Exception {
+        // 1 index with 5 documents in a gzip file and 5 documents in a plain file
+        testBeyonder("models/data-compressed",
+                singletonList("twitter"),
+                null, null, null, null);
+
+        // Refresh the indices
+        client.performRequest(new Request("POST", "/_refresh"));
+
+        // Check that we have 10 documents in twitter index
+        Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/twitter/_search")));
+        String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+        assertThat(numberOfHits, equalTo("10"));
+    }
+
+    @Test
+    public void testCompressRequests() throws Exception {
+        // All the request bodies are compressed
+        ElasticsearchBeyonder.start(client, "models/data-one-index", new BeyonderOptions()
+                .setCompressRequests(true)
+                .setCompressionThreshold(0));
+
+        // Refresh the indices
+        client.performRequest(new Request("POST", "/_refresh"));
+
+        // Check that we have 10 documents in twitter index
+        Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/twitter/_search")));
+        String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+        assertThat(numberOfHits, equalTo("10"));
+    }
+
+    @Test
+    public void testFileSystemRoot() throws Exception {
+        Path root = Path.of(BeyonderRestIT.class.getResource("/models/data-compressed").toURI());
+        ElasticsearchBeyonder.start(client, root);
+
+        // Refresh the indices
+        client.performRequest(new Request("POST", "/_refresh"));
+
+        // Check that we have 10 documents in twitter index
+        Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/twitter/_search")));
+        String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+        assertThat(numberOfHits, equalTo("10"));
+    }
+
+    @Test
+    public void testWaitForStatus() throws Exception {
+        // The twitter index has a replica which can not be allocated on a single node
+        ElasticsearchBeyonder.start(client, "models/data-one-index", new BeyonderOptions()
+                .setWaitForActiveShards("1")
+                .setWaitForStatus("yellow")
+                .setWaitForStatusTimeout(Duration.ofSeconds(10)));
+
+        Map<String, Object> health = asMap(client.performRequest(new Request("GET", "/_cluster/health/twitter")));
+        assertThat(health.get("status"), is(not("red")));
+
+        // Refresh the indices
+        client.performRequest(new Request("POST", "/_refresh"));
+
+        // Check that we have 10 documents in twitter index
+        Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/twitter/_search")));
+        String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+        assertThat(numberOfHits, equalTo("10"));
+    }
+
+    @Test
+    public void testCheckpointSeeding() throws Exception {
+        BeyonderOptions options = new BeyonderOptions().setCheckpointSeeding(true);
+        ElasticsearchBeyonder.start(client, "models/data-more-indices", options);
+
+        // We simulate a stop while loading the second file of test_1
+        Request deleteDocs = new Request("POST", "/test_1/_delete_by_query");
+        deleteDocs.addParameter("refresh", "true");
+        deleteDocs.setJsonEntity("{\"query\":{\"match_all\":{}}}");
+        client.performRequest(deleteDocs);
+        client.performRequest(new Request("DELETE", "/" + DefaultSettings.StateIndex + "/_doc/seed%3Atest_1%2Fbulk-002.ndjson"));
+        Request incomplete = new Request("PUT", "/" + DefaultSettings.StateIndex + "/_doc/seed%3Atest_1");
+        incomplete.addParameter("refresh", "true");
+        incomplete.setJsonEntity("{\"type\":\"seed\",\"name\":\"seed:test_1\",\"offset\":0,\"done\":false}");
+        client.performRequest(incomplete);
+
+        // Only the second file is loaded again
+        ElasticsearchBeyonder.start(client, "models/data-more-indices", options);
+        client.performRequest(new Request("POST", "/_refresh"));
+        {
+            Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/test_1/_search")));
+            String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+            assertThat(numberOfHits, equalTo("5"));
+        }
+
+        // test_2 has been fully loaded, so nothing happens
+        {
+            Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/test_2/_search")));
+            String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+            assertThat(numberOfHits, equalTo("10"));
+        }
+    }
+
+    @Test
+    public void testCheckpointSeedingRestoresSettings() throws Exception {
+        BeyonderOptions options = new BeyonderOptions().setCheckpointSeeding(true).setSeedingMode(true);
+        ElasticsearchBeyonder.start(client, "models/data-one-index", options);
+
+        // We simulate a crash while loading twitter in seeding mode: the settings are not restored yet
+        Request seedingSettings = new Request("PUT", "/twitter/_settings");
+        seedingSettings.setJsonEntity("{\"index\":{\"refresh_interval\":\"-1\",\"number_of_replicas\":\"0\"}}");
+        client.performRequest(seedingSettings);
+        Request incomplete = new Request("PUT", "/" + DefaultSettings.StateIndex + "/_doc/seed%3Atwitter");
+        incomplete.addParameter("refresh", "true");
+        incomplete.setJsonEntity("{\"type\":\"seed\",\"name\":\"seed:twitter\",\"offset\":0,\"done\":false," +
+                "\"settings\":{\"refresh_interval\":null,\"number_of_replicas\":\"1\"}}");
+        client.performRequest(incomplete);
+
+        // The loading is resumed and the settings the index had before the crash are restored
+        ElasticsearchBeyonder.start(client, "models/data-one-index", options);
+        Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/twitter/_settings")));
+        assertThat(BeanUtils.getProperty(response, "twitter.settings.index.refresh_interval"), nullValue());
+        assertThat(BeanUtils.getProperty(response, "twitter.settings.index.number_of_replicas"), equalTo("1"));
+    }
+
+    @Test
+    public void testSharedSeed() throws Exception {
+        // test_2 has its own directory, so it is reindexed. test_3 is cloned.
+        ElasticsearchBeyonder.start(client, "models/data-more-indices", new BeyonderOptions()
+                .addSharedSeed("test_1", "test_2", "test_3"));
+
+        // Refresh the indices
+        client.performRequest(new Request("POST", "/_refresh"));
+
+        {
+            Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/test_2/_search")));
+            String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+            assertThat(numberOfHits, equalTo("20"));
+        }
+        {
+            Map<String, Object> response = asMap(client.performRequest(new Request("GET", "/test_3/_search")));
+            String numberOfHits = BeanUtils.getProperty(response, "hits.total.value");
+            assertThat(numberOfHits, equalTo("10"));
+        }
+
+        // test_1 is now read-only, but not its clone
+        Map<String, Object> settings = asMap(client.performRequest(new Request("GET", "/test_1,test_3/_settings")));
+        assertThat(BeanUtils.getProperty(settings, "test_1.settings.index.blocks.write"), equalTo("true"));
+        assertThat(BeanUtils.getProperty(settings, "test_3.settings.index.blocks.write"), equalTo("false"));
+    }
+
     @Test
     public void testDataShouldNotBeLoadedTwice() throws Exception {
         // 2 indices with 10 documents each
@@ -737,11 +901,7 @@ public class BeyonderRestIT extends AbstractBeyonderTest {
                 null, null, null, null);
 
         // We should not have the timeseries-*-000001 index
-        String responseBody = new BufferedReader(new InputStreamReader(
-                client.performRequest(new Request("GET", "/timeseries-*-000001")).getEntity().getContent()))
-                .lines()
-                .reduce("", (accumulator, actual) -> accumulator + actual);
-        assertThat(responseBody, is("{}"));
+        assertThat(JsonResponses.isEmptyObject(client.performRequest(new Request("GET", "/timeseries-*-000001"))), is(true));
 
         // Check that we still have only 1 document in timeseries index
         {
@@ -0,0 +1,350 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import fr.pilato.elasticsearch.tools.updaters.ElasticsearchDataUpdater;
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import fr.pilato.elasticsearch.tools.util.BulkChunk;
+import fr.pilato.elasticsearch.tools.util.BulkIngester;
+import fr.pilato.elasticsearch.tools.util.NdJsonBulkReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+/**
+ * Test the bulk ingester against a local http server. Each test decides how the bulk requests are answered.
+ */
+public class BulkIngesterTest extends AbstractStubServerTest {
+
+    private static final String ENDPOINT = "/twitter/_bulk";
+    private static final String OK = "{\"errors\":false,\"items\":[]}";
+
+    @FunctionalInterface
+    private interface Responder {
+        /**
+         * @param request the number of the request, starting at 1
+         * @param body the bulk request
+         * @return the status and the response, like "200 {...}"
+         */
+        String respond(int request, String body) throws Exception;
+    }
+
+    private final List<String> bodies = new ArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Responder responder = (request, body) -> "200 " + OK;
+
+    @Override
+    protected void handle(HttpExchange exchange) throws Exception {
+        String body = readBody(exchange);
+        synchronized (bodies) {
+            bodies.add(body);
+        }
+        String response = responder.respond(requests.incrementAndGet(), body);
+        int space = response.indexOf(' ');
+        reply(exchange, Integer.parseInt(response.substring(0, space)), response.substring(space + 1));
+    }
+
+    /**
+     * @return chunks of one action each, which contain "doc1", "doc2"...
+     */
+    static List<BulkChunk> chunks(int count) throws IOException {
+        return chunks(count, 1);
+    }
+
+    /**
+     * @return chunks of a given number of actions, which contain "doc1", "doc2"...
+     */
+    static List<BulkChunk> chunks(int count, int actionsPerChunk) throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            ndjson.append("{\"index\":{}}\n{\"message\":\"doc").append(i).append("\"}\n");
+        }
+        List<BulkChunk> chunks = new ArrayList<>();
+        try (NdJsonBulkReader reader = new NdJsonBulkReader(
+                new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)), actionsPerChunk, 1024 * 1024)) {
+            BulkChunk chunk;
+            while ((chunk = reader.next()) != null) {
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testInFlightLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        responder = (request, body) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            release.await(10, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return "200 " + OK;
+        };
+
+        BulkIngester ingester = new BulkIngester(client, 2);
+        AtomicInteger added = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            try {
+                for (BulkChunk chunk : chunks(5)) {
+                    ingester.add(ENDPOINT, "bulk.ndjson", chunk);
+                    added.incrementAndGet();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+
+        // The third chunk waits for one of the first two requests
+        Thread.sleep(500);
+        assertThat(added.get(), is(2));
+        assertThat(requests.get(), is(2));
+
+        release.countDown();
+        producer.join(10000);
+        ingester.awaitCompletion();
+        assertThat(added.get(), is(5));
+        assertThat(requests.get(), is(5));
+        assertThat(maxRunning.get(), is(2));
+        assertThat(ingester.getStats().getIndexed(), is(5L));
+    }
+
+    @Test
+    public void testPositionsAreCompletedInOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch othersDone = new CountDownLatch(2);
+        responder = (request, body) -> {
+            if (body.contains("doc1")) {
+                release.await(10, TimeUnit.SECONDS);
+            } else {
+                othersDone.countDown();
+            }
+            return "200 " + OK;
+        };
+
+        BulkIngester ingester = new BulkIngester(client, 3);
+        List<BulkChunk> chunks = chunks(3);
+        for (int i = 0; i < chunks.size(); i++) {
+            ingester.add(ENDPOINT, "bulk.ndjson", chunks.get(i), (i + 1) * 100);
+        }
+
+        // The second and the third requests are done, but not the first one
+        assertThat(othersDone.await(10, TimeUnit.SECONDS), is(true));
+        Thread.sleep(100);
+        assertThat(ingester.getCompletedPosition("bulk.ndjson"), is(-1L));
+
+        release.countDown();
+        ingester.awaitCompletion();
+        assertThat(ingester.getCompletedPosition("bulk.ndjson"), is(300L));
+        assertThat(ingester.getCompletedPosition("other.ndjson"), is(-1L));
+    }
+
+    @Test
+    public void testCallbackDoesNotWaitForOtherFiles() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        responder = (request, body) -> {
+            if (body.contains("doc2")) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return "200 " + OK;
+        };
+
+        BulkIngester ingester = new BulkIngester(client, 3);
+        List<BulkChunk> chunks = chunks(3);
+        List<String> done = new ArrayList<>();
+        ingester.add(ENDPOINT, "bulk-001.ndjson", chunks.get(0), 100);
+        ingester.onCompleted("bulk-001.ndjson", 100, () -> done.add("bulk-001.ndjson"));
+        ingester.add(ENDPOINT, "bulk-002.ndjson", chunks.get(1), 100);
+        ingester.onCompleted("bulk-002.ndjson", 100, () -> done.add("bulk-002.ndjson"));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (ingester.getCompletedPosition("bulk-001.ndjson") < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // The second file is still running, but we can send the third one
+        ingester.add(ENDPOINT, "bulk-003.ndjson", chunks.get(2), 100);
+        assertThat(done, is(List.of("bulk-001.ndjson")));
+
+        release.countDown();
+        ingester.awaitCompletion();
+        assertThat(done, is(List.of("bulk-001.ndjson", "bulk-002.ndjson")));
+    }
+
+    @Test
+    public void testFailureStopsTheIngester() throws Exception {
+        responder = (request, body) -> "200 {\"errors\":true,\"items\":[{\"index\":{\"status\":400," +
+                "\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}}]}";
+
+        BulkIngester ingester = new BulkIngester(client, 1);
+        List<BulkChunk> chunks = chunks(3);
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks.get(0), 100);
+        try {
+            // We wait for the first request to be done, which failed
+            ingester.add(ENDPOINT, "bulk.ndjson", chunks.get(1), 200);
+            fail("We should have caught an exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage(), containsString("Could not load bulk data from file [bulk.ndjson]"));
+            assertThat(e.getMessage(), containsString("failed to parse"));
+        }
+        try {
+            ingester.awaitCompletion();
+            fail("We should have caught an exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage(), containsString("Could not load bulk data from file [bulk.ndjson]"));
+        }
+        assertThat(requests.get(), is(1));
+        assertThat(ingester.getStats().getFailed(), is(1L));
+        assertThat(ingester.getCompletedPosition("bulk.ndjson"), is(-1L));
+    }
+
+    @Test
+    public void testAwaitCompletionCanBeCalledTwice() throws Exception {
+        BulkIngester ingester = new BulkIngester(client, 2);
+        List<BulkChunk> chunks = chunks(4);
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks.get(0));
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks.get(1));
+        ingester.awaitCompletion();
+        assertThat(ingester.getStats().getIndexed(), is(2L));
+
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks.get(2));
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks.get(3));
+        ingester.awaitCompletion();
+        assertThat(ingester.getStats().getIndexed(), is(4L));
+        assertThat(requests.get(), is(4));
+    }
+
+    @Test
+    public void testReadFailureIsNotHidden() throws Exception {
+        responder = (request, body) -> "500 {\"error\":\"boom\"}";
+
+        try {
+            // The first action is sent and fails, but the third one has no source
+            ElasticsearchDataUpdater.loadBulkData(client, "models/data-missing-source", "twitter", List.of("bulk.ndjson"),
+                    new BeyonderOptions().setBulkMaxActions(1));
+            fail("We should have caught an exception");
+        } catch (Exception e) {
+            assertThat(e, instanceOf(IOException.class));
+            assertThat(e.getMessage(), containsString("Missing source"));
+            assertThat(e.getSuppressed().length, is(1));
+        }
+    }
+
+    /**
+     * Build a bulk response with one item per status
+     */
+    private static String bulkResponse(int... statuses) {
+        StringBuilder items = new StringBuilder();
+        for (int status : statuses) {
+            if (items.length() > 0) {
+                items.append(",");
+            }
+            items.append("{\"index\":{\"status\":").append(status);
+            if (status == 429) {
+                items.append(",\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"}");
+            }
+            items.append("}}");
+        }
+        return "200 {\"errors\":true,\"items\":[" + items + "]}";
+    }
+
+    @Test
+    public void testRejectedActionsAreRetried() throws Exception {
+        responder = (request, body) -> request == 1 ? bulkResponse(201, 429, 201) : "200 " + OK;
+
+        BulkIngester ingester = new BulkIngester(client, 1, 3, Duration.ofMillis(10));
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks(3, 3).get(0));
+        ingester.awaitCompletion();
+
+        // Only the rejected action is sent again
+        assertThat(requests.get(), is(2));
+        assertThat(bodies.get(1), containsString("doc2"));
+        assertThat(bodies.get(1), not(containsString("doc1")));
+        assertThat(bodies.get(1), not(containsString("doc3")));
+        assertThat(ingester.getStats().getIndexed(), is(3L));
+        assertThat(ingester.getStats().getRetried(), is(1L));
+        assertThat(ingester.getStats().getFailed(), is(0L));
+    }
+
+    @Test
+    public void testRejectedRequestIsRetried() throws Exception {
+        responder = (request, body) -> request == 1 ?
+                "429 {\"error\":{\"type\":\"es_rejected_execution_exception\"},\"status\":429}" : "200 " + OK;
+
+        BulkIngester ingester = new BulkIngester(client, 1, 3, Duration.ofMillis(10));
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks(3, 3).get(0));
+        ingester.awaitCompletion();
+
+        assertThat(requests.get(), is(2));
+        assertThat(bodies.get(1), is(bodies.get(0)));
+        assertThat(ingester.getStats().getIndexed(), is(3L));
+        assertThat(ingester.getStats().getRetried(), is(3L));
+        assertThat(ingester.getStats().getFailed(), is(0L));
+    }
+
+    @Test
+    public void testNoMoreRetries() throws Exception {
+        // The second action is always rejected
+        responder = (request, body) -> request == 1 ? bulkResponse(201, 429, 201) : bulkResponse(429);
+
+        BulkIngester ingester = new BulkIngester(client, 1, 2, Duration.ofMillis(10));
+        ingester.add(ENDPOINT, "bulk.ndjson", chunks(3, 3).get(0));
+        try {
+            ingester.awaitCompletion();
+            fail("We should have caught an exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage(), containsString("Could not load bulk data from file [bulk.ndjson]"));
+            assertThat(e.getMessage(), containsString("rejected"));
+        }
+
+        assertThat(requests.get(), is(3));
+        assertThat(ingester.getStats().getIndexed(), is(2L));
+        assertThat(ingester.getStats().getRetried(), is(2L));
+        assertThat(ingester.getStats().getFailed(), is(1L));
+    }
+
+    @Test
+    public void testRetryDelay() {
+        assertThat(BulkIngester.retryDelay(100, 0), is(100L));
+        assertThat(BulkIngester.retryDelay(100, 3), is(800L));
+        // The delay is capped
+        assertThat(BulkIngester.retryDelay(100, 20), is(30000L));
+        assertThat(BulkIngester.retryDelay(100, 100), is(30000L));
+        assertThat(BulkIngester.retryDelay(100, Integer.MAX_VALUE), is(30000L));
+        assertThat(BulkIngester.retryDelay(60000, 5), is(60000L));
+        assertThat(BulkIngester.retryDelay(0, 100), is(0L));
+    }
+}
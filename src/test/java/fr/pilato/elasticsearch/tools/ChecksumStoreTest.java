@@ -0,0 +1,153 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import fr.pilato.elasticsearch.tools.util.ChecksumStore;
+import fr.pilato.elasticsearch.tools.util.ResourceKind;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Test the checksum store against a local http server which stores the documents of the state index and
+ * knows some pipelines and component templates
+ */
+public class ChecksumStoreTest extends AbstractStubServerTest {
+
+    private static final String INDEX = "beyonder-state";
+
+    private final Map<String, String> documents = new TreeMap<>();
+    private final Set<String> pipelines = new HashSet<>();
+    private final Set<String> componentTemplates = new HashSet<>();
+    private final List<String> requests = new ArrayList<>();
+    private String stateIndexSettings;
+
+    @Override
+    protected synchronized void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = path(exchange);
+        String body = readBody(exchange);
+        requests.add(method + " /" + String.join("/", path));
+
+        if (path[0].equals("_ingest")) {
+            if (pipelines.isEmpty()) {
+                reply(exchange, 404, "{}");
+            } else {
+                StringBuilder names = new StringBuilder();
+                for (String pipeline : pipelines) {
+                    names.append(names.length() == 0 ? "" : ",").append("\"").append(pipeline).append("\":{}");
+                }
+                reply(exchange, 200, "{" + names + "}");
+            }
+        } else if (path[0].equals("_component_template")) {
+            StringBuilder names = new StringBuilder();
+            for (String template : componentTemplates) {
+                names.append(names.length() == 0 ? "" : ",").append("{\"name\":\"").append(template).append("\"}");
+            }
+            reply(exchange, 200, "{\"component_templates\":[" + names + "]}");
+        } else if (path.length == 1) {
+            stateIndexSettings = body;
+            reply(exchange, 200, "{\"acknowledged\":true}");
+        } else if (path[1].equals("_search")) {
+            if (stateIndexSettings == null) {
+                reply(exchange, 404, "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}");
+                return;
+            }
+            StringBuilder hits = new StringBuilder();
+            for (Map.Entry<String, String> document : documents.entrySet()) {
+                if (hits.length() > 0) {
+                    hits.append(",");
+                }
+                hits.append("{\"_id\":\"").append(document.getKey()).append("\",\"_source\":").append(document.getValue()).append("}");
+            }
+            reply(exchange, 200, "{\"hits\":{\"hits\":[" + hits + "]}}");
+        } else {
+            documents.put(path[2], body);
+            reply(exchange, 200, "{\"result\":\"updated\"}");
+        }
+    }
+
+    @Test
+    public void testSave() throws Exception {
+        ChecksumStore checksums = ChecksumStore.load(client, INDEX);
+        assertThat(checksums.isUnchanged(ResourceKind.PIPELINE, "my_pipeline", "{}"), is(false));
+        // We don't know any hash, so we don't read the existing resources
+        assertThat(requests, not(hasItem("GET /_ingest/pipeline")));
+
+        checksums.save(ResourceKind.PIPELINE, "my_pipeline", "{}");
+        assertThat(stateIndexSettings, containsString("\"index.hidden\":true"));
+        assertThat(documents.get("pipeline:my_pipeline"), is("{\"type\":\"checksum\",\"kind\":\"pipeline\"," +
+                "\"name\":\"my_pipeline\",\"hash\":\"" + ChecksumStore.hash("{}") + "\"}"));
+        assertThat(checksums.isUnchanged(ResourceKind.PIPELINE, "my_pipeline", "{}"), is(true));
+        assertThat(checksums.isUnchanged(ResourceKind.PIPELINE, "my_pipeline", "{\"processors\":[]}"), is(false));
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        stateIndexSettings = "{}";
+        documents.put("pipeline:my_pipeline", "{\"hash\":\"" + ChecksumStore.hash("{}") + "\"}");
+        documents.put("component_template:my_template", "{\"hash\":\"" + ChecksumStore.hash("{\"template\":{}}") + "\"}");
+        pipelines.add("my_pipeline");
+        pipelines.add("other_pipeline");
+        componentTemplates.add("my_template");
+
+        ChecksumStore checksums = ChecksumStore.load(client, INDEX);
+        assertThat(checksums.isUnchanged(ResourceKind.PIPELINE, "my_pipeline", "{}"), is(true));
+        assertThat(checksums.isUnchanged(ResourceKind.COMPONENT_TEMPLATE, "my_template", "{\"template\":{}}"), is(true));
+        assertThat(checksums.isUnchanged(ResourceKind.COMPONENT_TEMPLATE, "my_template", "{}"), is(false));
+        assertThat(checksums.isUnchanged(ResourceKind.PIPELINE, "other_pipeline", "{}"), is(false));
+
+        // Only the kinds we know a hash for are read
+        assertThat(requests, hasItem("GET /_ingest/pipeline"));
+        assertThat(requests, hasItem("GET /_component_template"));
+        assertThat(requests, not(hasItem("GET /_index_template")));
+        assertThat(requests, not(hasItem("GET /_ilm/policy")));
+        // The state index already exists
+        checksums.save(ResourceKind.PIPELINE, "other_pipeline", "{}");
+        assertThat(requests, not(hasItem("PUT /" + INDEX)));
+    }
+
+    @Test
+    public void testRemovedResourceIsNotUnchanged() throws Exception {
+        stateIndexSettings = "{}";
+        documents.put("pipeline:my_pipeline", "{\"hash\":\"" + ChecksumStore.hash("{}") + "\"}");
+
+        // The pipeline has been removed manually from the cluster
+        ChecksumStore checksums = ChecksumStore.load(client, INDEX);
+        assertThat(checksums.isUnchanged(ResourceKind.PIPELINE, "my_pipeline", "{}"), is(false));
+
+        // Once applied again, we know it exists
+        checksums.save(ResourceKind.PIPELINE, "my_pipeline", "{}");
+        assertThat(checksums.isUnchanged(ResourceKind.PIPELINE, "my_pipeline", "{}"), is(true));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.BeyonderListener;
+import fr.pilato.elasticsearch.tools.util.DependencyGraphExecutor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
+
+public class DependencyGraphExecutorTest {
+
+    @Test
+    public void testSequential() throws Exception {
+        List<String> done = new ArrayList<>();
+        new DependencyGraphExecutor(1)
+                .addPhase("a", List.of(() -> done.add("a1"), () -> done.add("a2")))
+                .addPhase("b", List.of(() -> done.add("b1")), "a")
+                .addPhase("c", List.of(() -> done.add("c1")))
+                .execute();
+        assertThat(done, contains("a1", "a2", "b1", "c1"));
+    }
+
+    @Test
+    public void testParallelRespectsDependencies() throws Exception {
+        List<String> done = Collections.synchronizedList(new ArrayList<>());
+        new DependencyGraphExecutor(4)
+                .addPhase("a", List.of(() -> { Thread.sleep(50); done.add("a1"); }, () -> done.add("a2")))
+                .addPhase("b", List.of(() -> done.add("b1")), "a")
+                .addPhase("c", List.of(() -> done.add("c1")))
+                .execute();
+        assertThat(done, containsInAnyOrder("a1", "a2", "b1", "c1"));
+        assertThat(done.indexOf("b1"), greaterThan(done.indexOf("a1")));
+        assertThat(done.indexOf("b1"), greaterThan(done.indexOf("a2")));
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        // Falls back to platform threads before Java 21
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<DependencyGraphExecutor.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                threads.add(Thread.currentThread().getName());
+                Thread.sleep(5);
+                running.decrementAndGet();
+            });
+        }
+        new DependencyGraphExecutor(10, BeyonderListener.NOOP, true)
+                .addPhase("a", tasks)
+                .execute();
+        assertThat(threads.size(), is(100));
+        assertThat(threads, everyItem(startsWith("beyonder-")));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(10));
+    }
+
+    @Test
+    public void testFailureStopsDependentPhases() {
+        for (int parallelism : new int[]{1, 4}) {
+            List<String> done = Collections.synchronizedList(new ArrayList<>());
+            try {
+                new DependencyGraphExecutor(parallelism)
+                        .addPhase("a", List.of(() -> { throw new IOException("boom"); }))
+                        .addPhase("b", List.of(() -> done.add("b1")), "a")
+                        .execute();
+                fail("We should have caught an exception");
+            } catch (Exception e) {
+                assertThat(e instanceof IOException, is(true));
+                assertThat(e.getMessage(), is("boom"));
+            }
+            assertThat(done, not(hasItem("b1")));
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        for (int parallelism : new int[]{1, 4}) {
+            List<String> done = Collections.synchronizedList(new ArrayList<>());
+            DependencyGraphExecutor executor = new DependencyGraphExecutor(parallelism);
+            executor.addPhase("a", List.of(executor::cancel))
+                    .addPhase("b", List.of(() -> done.add("b1")), "a");
+            try {
+                executor.execute();
+                fail("We should have caught an exception");
+            } catch (CancellationException e) {
+                assertThat(executor.isCancelled(), is(true));
+            }
+            assertThat(done, not(hasItem("b1")));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDependency() {
+        new DependencyGraphExecutor(1).addPhase("a", List.of(), "unknown");
+    }
+}
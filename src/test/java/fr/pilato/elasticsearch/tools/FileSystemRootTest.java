@@ -0,0 +1,103 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.FileSystemRoot;
+import fr.pilato.elasticsearch.tools.util.MappedFileInputStream;
+import fr.pilato.elasticsearch.tools.util.ResourceTree;
+import fr.pilato.elasticsearch.tools.util.SettingsReader;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FileSystemRootTest {
+
+    private static final String BULK = "{ \"index\" : {  } }\n{ \"message\" : \"message 1\" }\n";
+
+    private Path dir;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("beyonder");
+        Files.createDirectories(dir.resolve("twitter/_data"));
+        Files.writeString(dir.resolve("twitter/_settings.json"), "{ \"settings\": { \"number_of_shards\": 1 } }");
+        Files.writeString(dir.resolve("twitter/_data/bulk-001.ndjson"), BULK);
+        Files.writeString(dir.resolve("twitter/_data/bulk-002.ndjson"), BULK);
+    }
+
+    @After
+    public void removeDir() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        String root = FileSystemRoot.of(dir);
+        ResourceTree tree = ResourceTree.scan(root);
+        assertThat(tree.findIndexNames(), contains("twitter"));
+        assertThat(tree.findBulkFiles("twitter"), contains("bulk-001.ndjson", "bulk-002.ndjson"));
+
+        assertThat(SettingsReader.getJsonContent(root, "twitter", "_settings.json"), is("{ \"settings\": { \"number_of_shards\": 1 } }"));
+        assertThat(SettingsReader.getJsonContent(root, "twitter", "_doesnotexist.json"), nullValue());
+        try (InputStream stream = SettingsReader.openFileStream(root, "twitter/_data", "bulk-001.ndjson")) {
+            assertThat(new String(stream.readAllBytes(), StandardCharsets.UTF_8), is(BULK));
+        }
+        assertThat(SettingsReader.openFileStream(root, "twitter/_data", "bulk-003.ndjson"), nullValue());
+    }
+
+    @Test
+    public void testMappedRegions() throws IOException {
+        Path file = dir.resolve("twitter/_data/bulk-001.ndjson");
+        byte[] expected = Files.readAllBytes(file);
+
+        // A region is smaller than the buffer, so we read from multiple regions
+        for (int regionSize : List.of(1, 7, expected.length, expected.length + 1)) {
+            try (MappedFileInputStream stream = new MappedFileInputStream(file, regionSize)) {
+                assertThat(stream.readAllBytes(), is(expected));
+                assertThat(stream.read(), is(-1));
+            }
+        }
+
+        try (MappedFileInputStream stream = new MappedFileInputStream(file, 7)) {
+            assertThat(stream.read(), is((int) '{'));
+            assertThat(stream.skip(10), is(10L));
+            assertThat(stream.read(), is((int) expected[11]));
+            assertThat(stream.available(), is(expected.length - 12));
+        }
+
+        Path empty = Files.createFile(dir.resolve("empty.ndjson"));
+        try (MappedFileInputStream stream = new MappedFileInputStream(empty)) {
+            assertThat(stream.read(), is(-1));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.GzipEntity;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class GzipEntityTest {
+
+    private static final String BULK = "{ \"index\" : { \"_index\" : \"twitter\" } }\n{ \"message\" : \"message\" }\n";
+
+    private static String decompress(byte[] compressed) throws IOException {
+        try (InputStream stream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testCompress() throws IOException {
+        byte[] content = BULK.repeat(1000).getBytes(StandardCharsets.UTF_8);
+        GzipEntity entity = new GzipEntity(content, 0, content.length, ContentType.APPLICATION_JSON);
+        assertThat(entity.getContentEncoding().getValue(), is("gzip"));
+        assertThat(entity.getCompressedLength(), is(-1L));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertThat(decompress(out.toByteArray()), is(BULK.repeat(1000)));
+        assertThat(entity.getCompressedLength(), is((long) out.size()));
+        assertThat(entity.getCompressedLength(), lessThan((long) entity.getUncompressedLength() / 10));
+
+        // The entity can be sent again, for example when the request is retried
+        try (InputStream stream = entity.getContent()) {
+            assertThat(decompress(stream.readAllBytes()), is(BULK.repeat(1000)));
+        }
+    }
+
+    @Test
+    public void testCompressPartOfArray() throws IOException {
+        byte[] content = ("garbage" + BULK + "garbage").getBytes(StandardCharsets.UTF_8);
+        GzipEntity entity = new GzipEntity(content, 7, BULK.length(), ContentType.APPLICATION_JSON);
+        try (InputStream stream = entity.getContent()) {
+            assertThat(decompress(stream.readAllBytes()), is(BULK));
+        }
+    }
+
+    @Test
+    public void testThreshold() throws IOException {
+        HttpEntity small = new StringEntity(BULK, ContentType.APPLICATION_JSON);
+        assertThat(GzipEntity.compress(small, BULK.length() + 1), sameInstance(small));
+        assertThat(GzipEntity.compress(small, -1), sameInstance(small));
+
+        HttpEntity compressed = GzipEntity.compress(small, BULK.length());
+        assertThat(compressed, instanceOf(GzipEntity.class));
+        assertThat(compressed.getContentType().getValue(), is(ContentType.APPLICATION_JSON.toString()));
+        try (InputStream stream = compressed.getContent()) {
+            assertThat(decompress(stream.readAllBytes()), is(BULK));
+        }
+    }
+
+    @Test
+    public void testEntityIsNotCopied() throws IOException {
+        AtomicInteger reads = new AtomicInteger();
+        HttpEntity entity = new StringEntity(BULK.repeat(100), ContentType.APPLICATION_JSON) {
+            @Override
+            public InputStream getContent() throws IOException {
+                reads.incrementAndGet();
+                return super.getContent();
+            }
+        };
+        GzipEntity compressed = (GzipEntity) GzipEntity.compress(entity, 0);
+        assertThat(reads.get(), is(0));
+        assertThat(compressed.getUncompressedLength(), is((long) BULK.length() * 100));
+
+        // The entity is read while it is sent, each time it is sent
+        for (int i = 1; i <= 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            compressed.writeTo(out);
+            assertThat(decompress(out.toByteArray()), is(BULK.repeat(100)));
+            assertThat(reads.get(), is(i));
+        }
+    }
+}
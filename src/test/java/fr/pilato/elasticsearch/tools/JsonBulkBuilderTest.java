@@ -0,0 +1,74 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.BulkChunk;
+import fr.pilato.elasticsearch.tools.util.JsonBulkBuilder;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class JsonBulkBuilderTest {
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String content(BulkChunk chunk) throws IOException {
+        return IOUtils.toString(chunk.toEntity().getContent(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testDocumentsAreWrittenOnASingleLine() throws IOException {
+        JsonBulkBuilder builder = new JsonBulkBuilder(2, 1024 * 1024);
+        assertThat(builder.add("doc1.json", json("{\n  \"foo\" : \"bar\",\n  \"n\" : [ 1, 2 ]\n}\n")), nullValue());
+        assertThat(builder.add("doc2.json", json("{ \"foo\" : \"baz\" }")), nullValue());
+        BulkChunk chunk = builder.add("doc3.json", json("{}"));
+        assertThat(chunk.getActions(), is(2));
+        assertThat(content(chunk), is("{\"index\":{}}\n{\"foo\":\"bar\",\"n\":[1,2]}\n{\"index\":{}}\n{\"foo\":\"baz\"}\n"));
+        assertThat(chunk.getSource(0), is("doc1.json"));
+        assertThat(chunk.getSource(1), is("doc2.json"));
+        assertThat(chunk.subset(List.of(1)).getSource(0), is("doc2.json"));
+
+        chunk = builder.flush();
+        assertThat(content(chunk), is("{\"index\":{}}\n{}\n"));
+        assertThat(chunk.getSource(0), is("doc3.json"));
+        assertThat(builder.flush(), nullValue());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMultipleDocuments() throws IOException {
+        new JsonBulkBuilder(10, 1024 * 1024).add("doc.json", json("{} {}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidDocument() throws IOException {
+        new JsonBulkBuilder(10, 1024 * 1024).add("doc.json", json("{\"foo\":"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.BulkItemError;
+import fr.pilato.elasticsearch.tools.util.JsonResponses;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class JsonResponsesTest {
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIsEmptyObject() throws IOException {
+        assertThat(JsonResponses.isEmptyObject(json("{}")), is(true));
+        assertThat(JsonResponses.isEmptyObject(json(" { }\n")), is(true));
+        assertThat(JsonResponses.isEmptyObject(json("{\"foo\":{}}")), is(false));
+        assertThat(JsonResponses.isEmptyObject(json("[]")), is(false));
+    }
+
+    @Test
+    public void testReadFieldValues() throws IOException {
+        assertThat(JsonResponses.readFieldValues(json("{\"indices\":[{\"name\":\"foo\",\"aliases\":[\"bar\"]}]," +
+                        "\"aliases\":[{\"name\":\"bar\",\"indices\":[\"foo\"]}],\"data_streams\":[]}"), "name"),
+                contains("foo", "bar"));
+        assertThat(JsonResponses.readFieldValues(json("{}"), "name"), empty());
+    }
+
+    @Test
+    public void testReadBulkErrorsWithoutErrors() throws IOException {
+        assertThat(JsonResponses.readBulkErrors(json("{\"took\":3,\"errors\":false,\"items\":[" +
+                "{\"index\":{\"_index\":\"test\",\"_id\":\"1\",\"status\":201}}]}")), empty());
+    }
+
+    @Test
+    public void testReadBulkErrors() throws IOException {
+        List<BulkItemError> errors = JsonResponses.readBulkErrors(json("{\"took\":3,\"errors\":true,\"items\":[" +
+                "{\"index\":{\"_index\":\"test\",\"_id\":\"1\",\"status\":201,\"result\":\"created\"}}," +
+                "{\"create\":{\"_index\":\"test\",\"_id\":\"2\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\"," +
+                "\"reason\":\"rejected\",\"caused_by\":{\"type\":\"foo\",\"reason\":\"bar\"}}}}," +
+                "{\"delete\":{\"_index\":\"test\",\"_id\":\"3\",\"status\":404,\"result\":\"not_found\"}}," +
+                "{\"index\":{\"_index\":\"test\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}}" +
+                "]}"));
+        assertThat(errors, hasSize(2));
+        assertThat(errors.get(0).getPosition(), is(1));
+        assertThat(errors.get(0).getAction(), is("create"));
+        assertThat(errors.get(0).getId(), is("2"));
+        assertThat(errors.get(0).getStatus(), is(429));
+        assertThat(errors.get(0).getType(), is("es_rejected_execution_exception"));
+        assertThat(errors.get(0).getReason(), is("rejected"));
+        assertThat(errors.get(1).getPosition(), is(3));
+        assertThat(errors.get(1).getId(), nullValue());
+        assertThat(errors.get(1).getStatus(), is(400));
+        assertThat(errors.get(1).getType(), is("mapper_parsing_exception"));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import fr.pilato.elasticsearch.tools.metrics.MicrometerBeyonderListener;
+import fr.pilato.elasticsearch.tools.util.BeyonderListener;
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import fr.pilato.elasticsearch.tools.util.BulkChunk;
+import fr.pilato.elasticsearch.tools.util.BulkIngester;
+import fr.pilato.elasticsearch.tools.util.DependencyGraphExecutor;
+import fr.pilato.elasticsearch.tools.util.RequestEvent;
+import fr.pilato.elasticsearch.tools.util.Requests;
+import fr.pilato.elasticsearch.tools.util.ResourceKind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class MicrometerBeyonderListenerTest extends AbstractStubServerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<RequestEvent> events = new CopyOnWriteArrayList<>();
+    // Keep the events, so we can compare them with the meters
+    private final BeyonderListener listener = new BeyonderListener() {
+        private final MicrometerBeyonderListener micrometer = new MicrometerBeyonderListener(registry);
+
+        @Override
+        public void onRequest(RequestEvent event) {
+            events.add(event);
+            micrometer.onRequest(event);
+        }
+    };
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        String[] path = path(exchange);
+        readBody(exchange);
+        if (path[path.length - 1].equals("_bulk")) {
+            reply(exchange, 200, "{\"errors\":false,\"items\":[]}");
+        } else if (path[path.length - 1].equals("missing")) {
+            reply(exchange, 404, "{\"error\":{\"type\":\"resource_not_found_exception\"},\"status\":404}");
+        } else {
+            reply(exchange, 200, "{\"acknowledged\":true}");
+        }
+    }
+
+    @Test
+    public void testPhases() throws Exception {
+        MicrometerBeyonderListener micrometer = new MicrometerBeyonderListener(registry);
+
+        new DependencyGraphExecutor(1, micrometer)
+                .addPhase("pipelines", Arrays.asList(() -> {}, () -> {}))
+                .addPhase("indices", Collections.singletonList(() -> {}), "pipelines")
+                .execute();
+        micrometer.onEnd("elasticsearch", 1_000_000, null);
+
+        assertThat(registry.get("beyonder.phase").tags("phase", "pipelines", "outcome", "success").timer().count(), is(1L));
+        assertThat(registry.get("beyonder.phase").tags("phase", "indices", "outcome", "success").timer().count(), is(1L));
+        assertThat(registry.get("beyonder.start").tags("root", "elasticsearch", "outcome", "success").timer().count(), is(1L));
+    }
+
+    @Test
+    public void testFailedPhase() {
+        try {
+            new DependencyGraphExecutor(1, new MicrometerBeyonderListener(registry))
+                    .addPhase("pipelines", Collections.singletonList(() -> {
+                        throw new Exception("boom");
+                    }))
+                    .execute();
+            fail("We should have caught an exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage(), is("boom"));
+        }
+
+        assertThat(registry.get("beyonder.phase").tags("phase", "pipelines", "outcome", "failure").timer().count(), is(1L));
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        BeyonderOptions options = new BeyonderOptions()
+                .setListener(listener)
+                .setCompressRequests(true)
+                .setCompressionThreshold(100);
+        String pipeline = "{\"description\":\"" + "a very compressible description ".repeat(20) + "\",\"processors\":[]}";
+        Requests.run(options, ResourceKind.PIPELINE, "my_pipeline", () -> {
+            Request request = new Request("PUT", "/_ingest/pipeline/my_pipeline");
+            request.setJsonEntity(pipeline);
+            Requests.perform(client, request);
+        });
+
+        assertThat(events, hasSize(1));
+        RequestEvent event = events.get(0);
+        assertThat(event.getKind(), is(ResourceKind.PIPELINE));
+        assertThat(event.getName(), is("my_pipeline"));
+        assertThat(event.getMethod(), is("PUT"));
+        assertThat(event.getEndpoint(), is("/_ingest/pipeline/my_pipeline"));
+        assertThat(event.getStatus(), is(200));
+        assertThat(event.getFailure(), nullValue());
+        assertThat(event.isCompressed(), is(true));
+        assertThat(event.getUncompressedBytes(), is((long) pipeline.length()));
+        assertThat(event.getBytesSaved(), greaterThan(0L));
+        assertThat(event.getBytesSent() + event.getBytesSaved(), is(event.getUncompressedBytes()));
+
+        assertThat(registry.get("beyonder.requests")
+                .tags("kind", "pipeline", "method", "PUT", "status", "200", "outcome", "success").timer().count(), is(1L));
+        assertThat(registry.get("beyonder.requests.size").tags("kind", "pipeline").summary().totalAmount(),
+                is((double) event.getBytesSent()));
+        assertThat(registry.get("beyonder.requests.compression.saved").tags("kind", "pipeline").counter().count(),
+                is((double) event.getBytesSaved()));
+    }
+
+    @Test
+    public void testFailedRequest() throws Exception {
+        BeyonderOptions options = new BeyonderOptions().setListener(listener);
+        try {
+            Requests.run(options, ResourceKind.INDEX_TEMPLATE, "missing", () ->
+                    Requests.perform(client, new Request("GET", "/_index_template/missing")));
+            fail("We should have caught a ResponseException");
+        } catch (ResponseException e) {
+            assertThat(e.getResponse().getStatusLine().getStatusCode(), is(404));
+        }
+
+        assertThat(events, hasSize(1));
+        assertThat(events.get(0).getStatus(), is(404));
+        assertThat(events.get(0).getFailure(), notNullValue());
+        assertThat(registry.get("beyonder.requests")
+                .tags("kind", "index_template", "method", "GET", "status", "404", "outcome", "failure").timer().count(), is(1L));
+        // Nothing was sent nor saved
+        assertThat(registry.find("beyonder.requests.size").summary(), nullValue());
+        assertThat(registry.find("beyonder.requests.compression.saved").counter(), nullValue());
+    }
+
+    @Test
+    public void testBulkActions() throws Exception {
+        BulkIngester ingester = new BulkIngester(client, new BeyonderOptions().setListener(listener));
+        List<BulkChunk> chunks = BulkIngesterTest.chunks(6, 3);
+        for (BulkChunk chunk : chunks) {
+            ingester.add("/twitter/_bulk", "bulk.ndjson", chunk);
+        }
+        ingester.awaitCompletion();
+
+        assertThat(events, hasSize(2));
+        for (RequestEvent event : events) {
+            assertThat(event.getKind(), is(ResourceKind.DATA));
+            assertThat(event.getName(), is("bulk.ndjson"));
+            assertThat(event.getActions(), is(3));
+        }
+        assertThat(registry.get("beyonder.bulk.actions").tags("kind", "data", "outcome", "success").counter().count(), is(6.0));
+        assertThat(registry.get("beyonder.requests")
+                .tags("kind", "data", "method", "POST", "status", "200", "outcome", "success").timer().count(), is(2L));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.github.luben.zstd.Zstd;
+import fr.pilato.elasticsearch.tools.util.BulkChunk;
+import fr.pilato.elasticsearch.tools.util.CompressedStreams;
+import fr.pilato.elasticsearch.tools.util.NdJsonBulkReader;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class NdJsonBulkReaderTest {
+
+    private static final String INDEX = "{ \"index\" : { \"_index\" : \"twitter\" } }\n";
+    private static final String DELETE = "{ \"delete\" : { \"_index\" : \"twitter\", \"_id\" : \"1\" } }\n";
+    private static final String SOURCE = "{ \"message\" : \"message\" }\n";
+
+    private static List<String> read(String ndjson, int maxActions, long maxBytes) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        try (NdJsonBulkReader reader = new NdJsonBulkReader(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), maxActions, maxBytes)) {
+            BulkChunk chunk;
+            while ((chunk = reader.next()) != null) {
+                chunks.add(IOUtils.toString(chunk.toEntity().getContent(), StandardCharsets.UTF_8));
+            }
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testSingleChunk() throws IOException {
+        List<String> chunks = read(INDEX + SOURCE + INDEX + SOURCE, 1000, 1024 * 1024);
+        assertThat(chunks, hasSize(1));
+        assertThat(chunks.get(0), is(INDEX + SOURCE + INDEX + SOURCE));
+    }
+
+    @Test
+    public void testSplitByActions() throws IOException {
+        List<String> chunks = read(INDEX + SOURCE + INDEX + SOURCE + INDEX + SOURCE, 2, 1024 * 1024);
+        assertThat(chunks, hasSize(2));
+        assertThat(chunks.get(0), is(INDEX + SOURCE + INDEX + SOURCE));
+        assertThat(chunks.get(1), is(INDEX + SOURCE));
+    }
+
+    @Test
+    public void testSplitByBytes() throws IOException {
+        // A chunk can not contain more than one action and its source
+        List<String> chunks = read(INDEX + SOURCE + INDEX + SOURCE, 1000, INDEX.length() + SOURCE.length() + 1);
+        assertThat(chunks, hasSize(2));
+        assertThat(chunks.get(0), is(INDEX + SOURCE));
+        assertThat(chunks.get(1), is(INDEX + SOURCE));
+    }
+
+    @Test
+    public void testDeleteHasNoSource() throws IOException {
+        List<String> chunks = read(DELETE + INDEX + SOURCE + DELETE, 1, 1024 * 1024);
+        assertThat(chunks, hasSize(3));
+        assertThat(chunks.get(0), is(DELETE));
+        assertThat(chunks.get(1), is(INDEX + SOURCE));
+        assertThat(chunks.get(2), is(DELETE));
+    }
+
+    @Test
+    public void testBlankLinesAndMissingLastNewLine() throws IOException {
+        List<String> chunks = read("\n" + INDEX + "\n  \n" + SOURCE.trim(), 1000, 1024 * 1024);
+        assertThat(chunks, hasSize(1));
+        assertThat(chunks.get(0), is(INDEX + SOURCE));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingSource() throws IOException {
+        read(INDEX + SOURCE + INDEX, 1000, 1024 * 1024);
+    }
+
+    @Test
+    public void testSubset() throws IOException {
+        try (NdJsonBulkReader reader = new NdJsonBulkReader(new ByteArrayInputStream(
+                (INDEX + SOURCE + DELETE + INDEX + "{}\n").getBytes(StandardCharsets.UTF_8)), 1000, 1024 * 1024)) {
+            BulkChunk chunk = reader.next();
+            assertThat(chunk.getActions(), is(3));
+            BulkChunk subset = chunk.subset(Arrays.asList(1, 2));
+            assertThat(subset.getActions(), is(2));
+            assertThat(IOUtils.toString(subset.toEntity().getContent(), StandardCharsets.UTF_8), is(DELETE + INDEX + "{}\n"));
+            assertThat(IOUtils.toString(subset.subset(List.of(0)).toEntity().getContent(), StandardCharsets.UTF_8), is(DELETE));
+        }
+    }
+
+    @Test
+    public void testChunkEnd() throws IOException {
+        String ndjson = INDEX + SOURCE + "\n" + DELETE + INDEX + SOURCE;
+        try (NdJsonBulkReader reader = new NdJsonBulkReader(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), 2, 1024 * 1024)) {
+            assertThat(reader.next().getActions(), is(2));
+            // Reading again from this position gives the remaining actions
+            long end = reader.getChunkEnd();
+            assertThat(ndjson.substring((int) end), is(INDEX + SOURCE));
+            assertThat(reader.next().getActions(), is(1));
+            assertThat(reader.getChunkEnd(), is((long) ndjson.length()));
+        }
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write((INDEX + SOURCE + INDEX + SOURCE + INDEX + SOURCE).getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> chunks = new ArrayList<>();
+        try (NdJsonBulkReader reader = new NdJsonBulkReader(CompressedStreams.decode("bulk.ndjson.gz",
+                new ByteArrayInputStream(compressed.toByteArray())), 2, 1024 * 1024)) {
+            BulkChunk chunk;
+            while ((chunk = reader.next()) != null) {
+                chunks.add(IOUtils.toString(chunk.toEntity().getContent(), StandardCharsets.UTF_8));
+            }
+        }
+        assertThat(chunks, hasSize(2));
+        assertThat(chunks.get(0), is(INDEX + SOURCE + INDEX + SOURCE));
+        assertThat(chunks.get(1), is(INDEX + SOURCE));
+    }
+
+    @Test
+    public void testNotCompressed() throws IOException {
+        ByteArrayInputStream stream = new ByteArrayInputStream(INDEX.getBytes(StandardCharsets.UTF_8));
+        assertThat(CompressedStreams.decode("bulk.ndjson", stream) == stream, is(true));
+    }
+
+    @Test
+    public void testZstd() throws IOException {
+        byte[] compressed = Zstd.compress((INDEX + SOURCE + INDEX + SOURCE).getBytes(StandardCharsets.UTF_8));
+        try (NdJsonBulkReader reader = new NdJsonBulkReader(CompressedStreams.decode("bulk.ndjson.zst",
+                new ByteArrayInputStream(compressed)), 1000, 1024 * 1024)) {
+            BulkChunk chunk = reader.next();
+            assertThat(chunk.getActions(), is(2));
+            assertThat(IOUtils.toString(chunk.toEntity().getContent(), StandardCharsets.UTF_8), is(INDEX + SOURCE + INDEX + SOURCE));
+        }
+    }
+}
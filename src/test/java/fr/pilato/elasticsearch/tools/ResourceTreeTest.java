@@ -0,0 +1,119 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.DefaultSettings;
+import fr.pilato.elasticsearch.tools.util.ResourceList;
+import fr.pilato.elasticsearch.tools.util.ResourceManifest;
+import fr.pilato.elasticsearch.tools.util.ResourceTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+
+public class ResourceTreeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] ROOTS = {
+            null,
+            "models/data-bulk-and-json-global-with-indices",
+            "models/date-math-indices",
+            "models/templatev2",
+            "models/pipelines",
+            "models/index-lifecycle",
+            "models/aliases",
+            "models/bad-classpath-7/doesnotexist"
+    };
+
+    @Test
+    public void testSameResultsAsResourceList() throws IOException, URISyntaxException {
+        for (String root : ROOTS) {
+            ResourceTree tree = ResourceTree.scan(root);
+            assertThat(tree.findIndexNames(), is(ResourceList.findIndexNames(root)));
+            assertThat(tree.findBulkFiles(null), is(ResourceList.findBulkFiles(root, null)));
+            for (String subdir : new String[]{ DefaultSettings.IndexLifecyclesDir, DefaultSettings.ComponentTemplatesDir,
+                    DefaultSettings.IndexTemplatesDir, DefaultSettings.PipelinesDir }) {
+                assertThat(tree.getResourceNames(subdir), is(ResourceList.getResourceNames(root, subdir)));
+            }
+            for (String index : tree.findIndexNames()) {
+                assertThat(tree.findBulkFiles(index), is(ResourceList.findBulkFiles(root, index)));
+                assertThat(tree.findJsonFiles(index), is(ResourceList.findJsonFiles(root, index)));
+            }
+        }
+    }
+
+    @Test
+    public void testManifest() throws IOException, URISyntaxException {
+        Path classes = Paths.get(ResourceTreeTest.class.getResource("/models").toURI()).getParent();
+        Path output = folder.newFolder().toPath();
+        for (String root : ROOTS) {
+            if (root == null) {
+                root = DefaultSettings.ConfigDir;
+            }
+            Path manifest = ResourceManifest.generate(classes, root, output);
+            assertThat(manifest, is(output.resolve("META-INF/beyonder/" + root + "/index.json")));
+
+            List<String> paths;
+            try (InputStream stream = Files.newInputStream(manifest)) {
+                paths = ResourceManifest.readPaths(stream);
+            }
+            ResourceTree fromManifest = ResourceTree.fromPaths(paths);
+            ResourceTree scanned = ResourceTree.scan(root);
+            assertThat(fromManifest.findIndexNames(), is(scanned.findIndexNames()));
+            assertThat(fromManifest.findBulkFiles(null), is(scanned.findBulkFiles(null)));
+            for (String index : scanned.findIndexNames()) {
+                assertThat(fromManifest.list(index), is(scanned.list(index)));
+                assertThat(fromManifest.findBulkFiles(index), is(scanned.findBulkFiles(index)));
+                assertThat(fromManifest.findJsonFiles(index), is(scanned.findJsonFiles(index)));
+            }
+        }
+    }
+
+    @Test
+    public void testManifestIsIgnoredForDirectories() throws IOException, URISyntaxException {
+        // The test resources are in a directory and their manifest is outdated: it only knows about old_index
+        ResourceTree tree = ResourceTree.scan("models/data-one-index");
+        assertThat(tree.findIndexNames(), is(ResourceList.findIndexNames("models/data-one-index")));
+        assertThat(tree.list("old_index"), emptyArray());
+    }
+
+    @Test
+    public void testList() throws IOException, URISyntaxException {
+        ResourceTree tree = ResourceTree.scan("models/data-bulk-and-json-global-with-indices");
+        assertThat(tree.list("test_1"), arrayContaining("_data", "_settings.json"));
+        assertThat(tree.list("test_1/_data"), arrayContaining("bulk-001.ndjson", "bulk-002.ndjson"));
+        assertThat(tree.list("test_1/_settings.json"), emptyArray());
+        assertThat(tree.list("doesnotexist"), emptyArray());
+    }
+}
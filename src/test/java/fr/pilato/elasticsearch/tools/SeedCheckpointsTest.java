@@ -0,0 +1,180 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import fr.pilato.elasticsearch.tools.updaters.ElasticsearchDataUpdater;
+import fr.pilato.elasticsearch.tools.util.BeyonderOptions;
+import fr.pilato.elasticsearch.tools.util.FileSystemRoot;
+import fr.pilato.elasticsearch.tools.util.SeedCheckpoints;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Test the seed checkpoints against a local http server which stores the documents of the state index
+ */
+public class SeedCheckpointsTest extends AbstractStubServerTest {
+
+    private static final String INDEX = "beyonder-state";
+
+    private final Map<String, String> documents = new TreeMap<>();
+    private final List<String> bulks = new ArrayList<>();
+
+    @Override
+    protected synchronized void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = path(exchange);
+        String body = readBody(exchange);
+
+        if (path.length == 1) {
+            reply(exchange, 200, "{\"acknowledged\":true}");
+        } else if (path[1].equals("_bulk")) {
+            bulks.add(body);
+            reply(exchange, 200, "{\"errors\":false,\"items\":[]}");
+        } else if (path[1].equals("_search")) {
+            StringBuilder hits = new StringBuilder();
+            for (Map.Entry<String, String> document : documents.entrySet()) {
+                if (hits.length() > 0) {
+                    hits.append(",");
+                }
+                hits.append("{\"_id\":\"").append(document.getKey()).append("\",\"_source\":").append(document.getValue()).append("}");
+            }
+            reply(exchange, 200, "{\"hits\":{\"hits\":[" + hits + "]}}");
+        } else {
+            String id = path[2];
+            if (method.equals("DELETE")) {
+                reply(exchange, documents.remove(id) == null ? 404 : 200, "{}");
+            } else {
+                documents.put(id, body);
+                reply(exchange, 200, "{\"result\":\"updated\"}");
+            }
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        SeedCheckpoints checkpoints = SeedCheckpoints.load(client, INDEX);
+        checkpoints.start("twitter");
+        checkpoints.done("twitter", "bulk-001.ndjson", "hash1", 100);
+        checkpoints.progress("twitter", "bulk-002.ndjson", "hash2", 50);
+        // Too soon to save it again
+        checkpoints.progress("twitter", "bulk-002.ndjson", "hash2", 60);
+
+        // The application restarts
+        checkpoints = SeedCheckpoints.load(client, INDEX);
+        assertThat(checkpoints.isIncomplete("twitter"), is(true));
+        assertThat(checkpoints.getOffset("twitter", "bulk-001.ndjson", "hash1"), is(SeedCheckpoints.DONE));
+        assertThat(checkpoints.getOffset("twitter", "bulk-002.ndjson", "hash2"), is(50L));
+        // The file changed
+        assertThat(checkpoints.getOffset("twitter", "bulk-002.ndjson", "other"), is(0L));
+        assertThat(checkpoints.getOffset("twitter", "bulk-003.ndjson", "hash3"), is(0L));
+
+        checkpoints.done("twitter", "bulk-002.ndjson", "hash2", 200);
+        checkpoints.done("twitter");
+        checkpoints = SeedCheckpoints.load(client, INDEX);
+        assertThat(checkpoints.isIncomplete("twitter"), is(false));
+    }
+
+    @Test
+    public void testNewIndexForgetsThePreviousOne() throws Exception {
+        SeedCheckpoints checkpoints = SeedCheckpoints.load(client, INDEX);
+        checkpoints.start("twitter");
+        checkpoints.done("twitter", "bulk-001.ndjson", "hash1", 100);
+        checkpoints.done("twitter");
+
+        // The index has been removed and is created again
+        checkpoints = SeedCheckpoints.load(client, INDEX);
+        checkpoints.start("twitter");
+        assertThat(checkpoints.isIncomplete("twitter"), is(true));
+        assertThat(checkpoints.getOffset("twitter", "bulk-001.ndjson", "hash1"), is(0L));
+        assertThat(documents.size(), is(1));
+    }
+
+    @Test
+    public void testSettingsAreKept() throws Exception {
+        SeedCheckpoints checkpoints = SeedCheckpoints.load(client, INDEX);
+        checkpoints.start("twitter");
+        assertThat(checkpoints.getSettings("twitter"), nullValue());
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("refresh_interval", "5s");
+        settings.put("number_of_replicas", null);
+        checkpoints.saveSettings("twitter", settings);
+
+        // The application crashed while loading the data
+        checkpoints = SeedCheckpoints.load(client, INDEX);
+        assertThat(checkpoints.isIncomplete("twitter"), is(true));
+        assertThat(checkpoints.getSettings("twitter"), is(settings));
+
+        checkpoints.done("twitter");
+        checkpoints = SeedCheckpoints.load(client, INDEX);
+        assertThat(checkpoints.getSettings("twitter"), nullValue());
+    }
+
+    @Test
+    public void testChangedFileIsLoadedAgain() throws Exception {
+        Path root = Files.createTempDirectory("beyonder");
+        Path file = Files.createDirectories(root.resolve("twitter").resolve("_data")).resolve("bulk.ndjson");
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            ndjson.append("{\"index\":{}}\n{\"message\":\"doc").append(1000 + i).append("\"}\n");
+        }
+        // Much more than the first 64kb
+        Files.writeString(file, ndjson);
+        BeyonderOptions options = new BeyonderOptions().setBulkMaxActions(500);
+
+        try {
+            SeedCheckpoints checkpoints = SeedCheckpoints.load(client, INDEX);
+            checkpoints.start("twitter");
+            ElasticsearchDataUpdater.loadBulkData(client, FileSystemRoot.of(root), "twitter", List.of("bulk.ndjson"), options, checkpoints);
+            assertThat(bulks.size(), is(4));
+
+            // The file has already been loaded
+            checkpoints = SeedCheckpoints.load(client, INDEX);
+            ElasticsearchDataUpdater.loadBulkData(client, FileSystemRoot.of(root), "twitter", List.of("bulk.ndjson"), options, checkpoints);
+            assertThat(bulks.size(), is(4));
+
+            // The end of the file changed but not its size
+            Files.writeString(file, ndjson.toString().replace("doc2999", "doc9999"));
+            checkpoints = SeedCheckpoints.load(client, INDEX);
+            ElasticsearchDataUpdater.loadBulkData(client, FileSystemRoot.of(root), "twitter", List.of("bulk.ndjson"), options, checkpoints);
+            assertThat(bulks.size(), is(8));
+            assertThat(bulks.get(7), containsString("doc9999"));
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Test the seeding mode against a local http server which records the requests
+ */
+public class SeedingTest extends AbstractStubServerTest {
+
+    private final List<String> requests = new ArrayList<>();
+    private String settings;
+
+    @Override
+    protected synchronized void handle(HttpExchange exchange) throws IOException {
+        String body = readBody(exchange);
+        requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " " + body);
+        reply(exchange, 200, exchange.getRequestMethod().equals("GET") ? settings : "{\"acknowledged\":true}");
+    }
+
+    @Test
+    public void testSettingsAreRestored() throws Exception {
+        settings = "{\"twitter\":{\"settings\":{\"index\":{\"refresh_interval\":\"5s\",\"number_of_replicas\":\"2\"}}}}";
+        Map<String, String> previous = ElasticsearchIndexUpdater.startSeeding(client, "twitter");
+        assertThat(previous.get("refresh_interval"), is("5s"));
+        assertThat(previous.get("number_of_replicas"), is("2"));
+        assertThat(requests, hasSize(2));
+        assertThat(requests.get(1), containsString("\"refresh_interval\":\"-1\""));
+        assertThat(requests.get(1), containsString("\"number_of_replicas\":\"0\""));
+
+        ElasticsearchIndexUpdater.endSeeding(client, "twitter", previous, true);
+        assertThat(requests.subList(2, 4), contains(
+                "PUT /twitter/_settings {\"index\":{\"refresh_interval\":\"5s\",\"number_of_replicas\":\"2\"}}",
+                "POST /twitter/_refresh "));
+    }
+
+    @Test
+    public void testDefaultSettingsAreRestored() throws Exception {
+        // Nothing has been set in _settings.json
+        settings = "{}";
+        Map<String, String> previous = ElasticsearchIndexUpdater.startSeeding(client, "twitter");
+        assertThat(previous.get("refresh_interval"), nullValue());
+        assertThat(previous.get("number_of_replicas"), nullValue());
+
+        ElasticsearchIndexUpdater.endSeeding(client, "twitter", previous, false);
+        assertThat(requests, hasSize(3));
+        assertThat(requests.get(2), is("PUT /twitter/_settings {\"index\":{\"refresh_interval\":null,\"number_of_replicas\":null}}"));
+    }
+}
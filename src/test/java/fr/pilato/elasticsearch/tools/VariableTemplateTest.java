@@ -0,0 +1,103 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.elasticsearch.tools;
+
+import fr.pilato.elasticsearch.tools.util.VariableSource;
+import fr.pilato.elasticsearch.tools.util.VariableTemplate;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class VariableTemplateTest {
+
+    private static final VariableSource VARIABLES = VariableSource.of(Map.of(
+            "A", "1",
+            "B", "${A}-x",
+            "C", "${C}",
+            "EMPTY", ""));
+
+    private static String resolve(String content) {
+        return VariableTemplate.compile(content).resolve(VARIABLES);
+    }
+
+    @Test
+    public void testNoVariable() {
+        String content = "{\"foo\":\"$bar {baz}\"}";
+        VariableTemplate template = VariableTemplate.compile(content);
+        assertThat(template.hasVariables(), is(false));
+        assertThat(template.resolve(VARIABLES), sameInstance(content));
+        assertThat(VariableTemplate.compile(null).resolve(VARIABLES), nullValue());
+    }
+
+    @Test
+    public void testVariables() {
+        assertThat(resolve("${A}"), is("1"));
+        assertThat(resolve("{\"a\":\"${A}\",\"b\":\"${B}\"}"), is("{\"a\":\"1\",\"b\":\"1-x\"}"));
+        assertThat(resolve("${EMPTY}|"), is("|"));
+    }
+
+    @Test
+    public void testUnknownVariables() {
+        assertThat(resolve("${MISSING}"), is("${MISSING}"));
+        assertThat(resolve("${MISSING:-default}"), is("default"));
+        assertThat(resolve("${A:-default}"), is("1"));
+    }
+
+    @Test
+    public void testEscapeAndInvalidPlaceholders() {
+        assertThat(resolve("$${A}"), is("${A}"));
+        assertThat(resolve("${"), is("${"));
+        assertThat(resolve("${}"), is("${}"));
+        assertThat(resolve("${A"), is("${A"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCycle() {
+        resolve("${C}");
+    }
+
+    @Test
+    public void testFirstOf() {
+        VariableSource variables = VariableSource.firstOf(VariableSource.of(Map.of("A", "from-map")), VARIABLES);
+        assertThat(VariableTemplate.compile("${A}/${B}").resolve(variables), is("from-map/from-map-x"));
+    }
+
+    @Test
+    public void testBytes() {
+        // Bytes without any variable are sent as is
+        byte[] content = "{\"foo\":\"\u00e9 $bar {baz}$\"}".getBytes(StandardCharsets.UTF_8);
+        VariableTemplate template = VariableTemplate.compileBytes(content);
+        assertThat(template.hasVariables(), is(false));
+        assertThat(template.resolveBytes(VARIABLES), sameInstance(content));
+        assertThat(template.resolve(VARIABLES), is("{\"foo\":\"\u00e9 $bar {baz}$\"}"));
+        assertThat(VariableTemplate.compileBytes(null).resolveBytes(VARIABLES), nullValue());
+
+        // Bytes with variables are decoded
+        template = VariableTemplate.compileBytes("{\"\u00e9\":\"${B}\"}".getBytes(StandardCharsets.UTF_8));
+        assertThat(template.hasVariables(), is(true));
+        assertThat(new String(template.resolveBytes(VARIABLES), StandardCharsets.UTF_8), is("{\"\u00e9\":\"1-x\"}"));
+    }
+}